@@ -0,0 +1,75 @@
+package com.example.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import com.example.controller.SocialMediaController;
+import com.example.entity.Account;
+import com.example.service.AccountService;
+
+/**
+ * The account hot paths, from the controller down to H2. Login and register
+ * are bound by bcrypt; see {@link PasswordHashingBenchmark} for its cost alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AccountBenchmark {
+
+    @Param({ "1000", "100000" })
+    int accounts;
+
+    ConfigurableApplicationContext context;
+    SocialMediaController controller;
+    AccountService accountService;
+    AtomicLong registrations = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.start();
+        BenchmarkData.seed(context, accounts, 0);
+        controller = context.getBean(SocialMediaController.class);
+        accountService = context.getBean(AccountService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> login() {
+        String username = "user" + (1 + ThreadLocalRandom.current().nextInt(accounts));
+        return controller.login(new Account(username, BenchmarkData.PASSWORD));
+    }
+
+    @Benchmark
+    public ResponseEntity<?> register() {
+        return controller.register(new Account("new-user" + registrations.incrementAndGet(), BenchmarkData.PASSWORD));
+    }
+
+    @Benchmark
+    public boolean accountExists() {
+        return accountService.accountExists(1 + ThreadLocalRandom.current().nextInt(accounts * 2));
+    }
+}
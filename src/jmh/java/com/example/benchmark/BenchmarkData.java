@@ -0,0 +1,180 @@
+package com.example.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.SocialMediaApp;
+import com.example.cache.HomeTimelines;
+import com.example.exception.CapacityExceededException;
+import com.example.search.MessageSearchIndex;
+import com.example.service.AccountService;
+import com.example.service.PasswordService;
+import com.example.service.SearchService;
+import com.example.store.InMemoryMessageStore;
+
+/**
+ * Boots the application against a private in-memory H2 database and fills it
+ * with a configurable number of accounts and messages.
+ */
+final class BenchmarkData {
+
+    /**
+     * Password of every seeded account, for benchmarks that log in.
+     */
+    static final String PASSWORD = "password";
+
+    /**
+     * timePostedEpoch of the first seeded message; each following message is one second later.
+     */
+    static final long FIRST_EPOCH = 1669947792L;
+
+    /**
+     * Number of accounts each seeded account follows: account i follows the next ones after it.
+     */
+    static final int FOLLOWS_PER_ACCOUNT = 20;
+
+    private static final int BATCH = 10000;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Starts the application without a web server, on its own database so
+     * concurrent forks never share data.
+     * 
+     * @param properties  Extra properties in key=value form
+     * @return The started context
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        return start(false, properties);
+    }
+
+    /**
+     * Starts the application on its own database so concurrent forks never share data.
+     * 
+     * @param web         Whether to start the embedded web server
+     * @param properties  Extra properties in key=value form
+     * @return The started context
+     */
+    static ConfigurableApplicationContext start(boolean web, String... properties) {
+        List<String> all = new ArrayList<>();
+        all.add("spring.datasource.url=jdbc:h2:mem:benchmark-" + UUID.randomUUID());
+        all.addAll(List.of(properties));
+        return run(web, all);
+    }
+
+    /**
+     * Starts the application without a web server on the file-backed prod profile,
+     * keeping its database and search index in a directory.
+     * 
+     * @param directory   The data directory, which may already hold a database
+     * @param properties  Extra properties in key=value form
+     * @return The started context
+     */
+    static ConfigurableApplicationContext startFileBacked(Path directory, String... properties) {
+        List<String> all = new ArrayList<>();
+        all.add("spring.profiles.active=prod");
+        all.add("app.data-directory=" + directory.toAbsolutePath());
+        all.addAll(List.of(properties));
+        return run(false, all);
+    }
+
+    private static ConfigurableApplicationContext run(boolean web, List<String> properties) {
+        // Passed as command line arguments, as default properties would lose to application.properties
+        List<String> args = new ArrayList<>();
+        args.add("--logging.level.root=WARN");
+        // Benchmarks drive the API from one client at rates far above the limits, unless asked to measure them
+        if (properties.stream().noneMatch(property -> property.startsWith("app.rate-limit.enabled="))) {
+            args.add("--app.rate-limit.enabled=false");
+        }
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(SocialMediaApp.class)
+                .web(web ? WebApplicationType.SERVLET : WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run(args.toArray(new String[0]));
+    }
+
+    /**
+     * Replaces the sample rows from data.sql with accounts 1..accounts, named
+     * user1..userN, and messages 1..messages spread round-robin over them.
+     * Each account follows up to {@value #FOLLOWS_PER_ACCOUNT} others.
+     * The id sequences are moved past the seeded rows, and the in-memory
+     * message store, when it is the engine, is loaded from them.
+     * 
+     * @param context
+     * @param accounts
+     * @param messages
+     */
+    static void seed(ConfigurableApplicationContext context, int accounts, int messages) {
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        String hash;
+        try {
+            hash = context.getBean(PasswordService.class).hash(PASSWORD);
+        } catch (CapacityExceededException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        jdbc.update("delete from follow");
+        jdbc.update("delete from message");
+        jdbc.update("delete from account");
+
+        List<Object[]> rows = new ArrayList<>(BATCH);
+        for (int i = 1; i <= accounts; i++) {
+            rows.add(new Object[] { i, "user" + i, hash });
+            if (rows.size() == BATCH || i == accounts) {
+                jdbc.batchUpdate("insert into account (accountId, username, password) values (?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+        for (int i = 1; i <= messages; i++) {
+            rows.add(new Object[] { i, 1 + (i % accounts), "benchmark message " + i, FIRST_EPOCH + i });
+            if (rows.size() == BATCH || i == messages) {
+                jdbc.batchUpdate("insert into message (messageId, postedBy, messageText, timePostedEpoch)"
+                        + " values (?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+
+        int follows = Math.min(FOLLOWS_PER_ACCOUNT, accounts - 1);
+        for (int i = 1; i <= accounts; i++) {
+            for (int k = 1; k <= follows; k++) {
+                rows.add(new Object[] { i, 1 + (i - 1 + k) % accounts });
+            }
+            if (rows.size() >= BATCH || i == accounts) {
+                jdbc.batchUpdate("insert into follow (followerId, followeeId) values (?, ?)", rows);
+                rows.clear();
+            }
+        }
+
+        // message_seq hands out blocks of 50 ending at the value read, so leave a block of headroom
+        jdbc.execute("alter sequence message_seq restart with " + (messages + 100));
+        jdbc.execute("alter sequence hibernate_sequence restart with " + (accounts + 1));
+        // The rows were written behind Hibernate's back, so nothing cached before this is valid
+        context.getBean(EntityManagerFactory.class).getCache().evictAll();
+        InMemoryMessageStore messageStore = context.getBean(InMemoryMessageStore.class);
+        if (messageStore.isEnabled()) {
+            try {
+                messageStore.importMessages();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        context.getBean(HomeTimelines.class).clear();
+        context.getBean(MessageSearchIndex.class).clear();
+        context.getBean(SearchService.class).loadSearchIndex();
+        context.getBean(AccountService.class).loadAccountIdIndex();
+    }
+}
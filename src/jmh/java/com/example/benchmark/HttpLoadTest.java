@@ -0,0 +1,374 @@
+package com.example.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * End-to-end HTTP load generator. Boots the application on a random port against a
+ * private in-memory H2 database, seeds it, and then runs closed-loop clients that each
+ * send one request at a time, picking the endpoint from a weighted mix. Latency is
+ * recorded per endpoint in HdrHistograms and reported from p50 to p99.99.
+ * <p>
+ * Options are passed as {@code name=value}:
+ * <ul>
+ * <li>{@code accounts} (100) and {@code messages} (10000): rows to seed</li>
+ * <li>{@code clients} (32): concurrent clients</li>
+ * <li>{@code warmup} (10) and {@code duration} (30): seconds to run before and while recording</li>
+ * <li>{@code mix}: comma-separated endpoint:weight pairs, see {@link Endpoint}</li>
+ * <li>{@code result} (target/loadtest-result.json): where to write the JSON report</li>
+ * </ul>
+ * Any other {@code name=value} option is passed to the application as a property.
+ * Because the clients are closed-loop, latencies under saturation are a lower bound.
+ */
+public final class HttpLoadTest {
+
+    private static final String DEFAULT_MIX = "register:1,login:4,createMessage:10,getMessage:40,"
+            + "getMessagesPage:15,accountMessages:15,accountMessagesPage:15";
+
+    /**
+     * The endpoints the load test can call, named as in the mix option.
+     */
+    enum Endpoint {
+        REGISTER("register") {
+            @Override
+            HttpRequest request(HttpLoadTest test, ThreadLocalRandom random) {
+                String body = "{\"username\":\"load-user" + test.registrations.incrementAndGet()
+                        + "\",\"password\":\"" + BenchmarkData.PASSWORD + "\"}";
+                return test.post("/register", body);
+            }
+        },
+        LOGIN("login") {
+            @Override
+            HttpRequest request(HttpLoadTest test, ThreadLocalRandom random) {
+                String body = "{\"username\":\"user" + test.randomAccount(random)
+                        + "\",\"password\":\"" + BenchmarkData.PASSWORD + "\"}";
+                return test.post("/login", body);
+            }
+        },
+        CREATE_MESSAGE("createMessage") {
+            @Override
+            HttpRequest request(HttpLoadTest test, ThreadLocalRandom random) {
+                String body = "{\"postedBy\":" + test.randomAccount(random)
+                        + ",\"messageText\":\"load test message\",\"timePostedEpoch\":" + BenchmarkData.FIRST_EPOCH + "}";
+                return test.post("/messages", body);
+            }
+        },
+        GET_MESSAGE("getMessage") {
+            @Override
+            HttpRequest request(HttpLoadTest test, ThreadLocalRandom random) {
+                return test.get("/messages/" + (1 + random.nextInt(test.messages)));
+            }
+        },
+        GET_MESSAGES_PAGE("getMessagesPage") {
+            @Override
+            HttpRequest request(HttpLoadTest test, ThreadLocalRandom random) {
+                return test.get("/messages?limit=100");
+            }
+        },
+        GET_ALL_MESSAGES("getAllMessages") {
+            @Override
+            HttpRequest request(HttpLoadTest test, ThreadLocalRandom random) {
+                return test.get("/messages");
+            }
+        },
+        ACCOUNT_MESSAGES("accountMessages") {
+            @Override
+            HttpRequest request(HttpLoadTest test, ThreadLocalRandom random) {
+                return test.get("/accounts/" + test.randomAccount(random) + "/messages");
+            }
+        },
+        ACCOUNT_MESSAGES_PAGE("accountMessagesPage") {
+            @Override
+            HttpRequest request(HttpLoadTest test, ThreadLocalRandom random) {
+                return test.get("/accounts/" + test.randomAccount(random) + "/messages?limit=20");
+            }
+        },
+        HOME_TIMELINE("homeTimeline") {
+            @Override
+            HttpRequest request(HttpLoadTest test, ThreadLocalRandom random) {
+                return test.get("/accounts/" + test.randomAccount(random) + "/timeline?limit=20");
+            }
+        },
+        SEARCH("search") {
+            @Override
+            HttpRequest request(HttpLoadTest test, ThreadLocalRandom random) {
+                return test.get("/messages/search?limit=20&q=" + (1 + random.nextInt(test.messages)));
+            }
+        };
+
+        final String key;
+
+        Endpoint(String key) {
+            this.key = key;
+        }
+
+        abstract HttpRequest request(HttpLoadTest test, ThreadLocalRandom random);
+
+        static Endpoint forKey(String key) {
+            for (Endpoint endpoint : values()) {
+                if (endpoint.key.equals(key)) {
+                    return endpoint;
+                }
+            }
+            throw new IllegalArgumentException("Unknown endpoint in mix: " + key);
+        }
+    }
+
+    private final int accounts;
+    private final int messages;
+    private final HttpClient client;
+    private final String baseUrl;
+    private final AtomicLong registrations = new AtomicLong();
+
+    private final Endpoint[] mix;
+    private final Map<Endpoint, Histogram> latencies = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, LongAdder> errors = new EnumMap<>(Endpoint.class);
+    private volatile boolean recording;
+
+    private HttpLoadTest(int accounts, int messages, int port, Endpoint[] mix) {
+        this.accounts = accounts;
+        this.messages = messages;
+        this.baseUrl = "http://localhost:" + port;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.mix = mix;
+        for (Endpoint endpoint : Endpoint.values()) {
+            // One minute at microsecond precision, three significant digits
+            latencies.put(endpoint, new ConcurrentHistogram(60_000_000L, 3));
+            errors.put(endpoint, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        run(parseOptions(args));
+    }
+
+    /**
+     * Parses {@code name=value} arguments into an ordered map of options.
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Options must look like name=value: " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Runs one load test with the given options and prints and saves its report.
+     * 
+     * @return The report, as written to the result file
+     */
+    static Map<String, Object> run(Map<String, String> options) throws Exception {
+        options = new LinkedHashMap<>(options);
+        int accounts = Integer.parseInt(take(options, "accounts", "100"));
+        int messages = Integer.parseInt(take(options, "messages", "10000"));
+        int clients = Integer.parseInt(take(options, "clients", "32"));
+        int warmupSeconds = Integer.parseInt(take(options, "warmup", "10"));
+        int durationSeconds = Integer.parseInt(take(options, "duration", "30"));
+        Endpoint[] mix = parseMix(take(options, "mix", DEFAULT_MIX));
+        File result = new File(take(options, "result", "target/loadtest-result.json"));
+
+        List<String> properties = new ArrayList<>();
+        properties.add("server.port=0");
+        options.forEach((name, value) -> properties.add(name + "=" + value));
+
+        ConfigurableApplicationContext context = BenchmarkData.start(true, properties.toArray(new String[0]));
+        try {
+            BenchmarkData.seed(context, accounts, messages);
+            int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+            HttpLoadTest test = new HttpLoadTest(accounts, messages, port, mix);
+
+            System.out.printf("Seeded %d accounts and %d messages, running %d clients against port %d%n",
+                    accounts, messages, clients, port);
+            long elapsedNanos = test.run(clients, warmupSeconds, durationSeconds);
+            return test.report(elapsedNanos, result);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static String take(Map<String, String> options, String name, String defaultValue) {
+        String value = options.remove(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Expands "name:weight" pairs into a table with one slot per unit of weight,
+     * so picking a random slot picks an endpoint in proportion to its weight.
+     */
+    private static Endpoint[] parseMix(String mix) {
+        List<Endpoint> slots = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            Endpoint endpoint = Endpoint.forKey(parts[0]);
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            for (int i = 0; i < weight; i++) {
+                slots.add(endpoint);
+            }
+        }
+        if (slots.isEmpty()) {
+            throw new IllegalArgumentException("The mix must contain at least one endpoint");
+        }
+        return slots.toArray(new Endpoint[0]);
+    }
+
+    /**
+     * Runs the clients through the warmup and then the measured period.
+     * 
+     * @return The length of the measured period in nanoseconds
+     */
+    private long run(int clients, int warmupSeconds, int durationSeconds) throws InterruptedException {
+        long warmupEnd = System.nanoTime() + Duration.ofSeconds(warmupSeconds).toNanos();
+        long end = warmupEnd + Duration.ofSeconds(durationSeconds).toNanos();
+        CountDownLatch done = new CountDownLatch(clients);
+
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < end) {
+                        call(mix[random.nextInt(mix.length)], random);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Thread.sleep(Math.max(0, (warmupEnd - System.nanoTime()) / 1_000_000));
+        for (Endpoint endpoint : Endpoint.values()) {
+            latencies.get(endpoint).reset();
+            errors.get(endpoint).reset();
+        }
+        recording = true;
+        long start = System.nanoTime();
+        done.await();
+        return System.nanoTime() - start;
+    }
+
+    private void call(Endpoint endpoint, ThreadLocalRandom random) {
+        HttpRequest request = endpoint.request(this, random);
+        long start = System.nanoTime();
+        boolean ok;
+        try {
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            ok = response.statusCode() >= 200 && response.statusCode() < 300;
+        } catch (IOException ex) {
+            ok = false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+        if (!recording) {
+            return;
+        }
+        if (ok) {
+            latencies.get(endpoint).recordValue(Math.min(micros, latencies.get(endpoint).getHighestTrackableValue()));
+        } else {
+            errors.get(endpoint).increment();
+        }
+    }
+
+    private Map<String, Object> report(long elapsedNanos, File result) throws IOException {
+        double seconds = elapsedNanos / 1e9;
+        List<Map<String, Object>> rows = new ArrayList<>();
+        System.out.printf("%n%-22s %10s %8s %10s %9s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors",
+                "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "p99.99 ms", "max ms");
+
+        for (Endpoint endpoint : Endpoint.values()) {
+            Histogram histogram = latencies.get(endpoint);
+            long errorCount = errors.get(endpoint).sum();
+            if (histogram.getTotalCount() == 0 && errorCount == 0) {
+                continue;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("endpoint", endpoint.key);
+            row.put("requests", histogram.getTotalCount());
+            row.put("errors", errorCount);
+            row.put("throughput", histogram.getTotalCount() / seconds);
+            row.put("p50", millis(histogram, 50));
+            row.put("p90", millis(histogram, 90));
+            row.put("p99", millis(histogram, 99));
+            row.put("p99.9", millis(histogram, 99.9));
+            row.put("p99.99", millis(histogram, 99.99));
+            row.put("max", histogram.getMaxValue() / 1000.0);
+            rows.add(row);
+
+            System.out.printf("%-22s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n", endpoint.key,
+                    histogram.getTotalCount(), errorCount, row.get("throughput"), row.get("p50"), row.get("p90"),
+                    row.get("p99"), row.get("p99.9"), row.get("p99.99"), row.get("max"));
+        }
+
+        long totalRequests = 0;
+        long totalErrors = 0;
+        for (Map<String, Object> row : rows) {
+            totalRequests += (Long) row.get("requests");
+            totalErrors += (Long) row.get("errors");
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("durationSeconds", seconds);
+        report.put("requests", totalRequests);
+        report.put("errors", totalErrors);
+        report.put("throughput", totalRequests / seconds);
+        report.put("endpoints", rows);
+        if (result.getParentFile() != null) {
+            result.getParentFile().mkdirs();
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(result, report);
+        System.out.println("\nLoad test result is saved to " + result.getAbsolutePath());
+        return report;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private int randomAccount(ThreadLocalRandom random) {
+        return 1 + random.nextInt(accounts);
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.cache.JsonResponseCache;
+import com.example.cache.MessageCache;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Hot reads of GET /messages/{messageId} and of one page of GET /accounts/{accountId}/messages
+ * as far as the response body: a cached message or page serialized by Jackson on every
+ * read, against the body kept by the {@link JsonResponseCache}. Run with {@code -prof gc}
+ * to compare what each read allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonResponseCacheBenchmark {
+
+    /**
+     * The stamp every body is cached with, as if nothing had changed since startup.
+     */
+    private static final long STAMP = 1;
+
+    @Param({ "jackson", "cached" })
+    String body;
+
+    @Param({ "10000" })
+    int messages;
+
+    @Param({ "100" })
+    int pageSize;
+
+    MessageCache messageCache;
+    JsonResponseCache jsonCache;
+    ObjectMapper objectMapper;
+    IntFunction<Optional<Message>> loader;
+    List<List<Message>> pages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        messageCache = new MessageCache("tinylfu", messages, 0);
+        jsonCache = new JsonResponseCache(256L << 20, 0);
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        loader = id -> Optional.of(new Message(id, 1 + id % 100, "benchmark message " + id,
+                BenchmarkData.FIRST_EPOCH + id));
+        pages = new ArrayList<>();
+        for (int first = 1; first + pageSize - 1 <= messages; first += pageSize) {
+            List<Message> page = new ArrayList<>(pageSize);
+            for (int id = first + pageSize - 1; id >= first; id--) {
+                page.add(messageCache.get(id, loader).orElseThrow());
+            }
+            pages.add(page);
+        }
+        for (int id = 1; id <= messages; id++) {
+            getMessageJson(id);
+        }
+        for (int page = 0; page < pages.size(); page++) {
+            getPageJson(page);
+        }
+    }
+
+    @Benchmark
+    public byte[] getMessageJson() {
+        return getMessageJson(1 + ThreadLocalRandom.current().nextInt(messages));
+    }
+
+    @Benchmark
+    public byte[] getPageJson() {
+        return getPageJson(ThreadLocalRandom.current().nextInt(pages.size()));
+    }
+
+    private byte[] getMessageJson(int id) {
+        if (body.equals("cached")) {
+            return jsonCache.getMessage(id, STAMP,
+                    key -> messageCache.get(key, loader).map(MessageCache::toJson)).orElseThrow();
+        }
+        return writeValueAsBytes(messageCache.get(id, loader).orElseThrow());
+    }
+
+    private byte[] getPageJson(int page) {
+        if (body.equals("cached")) {
+            return jsonCache.getPage(page, String.valueOf(pageSize), STAMP,
+                    () -> new JsonResponseCache.Page(JsonResponseCache.toJson(pages.get(page)), null)).getJson();
+        }
+        return writeValueAsBytes(pages.get(page));
+    }
+
+    private byte[] writeValueAsBytes(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
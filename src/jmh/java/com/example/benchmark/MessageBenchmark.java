@@ -0,0 +1,144 @@
+package com.example.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import com.example.cache.MessageVersions;
+import com.example.controller.SocialMediaController;
+import com.example.entity.Message;
+import com.example.service.MessageService;
+import com.example.service.SearchService;
+import com.example.service.TimelineService;
+
+/**
+ * The message hot paths, from the controller down to H2, at several table sizes.
+ * The {@code NotModified} reads revalidate with a matching If-None-Match and get a 304.
+ * Override the sizes with {@code -p messages=... -p accounts=...}.
+ * HTTP and JSON are left out; see {@link SerializationBenchmark} for the latter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MessageBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    int messages;
+
+    @Param({ "100" })
+    int accounts;
+
+    @Param({ "100" })
+    int pageSize;
+
+    ConfigurableApplicationContext context;
+    SocialMediaController controller;
+    MessageService messageService;
+    TimelineService timelineService;
+    SearchService searchService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.start();
+        BenchmarkData.seed(context, accounts, messages);
+        controller = context.getBean(SocialMediaController.class);
+        messageService = context.getBean(MessageService.class);
+        timelineService = context.getBean(TimelineService.class);
+        searchService = context.getBean(SearchService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> createMessage() {
+        int postedBy = 1 + ThreadLocalRandom.current().nextInt(accounts);
+        return controller.createMessage(new Message(postedBy, "benchmark message", BenchmarkData.FIRST_EPOCH));
+    }
+
+    @Benchmark
+    public ResponseEntity<?> getMessage() {
+        return controller.getMessage(1 + ThreadLocalRandom.current().nextInt(messages), HttpHeaders.EMPTY);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> getMessageNotModified() {
+        int id = 1 + ThreadLocalRandom.current().nextInt(messages);
+        return controller.getMessage(id, ifNoneMatch(messageService.getMessageStamp(id)));
+    }
+
+    @Benchmark
+    public ResponseEntity<?> getAllMessages() {
+        return controller.getAllMessage(null, null);
+    }
+
+    @Benchmark
+    public Object getMessagesPage() {
+        return messageService.getMessagesAfter(ThreadLocalRandom.current().nextInt(messages), pageSize);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> findAllByUser() {
+        return controller.getAllMessagesForUser(1 + ThreadLocalRandom.current().nextInt(accounts), null, null,
+                HttpHeaders.EMPTY);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> findAllByUserNotModified() {
+        int id = 1 + ThreadLocalRandom.current().nextInt(accounts);
+        return controller.getAllMessagesForUser(id, null, null, ifNoneMatch(messageService.getAccountStamp(id)));
+    }
+
+    @Benchmark
+    public Object findPageByUser() {
+        return messageService.findPageByUser(1 + ThreadLocalRandom.current().nextInt(accounts), null, 0, pageSize);
+    }
+
+    @Benchmark
+    public Object homeTimelinePage() {
+        return timelineService.getHomeTimeline(1 + ThreadLocalRandom.current().nextInt(accounts), null, 0, pageSize);
+    }
+
+    /**
+     * Every seeded message holds its own number, so this matches one message.
+     */
+    @Benchmark
+    public Object searchRareTerm() {
+        return searchService.search(String.valueOf(1 + ThreadLocalRandom.current().nextInt(messages)), null, 0, pageSize);
+    }
+
+    /**
+     * Every seeded message holds the word "message", so this ranks the whole index.
+     */
+    @Benchmark
+    public Object searchCommonTerm() {
+        return searchService.search("message", null, 0, pageSize);
+    }
+
+    private static HttpHeaders ifNoneMatch(long stamp) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(MessageVersions.etag(stamp));
+        return headers;
+    }
+}
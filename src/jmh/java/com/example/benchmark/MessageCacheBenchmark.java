@@ -0,0 +1,76 @@
+package com.example.benchmark;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.cache.MessageCache;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Cache hits of GET /messages/{messageId} as far as the response body, with every
+ * message cached: a message from the heap policies serialized by Jackson, and the
+ * JSON encoded straight from the {@code offheap} policy. Run with {@code -prof gc}
+ * to compare what each read allocates; the heap policies also hold every message
+ * on the heap, which the off-heap one does not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCacheBenchmark {
+
+    @Param({ "tinylfu", "offheap" })
+    String policy;
+
+    @Param({ "1000000" })
+    int messages;
+
+    MessageCache messageCache;
+    ObjectMapper objectMapper;
+    IntFunction<Optional<Message>> loader;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        messageCache = new MessageCache(policy, messages, 256L << 20);
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        loader = id -> Optional.of(new Message(id, 1 + id % 100, "benchmark message " + id,
+                BenchmarkData.FIRST_EPOCH + id));
+        for (int id = 1; id <= messages; id++) {
+            messageCache.get(id, loader);
+        }
+    }
+
+    @Benchmark
+    public Optional<Message> getMessage() {
+        return messageCache.get(1 + ThreadLocalRandom.current().nextInt(messages), loader);
+    }
+
+    @Benchmark
+    public byte[] getMessageJson() throws JsonProcessingException {
+        int id = 1 + ThreadLocalRandom.current().nextInt(messages);
+        if (messageCache.getPolicy() == MessageCache.Policy.OFFHEAP) {
+            return messageCache.getJson(id, loader).orElseThrow();
+        }
+        return objectMapper.writeValueAsBytes(messageCache.get(id, loader).orElseThrow());
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Message;
+import com.example.service.MessageService;
+
+/**
+ * The message reads of {@link MessageService} with the messages in the message
+ * table behind JPA and its caches, and in the in-memory message store. Ids are
+ * drawn from all the messages, so with more of them than the caches hold most
+ * JPA reads reach H2. Override the sizes with {@code -p messages=... -p accounts=...}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MessageStoreBenchmark {
+
+    @Param({ "jpa", "memory" })
+    String engine;
+
+    @Param({ "100000" })
+    int messages;
+
+    @Param({ "1000" })
+    int accounts;
+
+    @Param({ "100" })
+    int pageSize;
+
+    Path directory;
+    ConfigurableApplicationContext context;
+    MessageService messageService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("message-store-benchmark");
+        context = BenchmarkData.start("app.message-store.engine=" + engine,
+                "app.message-store.log-file=" + directory.resolve("messages.log").toAbsolutePath());
+        BenchmarkData.seed(context, accounts, messages);
+        messageService = context.getBean(MessageService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
+    @Benchmark
+    public Optional<Message> getMessage() {
+        return messageService.getMessage(1 + ThreadLocalRandom.current().nextInt(messages));
+    }
+
+    @Benchmark
+    public List<Message> findAllByUser() {
+        return messageService.findAllByUser(1 + ThreadLocalRandom.current().nextInt(accounts));
+    }
+
+    @Benchmark
+    public List<Message> findPageByUser() {
+        return messageService.findPageByUser(1 + ThreadLocalRandom.current().nextInt(accounts), null, 0, pageSize);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesPage() {
+        return messageService.getMessagesAfter(ThreadLocalRandom.current().nextInt(messages), pageSize);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.exception.CapacityExceededException;
+import com.example.service.PasswordService;
+
+/**
+ * Login throughput per core: how many password checks one hashing thread can
+ * complete per second at a given bcrypt cost. {@code singleCore} runs one caller
+ * against a one-thread pool. {@code allCores} runs one caller per core against a
+ * pool of the default size, so its score divided by the core count should stay
+ * close to {@code singleCore}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PasswordHashingBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @State(Scope.Benchmark)
+    public static class SingleThreadPool {
+        @Param({ "10", "12" })
+        int strength;
+
+        PasswordService passwordService;
+        String hash;
+
+        @Setup(Level.Trial)
+        public void setUp() throws CapacityExceededException {
+            passwordService = new PasswordService(strength, 1, 1024);
+            hash = passwordService.hash(PASSWORD);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            passwordService.shutdown();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DefaultPool {
+        @Param({ "10", "12" })
+        int strength;
+
+        PasswordService passwordService;
+        String hash;
+
+        @Setup(Level.Trial)
+        public void setUp() throws CapacityExceededException {
+            passwordService = new PasswordService(strength, 0, 1024);
+            hash = passwordService.hash(PASSWORD);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            passwordService.shutdown();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean singleCore(SingleThreadPool state) throws CapacityExceededException {
+        return state.passwordService.matches(PASSWORD, state.hash);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean allCores(DefaultPool state) throws CapacityExceededException {
+        return state.passwordService.matches(PASSWORD, state.hash);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.ratelimit.RateLimiter;
+
+/**
+ * The cost the rate limiter adds to a request that is let through: the client
+ * and global buckets taken by the filter, and an account bucket taken by
+ * createMessage. Limits are set so high that no request is rejected.
+ * {@code clients} is the number of distinct client addresses and accounts, all
+ * with a bucket already; {@code contended} runs one caller per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    @Param({ "1", "10000" })
+    int clients;
+
+    RateLimiter rateLimiter;
+    String[] addresses;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rateLimiter = new RateLimiter(true, 1e12, Integer.MAX_VALUE, 1e12, Integer.MAX_VALUE, 1e12,
+                Integer.MAX_VALUE, 1e12, Integer.MAX_VALUE, 1_000_000);
+        addresses = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            addresses[i] = "10.0." + (i >> 8) + "." + (i & 0xff);
+            rateLimiter.acquireRequest(addresses[i]);
+            rateLimiter.acquireMessage(i);
+        }
+    }
+
+    @Benchmark
+    public long acquireRequest() {
+        return rateLimiter.acquireRequest(addresses[ThreadLocalRandom.current().nextInt(clients)]);
+    }
+
+    @Benchmark
+    public long acquireMessage() {
+        return rateLimiter.acquireMessage(ThreadLocalRandom.current().nextInt(clients));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long acquireRequestContended() {
+        return rateLimiter.acquireRequest(addresses[ThreadLocalRandom.current().nextInt(clients)]);
+    }
+}
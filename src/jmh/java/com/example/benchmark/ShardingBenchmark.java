@@ -0,0 +1,75 @@
+package com.example.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import com.example.controller.SocialMediaController;
+import com.example.entity.Message;
+
+/**
+ * Message creation with many concurrent callers as the messages are spread
+ * over more shards, each its own in-memory H2 database with its own pool.
+ * Every shard commits on its own, so writes scale with the shards until the
+ * CPUs, not the databases, are the limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class ShardingBenchmark {
+
+    @Param({ "1", "2", "4" })
+    int shards;
+
+    @Param({ "100" })
+    int accounts;
+
+    ConfigurableApplicationContext context;
+    SocialMediaController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.start("app.sharding.shards=" + shards,
+                "app.sharding.url=jdbc:h2:mem:benchmark-" + UUID.randomUUID() + "-shard{shard}",
+                "spring.jpa.open-in-view=false");
+        BenchmarkData.seed(context, accounts, 0);
+        controller = context.getBean(SocialMediaController.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> createMessage() {
+        int postedBy = 1 + ThreadLocalRandom.current().nextInt(accounts);
+        ResponseEntity<?> response = controller.createMessage(
+                new Message(postedBy, "benchmark message", BenchmarkData.FIRST_EPOCH));
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new IllegalStateException("createMessage returned " + response.getStatusCode());
+        }
+        return response;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Time until the application is ready, that is until {@code SpringApplication.run}
+ * returns after the startup loaders, on the file-backed prod profile with a
+ * database that already holds {@code messages} rows. {@code warm} starts reuse
+ * the search index left by the previous clean shutdown; cold starts delete it
+ * first, so it is rebuilt from the message table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    int messages;
+
+    @Param({ "1000" })
+    int accounts;
+
+    @Param({ "true", "false" })
+    boolean warm;
+
+    Path directory;
+    ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void createDatabase() throws IOException {
+        directory = Files.createTempDirectory("startup-benchmark");
+        try (ConfigurableApplicationContext seeding = BenchmarkData.startFileBacked(directory)) {
+            BenchmarkData.seed(seeding, accounts, messages);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void prepareIndex() throws IOException {
+        if (!warm) {
+            delete(directory.resolve("search-index"));
+        }
+    }
+
+    @Benchmark
+    public ConfigurableApplicationContext start() {
+        context = BenchmarkData.startFileBacked(directory);
+        return context;
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() {
+        context.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDatabase() throws IOException {
+        delete(directory);
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(path)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path each : paths) {
+            Files.delete(each);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Compares request throughput on platform threads and on virtual threads
+ * ({@code app.threads.virtual}) by running {@link HttpLoadTest} once per thread
+ * mode and client count. Takes the same {@code name=value} options as the load
+ * test, plus:
+ * <ul>
+ * <li>{@code clientCounts} (1000,10000): the client counts to compare</li>
+ * <li>{@code result} (target/threadmodes-result.json): where to write the combined report</li>
+ * </ul>
+ * Tomcat's connection limit is raised above the client count for both modes, so
+ * the comparison is between threading models rather than connection limits; the
+ * operating system's open file limit must allow two sockets per client. The
+ * virtual thread runs are skipped on Java versions before 21.
+ */
+public final class ThreadModeComparison {
+
+    private ThreadModeComparison() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = HttpLoadTest.parseOptions(args);
+        String clientCounts = options.getOrDefault("clientCounts", "1000,10000");
+        options.remove("clientCounts");
+        File result = new File(options.getOrDefault("result", "target/threadmodes-result.json"));
+        options.remove("result");
+        boolean virtualThreadsAvailable = Runtime.version().feature() >= 21;
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (String count : clientCounts.split(",")) {
+            int clients = Integer.parseInt(count.trim());
+            for (boolean virtual : new boolean[] { false, true }) {
+                String mode = virtual ? "virtual" : "platform";
+                if (virtual && !virtualThreadsAvailable) {
+                    System.out.printf("Skipping %d clients on virtual threads: Java %d has none%n",
+                            clients, Runtime.version().feature());
+                    continue;
+                }
+                Map<String, String> runOptions = new LinkedHashMap<>(options);
+                runOptions.put("clients", String.valueOf(clients));
+                runOptions.put("app.threads.virtual", String.valueOf(virtual));
+                runOptions.put("server.tomcat.max-connections", String.valueOf(Math.max(8192, clients * 2)));
+                runOptions.put("result", new File(result.getParentFile(),
+                        "threadmodes-" + mode + "-" + clients + ".json").getPath());
+
+                System.out.printf("%n=== %d clients on %s threads ===%n", clients, mode);
+                Map<String, Object> report = HttpLoadTest.run(runOptions);
+
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("threads", mode);
+                row.put("clients", clients);
+                row.put("requests", report.get("requests"));
+                row.put("errors", report.get("errors"));
+                row.put("throughput", report.get("throughput"));
+                rows.add(row);
+            }
+        }
+
+        System.out.printf("%n%-10s %8s %12s %8s %10s%n", "threads", "clients", "requests", "errors", "req/s");
+        for (Map<String, Object> row : rows) {
+            System.out.printf("%-10s %8d %12d %8d %10.1f%n", row.get("threads"), row.get("clients"),
+                    row.get("requests"), row.get("errors"), row.get("throughput"));
+        }
+
+        if (result.getParentFile() != null) {
+            result.getParentFile().mkdirs();
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(result, rows);
+        System.out.println("\nThread mode comparison is saved to " + result.getAbsolutePath());
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import com.example.controller.SocialMediaController;
+import com.example.entity.Message;
+
+/**
+ * Message creation with one commit per message against write-behind with one
+ * commit per batch, with many concurrent callers. Write-behind runs with a
+ * queue large enough that the writer, not the queue, is the limit; a score
+ * that includes 503s would say nothing, so those are counted as failures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+    @Param({ "false", "true" })
+    boolean writeBehind;
+
+    @Param({ "10" })
+    int flushIntervalMillis;
+
+    @Param({ "100" })
+    int accounts;
+
+    ConfigurableApplicationContext context;
+    SocialMediaController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.start("app.write-behind.enabled=" + writeBehind,
+                "app.write-behind.queue-capacity=1000000",
+                "app.write-behind.flush-interval-ms=" + flushIntervalMillis);
+        BenchmarkData.seed(context, accounts, 1000);
+        controller = context.getBean(SocialMediaController.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> createMessage() {
+        int postedBy = 1 + ThreadLocalRandom.current().nextInt(accounts);
+        ResponseEntity<?> response = controller.createMessage(
+                new Message(postedBy, "benchmark message", BenchmarkData.FIRST_EPOCH));
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new IllegalStateException("createMessage returned " + response.getStatusCode());
+        }
+        return response;
+    }
+}
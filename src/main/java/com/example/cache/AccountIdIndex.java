@@ -0,0 +1,100 @@
+package com.example.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * An in-memory set of existing accountIds, stored as a bitset with one bit per id.
+ * Account ids are dense and never deleted, so a million accounts take about 125 KB.
+ * Lookups are lock-free. Adds run concurrently with each other and only wait
+ * while the bitset grows.
+ * <p>
+ * The index is only authoritative once {@link #markLoaded()} has been called,
+ * so callers must check {@link #isLoaded()} before trusting a miss.
+ */
+@Component
+public class AccountIdIndex {
+
+    private static final int INITIAL_WORDS = 1024;
+
+    private final StampedLock resizeLock = new StampedLock();
+    private volatile AtomicLongArray words = new AtomicLongArray(INITIAL_WORDS);
+    private volatile boolean loaded;
+
+    /**
+     * @param id
+     * @return True if the id has been added to the index
+     */
+    public boolean contains(int id) {
+        if (id < 0) {
+            return false;
+        }
+        AtomicLongArray current = words;
+        int word = id >>> 6;
+        return word < current.length() && (current.get(word) & (1L << id)) != 0;
+    }
+
+    /**
+     * Adds an existing accountId to the index.
+     * 
+     * @param id
+     */
+    public void add(int id) {
+        if (id < 0) {
+            return;
+        }
+        int word = id >>> 6;
+        long mask = 1L << id;
+        long stamp = resizeLock.readLock();
+        try {
+            AtomicLongArray current = words;
+            if (word >= current.length()) {
+                stamp = grow(stamp, word);
+                current = words;
+            }
+            current.getAndUpdate(word, bits -> bits | mask);
+        } finally {
+            resizeLock.unlock(stamp);
+        }
+    }
+
+    /**
+     * Marks the index as holding every existing account, after which a miss
+     * in {@link #contains(int)} means the account does not exist.
+     */
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Grows the bitset so it holds the given word. Called with the read lock held
+     * and returns with a lock held; adds on the old array cannot be lost because
+     * they all hold the read lock while the copy runs under the write lock.
+     */
+    private long grow(long readStamp, int word) {
+        long stamp = resizeLock.tryConvertToWriteLock(readStamp);
+        if (stamp == 0L) {
+            resizeLock.unlockRead(readStamp);
+            stamp = resizeLock.writeLock();
+        }
+        AtomicLongArray current = words;
+        if (word >= current.length()) {
+            int length = current.length();
+            while (length <= word) {
+                length = length > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : length * 2;
+            }
+            AtomicLongArray grown = new AtomicLongArray(length);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            words = grown;
+        }
+        return stamp;
+    }
+}
@@ -0,0 +1,415 @@
+package com.example.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.entity.Message;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+/**
+ * Precomputed home timelines: for each account, the newest messages of the
+ * accounts it follows, newest first and at most {@code app.timeline.max-length}
+ * long. A timeline is built from the database the first time it is read and is
+ * then kept up to date on write: new messages are pushed into the timeline of
+ * every follower, and deleted messages are taken out again. Reading a page
+ * costs O(log n + page size) however many accounts are followed.
+ * <p>
+ * Every message is held once and shared by all the timelines it appears in, so
+ * an edit replaces its text everywhere in O(1). A message is dropped from memory
+ * once it has been trimmed from every timeline.
+ * <p>
+ * At most {@code app.timeline.max-feeds} timelines are held; beyond that the
+ * least valuable ones are dropped along with their followers' entries, and are
+ * built again on their next read.
+ * <p>
+ * Each timeline has its own lock. Edits and deletes also wait for timelines
+ * that are being built, so a change that lands while the database is being
+ * read is never lost.
+ */
+@Component
+public class HomeTimelines {
+
+    /**
+     * Loads what a timeline is built from.
+     */
+    public interface Loader {
+
+        /**
+         * @param accountId
+         * @return The accountIds followed by the account
+         */
+        List<Integer> followeeIds(int accountId);
+
+        /**
+         * @param accountId
+         * @param limit
+         * @return The newest messages of the accounts followed by the account, newest first
+         */
+        List<Message> newestFollowed(int accountId, int limit);
+    }
+
+    private static final Comparator<Entry> NEWEST_FIRST = Comparator
+            .comparingLong((Entry entry) -> entry.timePostedEpoch).reversed()
+            .thenComparing(Comparator.comparingInt((Entry entry) -> entry.messageId).reversed());
+
+    private final int maxLength;
+    private final Cache<Integer, Feed> feeds;
+    /**
+     * followeeId to the followers whose timeline has been built.
+     */
+    private final ConcurrentMap<Integer, Set<Integer>> followers = new ConcurrentHashMap<>();
+    /**
+     * messageId to the entry shared by every timeline holding the message.
+     */
+    private final Cache<Integer, Entry> entries = Caffeine.newBuilder().weakValues().build();
+    private final ReadWriteLock changeLock = new ReentrantReadWriteLock();
+    private final LongAdder deliveries = new LongAdder();
+
+    @Autowired
+    public HomeTimelines(@Value("${app.timeline.max-length:800}") int maxLength,
+            @Value("${app.timeline.max-feeds:100000}") long maxFeeds) {
+        this.maxLength = maxLength;
+        // Evicts on the writing thread, so a dropped timeline leaves the follower index before the write returns
+        this.feeds = Caffeine.newBuilder()
+                .maximumSize(maxFeeds)
+                .executor(Runnable::run)
+                .removalListener((Integer accountId, Feed feed, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        forget(accountId, feed);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Returns one page of an account's timeline, building the timeline first if
+     * it has not been read before.
+     *
+     * @param accountId
+     * @param beforeTimePostedEpoch  The timePostedEpoch of the last message of the previous page,
+     *          or null for the first page
+     * @param beforeMessageId        The messageId of the last message of the previous page
+     * @param limit                  The maximum number of messages to return
+     * @param loader                 Reads the follow graph and messages when the timeline is built
+     * @return A list of at most limit messages, newest first
+     */
+    public List<Message> page(int accountId, Long beforeTimePostedEpoch, int beforeMessageId, int limit,
+            Loader loader) {
+        Feed feed = loadedFeed(accountId, loader);
+        List<Message> page = new ArrayList<>(Math.min(limit, maxLength));
+        synchronized (feed) {
+            Collection<Entry> from = beforeTimePostedEpoch == null ? feed.entries
+                    : feed.entries.tailSet(new Entry(beforeTimePostedEpoch, beforeMessageId, 0, null), false);
+            for (Entry entry : from) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(entry.message);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Pushes a new message into the timeline of every follower of its author.
+     * Must be called once the message has been committed.
+     *
+     * @param message
+     */
+    public void add(Message message) {
+        Set<Integer> followerIds = followers.get(message.getPostedBy());
+        if (followerIds == null || followerIds.isEmpty()) {
+            return;
+        }
+        Entry entry = entry(message);
+        for (Integer followerId : followerIds) {
+            Feed feed = feeds.getIfPresent(followerId);
+            if (feed != null) {
+                synchronized (feed) {
+                    feed.insert(entry);
+                }
+                deliveries.increment();
+            }
+        }
+    }
+
+    /**
+     * Pushes many new messages into their followers' timelines.
+     *
+     * @param messages
+     */
+    public void addAll(Collection<Message> messages) {
+        for (Message message : messages) {
+            add(message);
+        }
+    }
+
+    /**
+     * Replaces the text of a message in every timeline holding it.
+     *
+     * @param messageId
+     * @param messageText
+     */
+    public void update(int messageId, String messageText) {
+        changeLock.writeLock().lock();
+        try {
+            Entry entry = entries.getIfPresent(messageId);
+            if (entry != null) {
+                Message message = entry.message;
+                entry.message = new Message(message.getMessageId(), message.getPostedBy(), messageText,
+                        message.getTimePostedEpoch());
+            }
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes a deleted message out of every timeline holding it.
+     *
+     * @param messageId
+     */
+    public void remove(int messageId) {
+        changeLock.writeLock().lock();
+        try {
+            Entry entry = entries.asMap().remove(messageId);
+            if (entry == null) {
+                return;
+            }
+            for (Integer followerId : followers.getOrDefault(entry.postedBy, Set.of())) {
+                Feed feed = feeds.getIfPresent(followerId);
+                if (feed != null) {
+                    synchronized (feed) {
+                        feed.entries.remove(entry);
+                    }
+                }
+            }
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges a newly followed account's newest messages into the follower's
+     * timeline, if it has been built. Must be called once the follow has been committed.
+     *
+     * @param followerId
+     * @param followeeId
+     * @param newestPostedBy  Loads an account's newest messages, newest first, up to a limit
+     */
+    public void follow(int followerId, int followeeId, IntFunction<List<Message>> newestPostedBy) {
+        Feed feed = feeds.getIfPresent(followerId);
+        if (feed == null) {
+            return;
+        }
+        changeLock.readLock().lock();
+        try {
+            synchronized (feed) {
+                // A timeline that is not built yet will read the follow from the database
+                if (!feed.loaded) {
+                    return;
+                }
+                followers.computeIfAbsent(followeeId, id -> ConcurrentHashMap.newKeySet()).add(followerId);
+                feed.followeeIds.add(followeeId);
+                for (Message message : newestPostedBy.apply(maxLength)) {
+                    feed.insert(entry(message));
+                }
+            }
+        } finally {
+            changeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Takes an unfollowed account's messages out of the follower's timeline.
+     * Must be called once the unfollow has been committed.
+     *
+     * @param followerId
+     * @param followeeId
+     */
+    public void unfollow(int followerId, int followeeId) {
+        // Under the write lock, so no build still reading the old follow registers it afterwards,
+        // and none is adding to a set of followers emptied here
+        changeLock.writeLock().lock();
+        try {
+            removeFollower(followeeId, followerId);
+            Feed feed = feeds.getIfPresent(followerId);
+            if (feed != null) {
+                synchronized (feed) {
+                    feed.followeeIds.remove(followeeId);
+                    feed.entries.removeIf(entry -> entry.postedBy == followeeId);
+                }
+            }
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets every timeline, so each one is built again from the database on its next read.
+     */
+    public void clear() {
+        changeLock.writeLock().lock();
+        try {
+            feeds.invalidateAll();
+            followers.clear();
+            entries.invalidateAll();
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return The number of timelines held in memory
+     */
+    public long feedCount() {
+        return feeds.estimatedSize();
+    }
+
+    /**
+     * @return The number of followed accounts with a follower whose timeline is held in memory
+     */
+    public int followeeCount() {
+        return followers.size();
+    }
+
+    /**
+     * @return The number of times a new message has been pushed into a timeline
+     */
+    public long deliveryCount() {
+        return deliveries.sum();
+    }
+
+    /**
+     * Returns the account's timeline, building it if needed. The follower index is
+     * filled before the messages are read, so a message committed during the
+     * build is either read from the database or pushed afterwards.
+     */
+    private Feed loadedFeed(int accountId, Loader loader) {
+        Feed feed = feeds.get(accountId, id -> new Feed());
+        if (feed.loaded) {
+            return feed;
+        }
+        changeLock.readLock().lock();
+        try {
+            synchronized (feed) {
+                if (!feed.loaded) {
+                    for (Integer followeeId : loader.followeeIds(accountId)) {
+                        followers.computeIfAbsent(followeeId, id -> ConcurrentHashMap.newKeySet()).add(accountId);
+                        feed.followeeIds.add(followeeId);
+                    }
+                    for (Message message : loader.newestFollowed(accountId, maxLength)) {
+                        feed.insert(entry(message));
+                    }
+                    feed.loaded = true;
+                }
+            }
+        } finally {
+            changeLock.readLock().unlock();
+        }
+        return feed;
+    }
+
+    /**
+     * Takes an evicted timeline out of the follower index. Under the write lock,
+     * so no build or follow is adding to the sets emptied here. A timeline built
+     * again for the account since the eviction registers the same followees, so
+     * it is left as it is.
+     */
+    private void forget(int accountId, Feed feed) {
+        changeLock.writeLock().lock();
+        try {
+            if (feeds.getIfPresent(accountId) != null) {
+                return;
+            }
+            synchronized (feed) {
+                for (Integer followeeId : feed.followeeIds) {
+                    removeFollower(followeeId, accountId);
+                }
+            }
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a follower from a followee's followers, and the followee once it has none.
+     */
+    private void removeFollower(int followeeId, int followerId) {
+        followers.computeIfPresent(followeeId, (id, followerIds) -> {
+            followerIds.remove(followerId);
+            return followerIds.isEmpty() ? null : followerIds;
+        });
+    }
+
+    /**
+     * Returns the shared entry for a message, creating it from a copy of the
+     * message so later changes to the entity never leak into timelines.
+     */
+    private Entry entry(Message message) {
+        return entries.get(message.getMessageId(), id -> new Entry(
+                message.getTimePostedEpoch() == null ? Long.MIN_VALUE : message.getTimePostedEpoch(),
+                message.getMessageId(), message.getPostedBy(),
+                new Message(message.getMessageId(), message.getPostedBy(), message.getMessageText(),
+                        message.getTimePostedEpoch())));
+    }
+
+    /**
+     * A message as held by the timelines. Ordered on (timePostedEpoch, messageId),
+     * which never change; messages without a timePostedEpoch sort last.
+     */
+    private static final class Entry {
+        final long timePostedEpoch;
+        final int messageId;
+        final int postedBy;
+        volatile Message message;
+
+        Entry(long timePostedEpoch, int messageId, int postedBy, Message message) {
+            this.timePostedEpoch = timePostedEpoch;
+            this.messageId = messageId;
+            this.postedBy = postedBy;
+            this.message = message;
+        }
+    }
+
+    /**
+     * One account's timeline, guarded by its own monitor, with the followees it
+     * is registered under in the follower index.
+     */
+    private final class Feed {
+        final NavigableSet<Entry> entries = new TreeSet<>(NEWEST_FIRST);
+        final Set<Integer> followeeIds = new HashSet<>();
+        volatile boolean loaded;
+
+        /**
+         * Adds an entry and trims the oldest once the timeline is over its maximum length.
+         */
+        void insert(Entry entry) {
+            if (entries.add(entry) && entries.size() > maxLength) {
+                entries.pollLast();
+            }
+        }
+    }
+}
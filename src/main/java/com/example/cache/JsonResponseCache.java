@@ -0,0 +1,240 @@
+package com.example.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.entity.Message;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Response bodies of message reads, kept as the JSON bytes Jackson would write
+ * for them, so a hit is written to the response without any serialization.
+ * Holds single messages by messageId and the pages of each account's messages,
+ * bounded by {@code app.json-cache.max-bytes}; 0 turns the cache off.
+ * <p>
+ * Every body is cached with the {@link MessageVersions} stamp read before it was
+ * built, and is only served while that stamp is still current, so a body built
+ * from content older than a change is never served after the change is recorded.
+ * {@link #invalidateMessage(int)} and {@link #invalidateAccount(int)} drop bodies
+ * that can no longer be served as soon as their message or account changes.
+ * <p>
+ * The cache is off with read replicas, which can serve content older than the
+ * current stamp and would leave it cached until the next change.
+ */
+@Component
+public class JsonResponseCache {
+
+    /**
+     * Pages kept per account; the first pages of an account are read far more
+     * often than the rest, so later ones are not cached once this many are.
+     */
+    static final int MAX_PAGES_PER_ACCOUNT = 16;
+
+    /**
+     * Approximate heap taken by an entry beside its bodies.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * One page of an account's messages as its JSON body, with the cursor of the
+     * following page or null when it is the last one.
+     */
+    public static final class Page {
+        private final byte[] json;
+        private final String nextCursor;
+
+        public Page(byte[] json, String nextCursor) {
+            this.json = json;
+            this.nextCursor = nextCursor;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    private final long maxBytes;
+    private final Cache<Long, Entry> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public JsonResponseCache(@Value("${app.json-cache.max-bytes:67108864}") long maxBytes,
+            @Value("${app.replication.replicas:0}") int replicas) {
+        this.maxBytes = replicas > 0 ? 0 : maxBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(this.maxBytes, 0))
+                .weigher((Long key, Entry entry) -> entry.weight)
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Returns the JSON of a message, building and caching it on a miss. Only
+     * messages that exist are cached.
+     *
+     * @param id
+     * @param stamp   The message's {@link MessageVersions} stamp, read before calling this
+     * @param loader  Builds the JSON of the message when it is not cached
+     * @return The message as JSON if it exists
+     */
+    public Optional<byte[]> getMessage(int id, long stamp, IntFunction<Optional<byte[]>> loader) {
+        Entry cached = cache.getIfPresent(messageKey(id));
+        if (cached != null && cached.stamp == stamp) {
+            hits.increment();
+            return Optional.of(((MessageEntry) cached).json);
+        }
+        misses.increment();
+        Optional<byte[]> json = loader.apply(id);
+        json.ifPresent(body -> cache.put(messageKey(id), new MessageEntry(stamp, body)));
+        return json;
+    }
+
+    /**
+     * Returns one page of an account's messages, building and caching it on a miss.
+     *
+     * @param accountId
+     * @param pageKey   Names the page among the account's pages, from the request's parameters
+     * @param stamp     The account's {@link MessageVersions} stamp, read before calling this
+     * @param loader    Builds the page when it is not cached
+     * @return The page
+     */
+    public Page getPage(int accountId, String pageKey, long stamp, Supplier<Page> loader) {
+        Entry cached = cache.getIfPresent(accountKey(accountId));
+        if (cached != null && cached.stamp == stamp) {
+            Page page = ((AccountEntry) cached).pages.get(pageKey);
+            if (page != null) {
+                hits.increment();
+                return page;
+            }
+        }
+        misses.increment();
+        Page page = loader.get();
+        cache.asMap().compute(accountKey(accountId), (key, current) -> {
+            if (current == null || current.stamp < stamp) {
+                return new AccountEntry(stamp, Map.of(pageKey, page));
+            }
+            // A newer entry was cached meanwhile, or this one is full
+            if (current.stamp > stamp || ((AccountEntry) current).pages.size() >= MAX_PAGES_PER_ACCOUNT) {
+                return current;
+            }
+            Map<String, Page> pages = new HashMap<>(((AccountEntry) current).pages);
+            pages.put(pageKey, page);
+            return new AccountEntry(stamp, pages);
+        });
+        return page;
+    }
+
+    /**
+     * Drops the cached JSON of a message that was updated or deleted.
+     *
+     * @param id
+     */
+    public void invalidateMessage(int id) {
+        cache.invalidate(messageKey(id));
+    }
+
+    /**
+     * Drops the cached pages of an account that posted, updated or deleted a message.
+     *
+     * @param accountId
+     */
+    public void invalidateAccount(int accountId) {
+        cache.invalidate(accountKey(accountId));
+    }
+
+    /**
+     * Encodes messages as the JSON array Jackson would write for them, without Jackson.
+     *
+     * @param messages
+     * @return The JSON
+     */
+    public static byte[] toJson(List<Message> messages) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream(2 + messages.size() * 128);
+        json.write('[');
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                json.write(',');
+            }
+            json.writeBytes(MessageCache.toJson(messages.get(i)));
+        }
+        json.write(']');
+        return json.toByteArray();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    private static long messageKey(int id) {
+        return id & 0xffffffffL;
+    }
+
+    private static long accountKey(int accountId) {
+        return (1L << 32) | (accountId & 0xffffffffL);
+    }
+
+    private abstract static class Entry {
+        final long stamp;
+        final int weight;
+
+        Entry(long stamp, long bytes) {
+            this.stamp = stamp;
+            this.weight = (int) Math.min(Integer.MAX_VALUE, ENTRY_OVERHEAD + bytes);
+        }
+    }
+
+    private static final class MessageEntry extends Entry {
+        final byte[] json;
+
+        MessageEntry(long stamp, byte[] json) {
+            super(stamp, json.length);
+            this.json = json;
+        }
+    }
+
+    private static final class AccountEntry extends Entry {
+        final Map<String, Page> pages;
+
+        AccountEntry(long stamp, Map<String, Page> pages) {
+            super(stamp, pages.values().stream().mapToLong(page -> page.json.length + ENTRY_OVERHEAD).sum());
+            this.pages = pages;
+        }
+    }
+}
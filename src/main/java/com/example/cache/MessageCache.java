@@ -0,0 +1,298 @@
+package com.example.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.entity.Message;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+/**
+ * A size-bounded, in-process read-through cache of messages keyed by messageId.
+ * The eviction policy is chosen with {@code app.message-cache.policy}:
+ * {@code tinylfu} (the default) uses Caffeine's W-TinyLFU, {@code lru} uses a
+ * plain least-recently-used map. Only messages that exist are cached.
+ * <p>
+ * {@code offheap} keeps the messages outside the heap in an {@link OffHeapMessageSlab}
+ * of {@code app.message-cache.offheap-bytes}, bounded by bytes rather than by
+ * {@code app.message-cache.maximum-size} and evicting the oldest messages first.
+ * Its hits are best read with {@link #getJson(int, IntFunction)}, which encodes the
+ * response body without building a message.
+ */
+@Component
+public class MessageCache {
+
+    public enum Policy {
+        LRU, TINYLFU, OFFHEAP
+    }
+
+    private final Policy policy;
+    private final long maximumSize;
+    private final Store store;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Autowired
+    public MessageCache(@Value("${app.message-cache.policy:tinylfu}") String policy,
+            @Value("${app.message-cache.maximum-size:10000}") long maximumSize,
+            @Value("${app.message-cache.offheap-bytes:268435456}") long offHeapBytes) {
+        this.policy = Policy.valueOf(policy.trim().toUpperCase());
+        this.maximumSize = maximumSize;
+        switch (this.policy) {
+        case LRU:
+            this.store = new LruStore();
+            break;
+        case OFFHEAP:
+            this.store = new OffHeapStore(offHeapBytes);
+            break;
+        default:
+            this.store = new TinyLfuStore();
+        }
+    }
+
+    /**
+     * Returns the cached message for an id, loading and caching it on a miss.
+     * 
+     * @param id
+     * @param loader  Loads the message when it is not cached
+     * @return The message if it exists
+     */
+    public Optional<Message> get(int id, IntFunction<Optional<Message>> loader) {
+        Message cached = store.getIfPresent(id);
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached);
+        }
+        misses.increment();
+        return Optional.ofNullable(store.load(id, loader));
+    }
+
+    /**
+     * Returns the cached message for an id as the JSON Jackson would write for it,
+     * loading and caching it on a miss. With the {@code offheap} policy a hit is
+     * encoded straight from off-heap memory.
+     * 
+     * @param id
+     * @param loader  Loads the message when it is not cached
+     * @return The message as JSON if it exists
+     */
+    public Optional<byte[]> getJson(int id, IntFunction<Optional<Message>> loader) {
+        byte[] cached = store.getJsonIfPresent(id);
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached);
+        }
+        misses.increment();
+        return Optional.ofNullable(store.load(id, loader)).map(MessageCache::toJson);
+    }
+
+    /**
+     * Encodes a message as the JSON Jackson would write for it, without Jackson.
+     * 
+     * @param message
+     * @return The JSON
+     */
+    public static byte[] toJson(Message message) {
+        return OffHeapMessageSlab.toJson(message);
+    }
+
+    /**
+     * Removes a message from the cache. Must be called after every change to
+     * the message has been written.
+     * 
+     * @param id
+     */
+    public void invalidate(int id) {
+        store.invalidate(id);
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long size() {
+        return store.size();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * The cache keeps its own copy so that callers changing a managed
+     * entity cannot change what other requests see.
+     */
+    private static Message copyOf(Message message) {
+        return new Message(message.getMessageId(), message.getPostedBy(),
+                message.getMessageText(), message.getTimePostedEpoch());
+    }
+
+    private interface Store {
+        Message getIfPresent(int id);
+
+        default byte[] getJsonIfPresent(int id) {
+            Message message = getIfPresent(id);
+            return message == null ? null : toJson(message);
+        }
+
+        Message load(int id, IntFunction<Optional<Message>> loader);
+
+        void invalidate(int id);
+
+        long size();
+    }
+
+    /**
+     * W-TinyLFU store. Loads run inside Caffeine's per-key compute, so an
+     * invalidation for the same id waits for an in-flight load instead of
+     * racing with it.
+     */
+    private class TinyLfuStore implements Store {
+        private final Cache<Integer, Message> cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .removalListener((Integer id, Message message, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictions.increment();
+                    }
+                })
+                .build();
+
+        @Override
+        public Message getIfPresent(int id) {
+            return cache.getIfPresent(id);
+        }
+
+        @Override
+        public Message load(int id, IntFunction<Optional<Message>> loader) {
+            return cache.get(id, key -> loader.apply(key).map(MessageCache::copyOf).orElse(null));
+        }
+
+        @Override
+        public void invalidate(int id) {
+            cache.invalidate(id);
+        }
+
+        @Override
+        public long size() {
+            return cache.estimatedSize();
+        }
+    }
+
+    /**
+     * LRU store. Loads run outside the lock; a loaded value is only kept if no
+     * invalidation happened while it was being read, so a slow load can never
+     * put back a message that was changed in the meantime.
+     */
+    private class LruStore implements Store {
+        private final AtomicLong invalidations = new AtomicLong();
+        private final Map<Integer, Message> map = new LinkedHashMap<Integer, Message>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Message> eldest) {
+                if (size() > maximumSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        @Override
+        public synchronized Message getIfPresent(int id) {
+            return map.get(id);
+        }
+
+        @Override
+        public Message load(int id, IntFunction<Optional<Message>> loader) {
+            long generation = invalidations.get();
+            Optional<Message> loaded = loader.apply(id);
+            if (loaded.isEmpty()) {
+                return null;
+            }
+            Message copy = copyOf(loaded.get());
+            synchronized (this) {
+                if (invalidations.get() == generation) {
+                    map.put(id, copy);
+                }
+            }
+            return copy;
+        }
+
+        @Override
+        public synchronized void invalidate(int id) {
+            invalidations.incrementAndGet();
+            map.remove(id);
+        }
+
+        @Override
+        public synchronized long size() {
+            return map.size();
+        }
+    }
+
+    /**
+     * Off-heap store. As with the LRU store, loads run outside the slab's locks and
+     * a loaded message is only kept if its segment saw no invalidation meanwhile.
+     */
+    private class OffHeapStore implements Store {
+        private final OffHeapMessageSlab slab;
+
+        OffHeapStore(long bytes) {
+            this.slab = new OffHeapMessageSlab(bytes, evictions);
+        }
+
+        @Override
+        public Message getIfPresent(int id) {
+            return slab.get(id);
+        }
+
+        @Override
+        public byte[] getJsonIfPresent(int id) {
+            return slab.getJson(id);
+        }
+
+        @Override
+        public Message load(int id, IntFunction<Optional<Message>> loader) {
+            long generation = slab.generation(id);
+            Optional<Message> loaded = loader.apply(id);
+            if (loaded.isEmpty()) {
+                return null;
+            }
+            Message copy = copyOf(loaded.get());
+            slab.put(copy, generation);
+            return copy;
+        }
+
+        @Override
+        public void invalidate(int id) {
+            slab.invalidate(id);
+        }
+
+        @Override
+        public long size() {
+            return slab.size();
+        }
+    }
+}
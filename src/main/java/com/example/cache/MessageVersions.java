@@ -0,0 +1,127 @@
+package com.example.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Modification stamps of messages and of each account's messages, from which
+ * HTTP validators (ETag and Last-Modified) are built without loading or
+ * serializing anything. A stamp is the time of the last change in microseconds,
+ * made strictly increasing so that no two changes share one.
+ * <p>
+ * Only changes are recorded: a message or account that has not changed since
+ * startup has the base stamp taken at startup, which is later than any change
+ * made before it. A new message does not get a stamp of its own, as no
+ * validator is ever handed out for a message that does not exist yet, but it
+ * changes the stamp of its account. A change to a message whose author is not
+ * known changes the stamp of every account, as any of them may have posted it.
+ * Each map holds at most {@code app.message-versions.max-size} stamps; when one
+ * would grow beyond that, the base stamp is moved to now and both maps are
+ * cleared, which costs clients one full response per resource but never a
+ * stale one.
+ * <p>
+ * Callers must read a stamp before reading what it describes, and record a
+ * change only once it is visible to readers, so a stamp is never paired with
+ * content older than it.
+ */
+@Component
+public class MessageVersions {
+
+    private final int maxSize;
+    private final AtomicLong lastStamp = new AtomicLong();
+    private final ConcurrentMap<Integer, Long> messageStamps = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Long> accountStamps = new ConcurrentHashMap<>();
+    private final AtomicLong unattributedStamp = new AtomicLong();
+    private volatile long baseStamp;
+
+    @Autowired
+    public MessageVersions(@Value("${app.message-versions.max-size:100000}") int maxSize) {
+        this.maxSize = maxSize;
+        this.baseStamp = nextStamp();
+    }
+
+    /**
+     * @param messageId
+     * @return The stamp of the last change to a message
+     */
+    public long messageStamp(int messageId) {
+        Long stamp = messageStamps.get(messageId);
+        return stamp != null ? stamp : baseStamp;
+    }
+
+    /**
+     * @param accountId
+     * @return The stamp of the last change to any message posted by an account
+     */
+    public long accountStamp(int accountId) {
+        Long stamp = accountStamps.get(accountId);
+        return Math.max(stamp != null ? stamp : baseStamp, unattributedStamp.get());
+    }
+
+    /**
+     * Records that a message was updated or deleted.
+     *
+     * @param messageId
+     * @param postedBy   The account that posted the message, or null when it is not known
+     */
+    public void messageChanged(int messageId, Integer postedBy) {
+        long stamp = nextStamp();
+        record(messageStamps, messageId, stamp);
+        if (postedBy != null) {
+            record(accountStamps, postedBy, stamp);
+        } else {
+            unattributedStamp.accumulateAndGet(stamp, Math::max);
+        }
+    }
+
+    /**
+     * Records that an account posted a message.
+     *
+     * @param postedBy
+     */
+    public void messageCreated(Integer postedBy) {
+        if (postedBy != null) {
+            record(accountStamps, postedBy, nextStamp());
+        }
+    }
+
+    /**
+     * @param stamp
+     * @return A strong ETag for a stamp, quoted
+     */
+    public static String etag(long stamp) {
+        return "\"" + Long.toString(stamp, 36) + "\"";
+    }
+
+    /**
+     * @param stamp
+     * @return The time of a stamp in epoch milliseconds, for a Last-Modified header
+     */
+    public static long lastModified(long stamp) {
+        return stamp / 1000;
+    }
+
+    public long size() {
+        return messageStamps.size() + accountStamps.size();
+    }
+
+    private void record(ConcurrentMap<Integer, Long> stamps, int key, long stamp) {
+        if (stamps.size() >= maxSize && !stamps.containsKey(key)) {
+            // The base moves first, so a reader that misses a cleared stamp gets the new base
+            baseStamp = nextStamp();
+            messageStamps.clear();
+            accountStamps.clear();
+        }
+        stamps.merge(key, stamp, Math::max);
+    }
+
+    private long nextStamp() {
+        long now = System.currentTimeMillis() * 1000;
+        return lastStamp.accumulateAndGet(now, (last, time) -> Math.max(last + 1, time));
+    }
+}
@@ -0,0 +1,523 @@
+package com.example.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.example.entity.Message;
+
+/**
+ * Messages kept outside the Java heap, in direct ByteBuffers, for the
+ * {@code offheap} policy of {@link MessageCache}. Neither the messages nor the
+ * index over them are Java objects, so the heap and the garbage collector's work
+ * stay the same however many messages are cached.
+ * <p>
+ * The slab is split into segments by messageId, each with its own read-write
+ * lock, so reads of one segment run side by side and only writes wait. A segment
+ * is a ring: records are appended at its head and, once it is full, the oldest
+ * records are overwritten, so eviction is first-in first-out and needs no
+ * bookkeeping per read. A record holds the messageId, postedBy, timePostedEpoch
+ * and the UTF-8 bytes of messageText. Each segment indexes its records by
+ * messageId in an open-addressing table, also off-heap.
+ * <p>
+ * {@link #getJson(int)} encodes a cached message as the same JSON Jackson
+ * writes for a {@link Message}, straight from the record.
+ */
+final class OffHeapMessageSlab {
+
+    /**
+     * Record length, messageId, postedBy, timePostedEpoch and messageText length.
+     */
+    private static final int HEADER = 24;
+    /**
+     * Stands for a message without a timePostedEpoch, or a messageText of -1 bytes for one without text.
+     */
+    private static final long NO_TIME = Long.MIN_VALUE;
+    /**
+     * Stands for a message without a postedBy; account ids are never negative.
+     */
+    private static final int NO_POSTED_BY = Integer.MIN_VALUE;
+    private static final int MAX_SEGMENT_BYTES = 1 << 30;
+    private static final int MIN_SEGMENTS = 16;
+    /**
+     * Bytes of segment per index slot; the index is a quarter of the size of its segment.
+     */
+    private static final int BYTES_PER_SLOT = 32;
+
+    private static final byte[] MESSAGE_ID = "{\"messageId\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] POSTED_BY = ",\"postedBy\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MESSAGE_TEXT = ",\"messageText\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIME_POSTED_EPOCH = ",\"timePostedEpoch\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private final Segment[] segments;
+    private final LongAdder evictions;
+
+    /**
+     * @param capacity   Bytes of direct memory to use for records; about a quarter as much again is used by the index
+     * @param evictions  Counts the messages overwritten to make room
+     */
+    OffHeapMessageSlab(long capacity, LongAdder evictions) {
+        int count = (int) Math.max(MIN_SEGMENTS, (capacity + MAX_SEGMENT_BYTES - 1) / MAX_SEGMENT_BYTES);
+        int segmentBytes = (int) Math.min(MAX_SEGMENT_BYTES, capacity / count);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(segmentBytes);
+        }
+        this.evictions = evictions;
+    }
+
+    /**
+     * @param id
+     * @return A copy of the cached message, or null
+     */
+    Message get(int id) {
+        return segment(id).get(id);
+    }
+
+    /**
+     * @param id
+     * @return The cached message as JSON, or null
+     */
+    byte[] getJson(int id) {
+        return segment(id).getJson(id);
+    }
+
+    /**
+     * @param id
+     * @return A stamp to pass to {@link #put(Message, long)} after loading the message
+     */
+    long generation(int id) {
+        return segment(id).generation;
+    }
+
+    /**
+     * Caches a message, unless a message of its segment was invalidated since the
+     * generation was read, as the message may have been loaded before the change.
+     * Messages too large for a segment are not cached.
+     *
+     * @param message
+     * @param generation  From {@link #generation(int)}, read before the message was loaded
+     */
+    void put(Message message, long generation) {
+        segment(message.getMessageId()).put(message, generation);
+    }
+
+    void invalidate(int id) {
+        segment(id).invalidate(id);
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Encodes a message as the same JSON Jackson writes for it.
+     *
+     * @param message
+     * @return The JSON
+     */
+    static byte[] toJson(Message message) {
+        String text = message.getMessageText();
+        if (text == null) {
+            return json(message.getMessageId(), postedByOf(message), timeOf(message), null, 0, -1);
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        return json(message.getMessageId(), postedByOf(message), timeOf(message), ByteBuffer.wrap(utf8), 0,
+                utf8.length);
+    }
+
+    private Segment segment(int id) {
+        // Fibonacci hashing, so ids handed out in blocks still spread over every segment
+        return segments[(int) (((id * 0x9E3779B9L) & 0xFFFFFFFFL) * segments.length >>> 32)];
+    }
+
+    private static int postedByOf(Message message) {
+        return message.getPostedBy() == null ? NO_POSTED_BY : message.getPostedBy();
+    }
+
+    private static long timeOf(Message message) {
+        return message.getTimePostedEpoch() == null ? NO_TIME : message.getTimePostedEpoch();
+    }
+
+    private static byte[] json(int id, int postedBy, long time, ByteBuffer text, int textAt, int textLength) {
+        int length = MESSAGE_ID.length + digits(id) + POSTED_BY.length
+                + (postedBy == NO_POSTED_BY ? NULL.length : digits(postedBy)) + MESSAGE_TEXT.length
+                + TIME_POSTED_EPOCH.length + (time == NO_TIME ? NULL.length : digits(time)) + 1;
+        if (textLength < 0) {
+            length += NULL.length;
+        } else {
+            length += 2 + textLength;
+            for (int i = 0; i < textLength; i++) {
+                byte b = text.get(textAt + i);
+                if (isFourByteLead(b) && i + 3 < textLength) {
+                    // Two six-byte escapes in place of four bytes
+                    length += 8;
+                    i += 3;
+                } else {
+                    length += escapedLength(b) - 1;
+                }
+            }
+        }
+        byte[] json = new byte[length];
+        int at = put(json, 0, MESSAGE_ID);
+        at = putNumber(json, at, id);
+        at = put(json, at, POSTED_BY);
+        at = postedBy == NO_POSTED_BY ? put(json, at, NULL) : putNumber(json, at, postedBy);
+        at = put(json, at, MESSAGE_TEXT);
+        if (textLength < 0) {
+            at = put(json, at, NULL);
+        } else {
+            json[at++] = '"';
+            for (int i = 0; i < textLength; i++) {
+                byte b = text.get(textAt + i);
+                if (isFourByteLead(b) && i + 3 < textLength) {
+                    int codePoint = (b & 0x07) << 18 | (text.get(textAt + i + 1) & 0x3F) << 12
+                            | (text.get(textAt + i + 2) & 0x3F) << 6 | text.get(textAt + i + 3) & 0x3F;
+                    at = putUnicodeEscape(json, at, Character.highSurrogate(codePoint));
+                    at = putUnicodeEscape(json, at, Character.lowSurrogate(codePoint));
+                    i += 3;
+                } else {
+                    at = putEscaped(json, at, b);
+                }
+            }
+            json[at++] = '"';
+        }
+        at = put(json, at, TIME_POSTED_EPOCH);
+        at = time == NO_TIME ? put(json, at, NULL) : putNumber(json, at, time);
+        json[at] = '}';
+        return json;
+    }
+
+    /**
+     * Jackson escapes quotes, backslashes and control characters, and writes any other UTF-8 byte as it is,
+     * except that characters outside the Basic Multilingual Plane are written as an escaped surrogate pair.
+     */
+    private static boolean isFourByteLead(byte b) {
+        return (b & 0xF8) == 0xF0;
+    }
+
+    private static int escapedLength(byte b) {
+        if (b == '"' || b == '\\') {
+            return 2;
+        }
+        if (b >= 0 && b < 0x20) {
+            return shortEscape(b) != 0 ? 2 : 6;
+        }
+        return 1;
+    }
+
+    private static int putEscaped(byte[] json, int at, byte b) {
+        if (b == '"' || b == '\\') {
+            json[at] = '\\';
+            json[at + 1] = b;
+            return at + 2;
+        }
+        if (b >= 0 && b < 0x20) {
+            byte escape = shortEscape(b);
+            if (escape == 0) {
+                return putUnicodeEscape(json, at, (char) b);
+            }
+            json[at] = '\\';
+            json[at + 1] = escape;
+            return at + 2;
+        }
+        json[at] = b;
+        return at + 1;
+    }
+
+    private static int putUnicodeEscape(byte[] json, int at, char c) {
+        json[at] = '\\';
+        json[at + 1] = 'u';
+        json[at + 2] = HEX[c >> 12];
+        json[at + 3] = HEX[c >> 8 & 0xF];
+        json[at + 4] = HEX[c >> 4 & 0xF];
+        json[at + 5] = HEX[c & 0xF];
+        return at + 6;
+    }
+
+    private static byte shortEscape(byte b) {
+        switch (b) {
+        case '\b':
+            return 'b';
+        case '\t':
+            return 't';
+        case '\n':
+            return 'n';
+        case '\f':
+            return 'f';
+        case '\r':
+            return 'r';
+        default:
+            return 0;
+        }
+    }
+
+    private static int digits(long value) {
+        int digits = value < 0 ? 2 : 1;
+        for (long rest = Math.abs(value / 10); rest > 0; rest /= 10) {
+            digits++;
+        }
+        return digits;
+    }
+
+    private static int putNumber(byte[] json, int at, long value) {
+        int end = at + digits(value);
+        int i = end;
+        long rest = value;
+        do {
+            json[--i] = (byte) ('0' + Math.abs(rest % 10));
+            rest /= 10;
+        } while (rest != 0);
+        if (value < 0) {
+            json[at] = '-';
+        }
+        return end;
+    }
+
+    private static int put(byte[] json, int at, byte[] bytes) {
+        System.arraycopy(bytes, 0, json, at, bytes.length);
+        return at + bytes.length;
+    }
+
+    /**
+     * One ring of records and its index. Records never wrap around the end of the
+     * ring: when one does not fit after the head, the head moves to the start and
+     * the data before the old head ends at {@code end}. Reads take the read lock
+     * and only read the buffers at absolute offsets, or through a view of their own.
+     */
+    private final class Segment {
+
+        private final ByteBuffer data;
+        /**
+         * Slots of (messageId, record offset + 1), 0 marking an empty slot.
+         */
+        private final ByteBuffer index;
+        private final int mask;
+        private final int maxEntries;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private int head;
+        private int tail;
+        private int end;
+        private boolean wrapped;
+        private int entries;
+        private volatile long generation;
+
+        Segment(int bytes) {
+            this.data = ByteBuffer.allocateDirect(bytes);
+            int slots = Integer.highestOneBit(Math.max(16, bytes / BYTES_PER_SLOT) - 1) << 1;
+            this.index = ByteBuffer.allocateDirect(slots * 8);
+            this.mask = slots - 1;
+            this.maxEntries = slots / 4 * 3;
+        }
+
+        Message get(int id) {
+            lock.readLock().lock();
+            try {
+                int at = find(id);
+                if (at < 0) {
+                    return null;
+                }
+                int postedBy = data.getInt(at + 8);
+                long time = data.getLong(at + 12);
+                int textLength = data.getInt(at + 20);
+                String text = null;
+                if (textLength >= 0) {
+                    byte[] utf8 = new byte[textLength];
+                    ByteBuffer record = data.duplicate();
+                    record.position(at + HEADER);
+                    record.get(utf8);
+                    text = new String(utf8, StandardCharsets.UTF_8);
+                }
+                return new Message(id, postedBy == NO_POSTED_BY ? null : postedBy, text,
+                        time == NO_TIME ? null : time);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        byte[] getJson(int id) {
+            lock.readLock().lock();
+            try {
+                int at = find(id);
+                if (at < 0) {
+                    return null;
+                }
+                return json(id, data.getInt(at + 8), data.getLong(at + 12), data, at + HEADER,
+                        data.getInt(at + 20));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void put(Message message, long loadedAt) {
+            String text = message.getMessageText();
+            byte[] utf8 = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+            int length = HEADER + utf8.length;
+            if (length > data.capacity()) {
+                return;
+            }
+            int id = message.getMessageId();
+            lock.writeLock().lock();
+            try {
+                if (generation != loadedAt) {
+                    return;
+                }
+                remove(id);
+                while (entries >= maxEntries) {
+                    evictOldest();
+                }
+                int at = allocate(length);
+                data.putInt(at, length)
+                        .putInt(at + 4, id)
+                        .putInt(at + 8, postedByOf(message))
+                        .putLong(at + 12, timeOf(message))
+                        .putInt(at + 20, text == null ? -1 : utf8.length);
+                ByteBuffer record = data.duplicate();
+                record.position(at + HEADER);
+                record.put(utf8);
+                insert(id, at);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void invalidate(int id) {
+            lock.writeLock().lock();
+            try {
+                generation++;
+                remove(id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return entries;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * @return The offset of room for a record of the given length at the head, evicting the oldest records
+         */
+        private int allocate(int length) {
+            while (true) {
+                if (!wrapped) {
+                    if (head + length <= data.capacity()) {
+                        int at = head;
+                        head += length;
+                        return at;
+                    }
+                    if (tail == head) {
+                        head = 0;
+                        tail = 0;
+                        continue;
+                    }
+                    end = head;
+                    head = 0;
+                    wrapped = true;
+                }
+                if (head + length <= tail) {
+                    int at = head;
+                    head += length;
+                    return at;
+                }
+                evictOldest();
+            }
+        }
+
+        /**
+         * Drops the record at the tail, which is only still indexed if it is the latest version of its message.
+         */
+        private void evictOldest() {
+            if (!wrapped && tail == head) {
+                return;
+            }
+            int id = data.getInt(tail + 4);
+            if (find(id) == tail) {
+                remove(id);
+                evictions.increment();
+            }
+            tail += data.getInt(tail);
+            if (wrapped && tail == end) {
+                tail = 0;
+                wrapped = false;
+            }
+        }
+
+        /**
+         * @return The offset of the message's record, or -1
+         */
+        private int find(int id) {
+            for (int slot = hash(id); ; slot = (slot + 1) & mask) {
+                int value = index.getInt(slot * 8 + 4);
+                if (value == 0) {
+                    return -1;
+                }
+                if (index.getInt(slot * 8) == id) {
+                    return value - 1;
+                }
+            }
+        }
+
+        private void insert(int id, int at) {
+            int slot = hash(id);
+            while (index.getInt(slot * 8 + 4) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index.putInt(slot * 8, id).putInt(slot * 8 + 4, at + 1);
+            entries++;
+        }
+
+        /**
+         * Removes a message from the index, shifting back the entries after it so that lookups need no tombstones.
+         */
+        private void remove(int id) {
+            int slot = hash(id);
+            while (true) {
+                if (index.getInt(slot * 8 + 4) == 0) {
+                    return;
+                }
+                if (index.getInt(slot * 8) == id) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            entries--;
+            int empty = slot;
+            for (int next = (slot + 1) & mask; index.getInt(next * 8 + 4) != 0; next = (next + 1) & mask) {
+                int home = hash(index.getInt(next * 8));
+                // An entry can move back to the empty slot unless its home lies after the empty slot
+                boolean movable = empty <= next ? home <= empty || home > next : home <= empty && home > next;
+                if (movable) {
+                    index.putInt(empty * 8, index.getInt(next * 8)).putInt(empty * 8 + 4, index.getInt(next * 8 + 4));
+                    empty = next;
+                }
+            }
+            index.putInt(empty * 8 + 4, 0);
+        }
+
+        /**
+         * The Murmur3 finalizer, independent of the hash that chose the segment.
+         */
+        private int hash(int id) {
+            int h = id * 0x85EBCA6B;
+            h ^= h >>> 13;
+            h *= 0xC2B2AE35;
+            h ^= h >>> 16;
+            return h & mask;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.config;
+
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.CacheManager;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+/**
+ * In-process Caffeine caches, through JCache, behind Hibernate's second-level
+ * and query caches. The regions are created here so that their size and expiry
+ * come from {@code app.hibernate-cache.*} in application.properties rather than
+ * from a separate Caffeine config file.
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    public static final String ACCOUNT_REGION = "account";
+    public static final String MESSAGE_REGION = "message";
+
+    /**
+     * Each application context gets its own provider, so contexts started one
+     * after the other in the same JVM never share or collide on regions.
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(
+            @Value("${app.hibernate-cache.account.maximum-size:10000}") long accountSize,
+            @Value("${app.hibernate-cache.account.expire-after-write-seconds:0}") long accountExpiry,
+            @Value("${app.hibernate-cache.message.maximum-size:10000}") long messageSize,
+            @Value("${app.hibernate-cache.message.expire-after-write-seconds:0}") long messageExpiry,
+            @Value("${app.hibernate-cache.query.maximum-size:1000}") long querySize,
+            @Value("${app.hibernate-cache.query.expire-after-write-seconds:60}") long queryExpiry) {
+        CaffeineCachingProvider provider = new CaffeineCachingProvider();
+        CacheManager cacheManager = provider.getCacheManager(URI.create("hibernate"), getClass().getClassLoader());
+        cacheManager.createCache(ACCOUNT_REGION, configuration(accountSize, accountExpiry));
+        cacheManager.createCache(MESSAGE_REGION, configuration(messageSize, messageExpiry));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                configuration(querySize, queryExpiry));
+        // Hibernate checks cached query results against these timestamps, so they must never be evicted
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, configuration(0, 0));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheManagerCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    /**
+     * @param maximumSize           The maximum number of entries, or 0 for no limit
+     * @param expireAfterWriteSeconds  Seconds an entry lives after being written, or 0 for no expiry
+     */
+    private static CaffeineConfiguration<Object, Object> configuration(long maximumSize, long expireAfterWriteSeconds) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        if (maximumSize > 0) {
+            configuration.setMaximumSize(OptionalLong.of(maximumSize));
+        }
+        if (expireAfterWriteSeconds > 0) {
+            configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(expireAfterWriteSeconds)));
+        }
+        configuration.setStatisticsEnabled(true);
+        return configuration;
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.cache.HomeTimelines;
+import com.example.cache.JsonResponseCache;
+import com.example.cache.MessageCache;
+import com.example.ratelimit.RateLimiter;
+import com.example.search.MessageSearchIndex;
+import com.example.service.MessageWriteBehind;
+import com.example.service.PasswordService;
+import com.example.store.InMemoryMessageStore;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Metrics that Spring Boot does not register on its own. Request timers
+ * ({@code http.server.requests}), repository timers
+ * ({@code spring.data.repository.invocations}), the Hikari pool, Hibernate
+ * statistics and the JVM are all bound by Actuator; this adds the
+ * {@code @Timed} service methods, the {@link MessageCache}, the
+ * {@link JsonResponseCache}, the {@link HomeTimelines}, the
+ * {@link MessageSearchIndex}, the {@link MessageWriteBehind} queue, the
+ * {@link InMemoryMessageStore}, the {@link RateLimiter} and the
+ * {@link PasswordService} pool.
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Timer for {@code @Timed} service methods.
+     */
+    public static final String SERVICE_TIMER = "app.service.invocations";
+
+    /**
+     * Times every method annotated with {@code @Timed}, tagged with its class and method.
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    /**
+     * Binds the message cache under the same names Micrometer uses for other caches.
+     */
+    @Bean
+    public MeterBinder messageCacheMetrics(MessageCache messageCache) {
+        return registry -> {
+            String[] tags = { "cache", "message", "policy", messageCache.getPolicy().name().toLowerCase() };
+            FunctionCounter.builder("cache.gets", messageCache, MessageCache::hitCount)
+                    .tags(tags).tag("result", "hit")
+                    .description("The number of times a message was found in the cache")
+                    .register(registry);
+            FunctionCounter.builder("cache.gets", messageCache, MessageCache::missCount)
+                    .tags(tags).tag("result", "miss")
+                    .description("The number of times a message had to be loaded")
+                    .register(registry);
+            FunctionCounter.builder("cache.evictions", messageCache, MessageCache::evictionCount)
+                    .tags(tags)
+                    .description("The number of messages evicted to stay within the maximum size")
+                    .register(registry);
+            Gauge.builder("cache.size", messageCache, MessageCache::size)
+                    .tags(tags)
+                    .description("The number of messages in the cache")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * Binds the cache of JSON response bodies, sized in bytes rather than in entries.
+     */
+    @Bean
+    public MeterBinder jsonCacheMetrics(JsonResponseCache jsonCache) {
+        return registry -> {
+            // Weighed by bytes, but evicted by the same W-TinyLFU policy as the default message cache
+            String[] tags = { "cache", "json", "policy", "tinylfu" };
+            FunctionCounter.builder("cache.gets", jsonCache, JsonResponseCache::hitCount)
+                    .tags(tags).tag("result", "hit")
+                    .description("The number of times a response body was written as cached")
+                    .register(registry);
+            FunctionCounter.builder("cache.gets", jsonCache, JsonResponseCache::missCount)
+                    .tags(tags).tag("result", "miss")
+                    .description("The number of times a response body had to be built")
+                    .register(registry);
+            FunctionCounter.builder("cache.evictions", jsonCache, JsonResponseCache::evictionCount)
+                    .tags(tags)
+                    .description("The number of entries evicted to stay within the maximum bytes")
+                    .register(registry);
+            Gauge.builder("cache.size", jsonCache, JsonResponseCache::size)
+                    .tags(tags)
+                    .description("The number of messages and accounts in the cache")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * Binds the home timelines, whose deliveries grow with followers per message posted.
+     */
+    @Bean
+    public MeterBinder homeTimelineMetrics(HomeTimelines homeTimelines) {
+        return registry -> {
+            Gauge.builder("timeline.feeds", homeTimelines, HomeTimelines::feedCount)
+                    .description("The number of home timelines held in memory")
+                    .register(registry);
+            FunctionCounter.builder("timeline.deliveries", homeTimelines, HomeTimelines::deliveryCount)
+                    .description("The number of times a new message was pushed into a home timeline")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * Binds the size of the search index.
+     */
+    @Bean
+    public MeterBinder searchIndexMetrics(MessageSearchIndex messageSearchIndex) {
+        return registry -> Gauge.builder("search.documents", messageSearchIndex, MessageSearchIndex::documentCount)
+                .description("The number of messages in the search index")
+                .register(registry);
+    }
+
+    /**
+     * Binds the bcrypt pool, whose queue filling up is what turns logins into 503s.
+     */
+    @Bean
+    public MeterBinder passwordHashingMetrics(PasswordService passwordService) {
+        return registry -> {
+            Gauge.builder("password.hashing.threads", passwordService, PasswordService::getPoolSize)
+                    .description("The number of threads that hash passwords")
+                    .register(registry);
+            Gauge.builder("password.hashing.active", passwordService, PasswordService::activeCount)
+                    .description("The number of passwords being hashed or checked")
+                    .register(registry);
+            Gauge.builder("password.hashing.queued", passwordService, PasswordService::queuedCount)
+                    .description("The number of hashes waiting for a thread")
+                    .register(registry);
+            Gauge.builder("password.hashing.queue.capacity", passwordService, PasswordService::getQueueCapacity)
+                    .description("The number of hashes that can wait before requests are rejected")
+                    .register(registry);
+            FunctionCounter.builder("password.hashing.rejected", passwordService, PasswordService::rejectedCount)
+                    .description("The number of hashes rejected because the queue was full")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * Binds the write-behind queue; unflushed messages are what a crash would lose.
+     */
+    @Bean
+    public MeterBinder writeBehindMetrics(MessageWriteBehind messageWriteBehind) {
+        return registry -> {
+            Gauge.builder("write.behind.unflushed", messageWriteBehind, MessageWriteBehind::unflushedCount)
+                    .description("The number of acknowledged messages not yet written to the database")
+                    .register(registry);
+            Gauge.builder("write.behind.capacity", messageWriteBehind, MessageWriteBehind::getCapacity)
+                    .description("The number of messages that can wait before requests are rejected")
+                    .register(registry);
+            FunctionCounter.builder("write.behind.flushes", messageWriteBehind, MessageWriteBehind::flushCount)
+                    .description("The number of batches written, one commit each")
+                    .register(registry);
+            FunctionCounter.builder("write.behind.rejected", messageWriteBehind, MessageWriteBehind::rejectedCount)
+                    .description("The number of messages rejected because the queue was full")
+                    .register(registry);
+            FunctionCounter.builder("write.behind.failed", messageWriteBehind, MessageWriteBehind::failedCount)
+                    .description("The number of acknowledged messages that could not be written")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * Binds the in-memory message store; its log grows until the next startup rewrites it.
+     */
+    @Bean
+    public MeterBinder messageStoreMetrics(InMemoryMessageStore messageStore) {
+        return registry -> {
+            Gauge.builder("message.store.messages", messageStore, InMemoryMessageStore::count)
+                    .description("The number of messages held by the in-memory message store")
+                    .register(registry);
+            Gauge.builder("message.store.log.records", messageStore, InMemoryMessageStore::logRecordCount)
+                    .description("The number of records in the message store's log")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * Binds the rate limits: requests rejected per limit and the buckets held in memory.
+     */
+    @Bean
+    public MeterBinder rateLimitMetrics(RateLimiter rateLimiter) {
+        return registry -> {
+            FunctionCounter.builder("rate.limit.rejected", rateLimiter, RateLimiter::globalRejectedCount)
+                    .tag("limit", "global")
+                    .description("The number of requests rejected by a rate limit")
+                    .register(registry);
+            FunctionCounter.builder("rate.limit.rejected", rateLimiter, RateLimiter::clientRejectedCount)
+                    .tag("limit", "client")
+                    .description("The number of requests rejected by a rate limit")
+                    .register(registry);
+            FunctionCounter.builder("rate.limit.rejected", rateLimiter, RateLimiter::accountMessagesRejectedCount)
+                    .tag("limit", "account-messages")
+                    .description("The number of requests rejected by a rate limit")
+                    .register(registry);
+            FunctionCounter.builder("rate.limit.rejected", rateLimiter, RateLimiter::accountLoginsRejectedCount)
+                    .tag("limit", "account-logins")
+                    .description("The number of requests rejected by a rate limit")
+                    .register(registry);
+            Gauge.builder("rate.limit.buckets", rateLimiter, RateLimiter::clientBucketCount)
+                    .tag("key", "client")
+                    .description("The number of token buckets in memory")
+                    .register(registry);
+            Gauge.builder("rate.limit.buckets", rateLimiter, RateLimiter::accountBucketCount)
+                    .tag("key", "account")
+                    .description("The number of token buckets in memory")
+                    .register(registry);
+        };
+    }
+}
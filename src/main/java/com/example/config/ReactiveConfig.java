@@ -0,0 +1,94 @@
+package com.example.config;
+
+import java.util.Locale;
+
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.web.reactive.WebFluxRegistrations;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+import org.springframework.data.relational.core.mapping.NamingStrategy;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+
+import com.example.controller.ReactiveSocialMediaController;
+import com.example.controller.SocialMediaController;
+import com.example.repository.ReactiveMessageRepository;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Settings for the {@code reactive} profile, which serves the API from
+ * {@link ReactiveSocialMediaController} on WebFlux with R2DBC repositories.
+ * The JPA repositories and services stay available to it.
+ */
+@Configuration
+@Profile("reactive")
+@EnableR2dbcRepositories(basePackageClasses = ReactiveMessageRepository.class,
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = JpaRepository.class))
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ReactiveConfig {
+
+    /**
+     * Runs WebFlux on Reactor Netty. Tomcat is on the classpath for the servlet
+     * stack and would otherwise be picked.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * The JDBC pool for JPA, configured from the usual spring.datasource properties.
+     * Spring Boot only creates one itself when there is no R2DBC ConnectionFactory.
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Maps entities to the tables and columns of data.sql the way the JPA
+     * physical naming strategy does: class names lower-cased, property names as written.
+     */
+    @Bean
+    public NamingStrategy r2dbcNamingStrategy() {
+        return new NamingStrategy() {
+            @Override
+            public String getTableName(Class<?> type) {
+                return type.getSimpleName().toLowerCase(Locale.ROOT);
+            }
+
+            @Override
+            public String getColumnName(RelationalPersistentProperty property) {
+                return property.getName();
+            }
+        };
+    }
+
+    /**
+     * Keeps WebFlux from mapping the servlet {@link SocialMediaController}, which is
+     * still a bean but whose handlers take servlet-only arguments.
+     */
+    @Bean
+    public WebFluxRegistrations reactiveOnlyHandlerMappings() {
+        return new WebFluxRegistrations() {
+            @Override
+            public RequestMappingHandlerMapping getRequestMappingHandlerMapping() {
+                return new RequestMappingHandlerMapping() {
+                    @Override
+                    protected boolean isHandler(Class<?> beanType) {
+                        return !SocialMediaController.class.isAssignableFrom(beanType) && super.isHandler(beanType);
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.example.replica.ReplicaRoutingDataSource;
+import com.example.replica.Replicator;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Serves reads from {@code app.replication.replicas} read replicas of the
+ * database, active when there is at least one. The primary is the usual
+ * {@code spring.datasource} database; replica n is at {@code app.replication.url}
+ * with {@code {replica}} replaced by n, and gets its tables from schema.sql.
+ * Every database has its own pool, configured from {@code spring.datasource.hikari}
+ * and named {@code primary} or {@code replica-n}. The primary also needs the
+ * change log and triggers of replication-schema.sql (see {@link Replicator}).
+ * <p>
+ * JPA sees one {@link ReplicaRoutingDataSource}. As with sharding, open-session-in-view
+ * would hold the first connection of a request, possibly a replica's, for every
+ * later write, so it must be off, and the reactive profile is not supported.
+ * Replicas cannot be combined with {@code app.sharding.shards} yet.
+ */
+@Configuration
+@ConditionalOnExpression("${app.replication.replicas:0} > 0 and ${app.sharding.shards:1} == 1")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ReplicationConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource dataSource(DataSourceProperties properties, Environment environment,
+            @Value("${app.replication.replicas}") int replicas, @Value("${app.replication.url}") String url,
+            @Value("${spring.jpa.open-in-view:true}") boolean openInView) {
+        if (environment.acceptsProfiles(Profiles.of("reactive"))) {
+            throw new IllegalStateException("app.replication.replicas is not supported with the reactive profile");
+        }
+        if (openInView) {
+            throw new IllegalStateException("app.replication.replicas needs spring.jpa.open-in-view=false");
+        }
+        Binder binder = Binder.get(environment);
+        HikariDataSource primary = pool(properties, binder, properties.determineUrl(), "primary");
+        List<HikariDataSource> pools = new ArrayList<>(replicas);
+        for (int replica = 0; replica < replicas; replica++) {
+            HikariDataSource pool = pool(properties, binder, url.replace("{replica}", String.valueOf(replica)),
+                    "replica-" + replica);
+            DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("schema.sql")), pool);
+            // Rows arrive in the order they were logged, not in foreign key order
+            new JdbcTemplate(pool).execute("set referential_integrity false");
+            pools.add(pool);
+        }
+        return new ReplicaRoutingDataSource(primary, pools);
+    }
+
+    @Bean
+    public Replicator replicator(ReplicaRoutingDataSource dataSource, DataSourceProperties properties,
+            Environment environment, @Value("${app.replication.poll-interval-ms:100}") long pollIntervalMillis) {
+        HikariDataSource source = pool(properties, Binder.get(environment), properties.determineUrl(), "replication");
+        source.setMaximumPoolSize(1);
+        source.setMinimumIdle(1);
+        return new Replicator(dataSource, source, pollIntervalMillis);
+    }
+
+    /**
+     * Actuator binds the metrics of the primary, the pool it finds behind the
+     * routing DataSource; this binds the replicas' pools and the rows replicated.
+     */
+    @Bean
+    public MeterBinder replicationMetrics(ReplicaRoutingDataSource dataSource, Replicator replicator) {
+        return registry -> {
+            dataSource.getReplicas().forEach(pool -> pool.setMetricsTrackerFactory(
+                    new MicrometerMetricsTrackerFactory(registry)));
+            FunctionCounter.builder("replication.rows", replicator, Replicator::rowCount)
+                    .description("The number of rows copied from the primary to the read replicas")
+                    .register(registry);
+        };
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, Binder binder, String url, String name) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class)
+                .url(url)
+                .build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        return pool;
+    }
+}
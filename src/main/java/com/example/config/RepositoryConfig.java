@@ -0,0 +1,19 @@
+package com.example.config;
+
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+
+import com.example.repository.MessageRepository;
+
+/**
+ * The JPA repositories. The R2DBC repositories in the same package are left to
+ * {@link ReactiveConfig}, which only creates them for the reactive profile.
+ */
+@Configuration
+@EnableJpaRepositories(basePackageClasses = MessageRepository.class,
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ReactiveCrudRepository.class))
+public class RepositoryConfig {
+}
@@ -0,0 +1,96 @@
+package com.example.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.example.shard.MessageShards;
+import com.example.shard.ShardRoutingDataSource;
+import com.example.shard.ShardedSequenceGenerator;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Spreads the message table over {@code app.sharding.shards} databases (see
+ * {@link MessageShards}), active when there is more than one. Shard 0 is the
+ * usual {@code spring.datasource} database, which keeps the accounts and follows;
+ * shard n is at {@code app.sharding.url} with {@code {shard}} replaced by n, and
+ * gets its message table from shard-schema.sql. Every shard has its own pool,
+ * configured from {@code spring.datasource.hikari} and named {@code shard-n}.
+ * <p>
+ * JPA sees one {@link ShardRoutingDataSource}. Open-session-in-view would hold
+ * one connection, and so one shard, for a whole request, so it must be off, and
+ * the reactive profile, whose R2DBC repositories read a single database, is not
+ * supported. Neither are read replicas (see {@link ReplicationConfig}).
+ */
+@Configuration
+@ConditionalOnExpression("${app.sharding.shards:1} > 1")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ShardingConfig {
+
+    @Bean
+    public ShardRoutingDataSource dataSource(DataSourceProperties properties, Environment environment,
+            @Value("${app.sharding.shards}") int shards,
+            @Value("${app.sharding.url}") String url,
+            @Value("${spring.jpa.open-in-view:true}") boolean openInView,
+            @Value("${app.replication.replicas:0}") int replicas) {
+        if (environment.acceptsProfiles(Profiles.of("reactive"))) {
+            throw new IllegalStateException("app.sharding.shards is not supported with the reactive profile");
+        }
+        if (openInView) {
+            throw new IllegalStateException("app.sharding.shards needs spring.jpa.open-in-view=false");
+        }
+        if (replicas > 0) {
+            throw new IllegalStateException("app.sharding.shards cannot be combined with app.replication.replicas");
+        }
+        Binder binder = Binder.get(environment);
+        List<HikariDataSource> pools = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class)
+                    .url(shard == 0 ? properties.determineUrl() : url.replace("{shard}", String.valueOf(shard)))
+                    .build();
+            binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+            pool.setPoolName("shard-" + shard);
+            if (shard > 0) {
+                DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(
+                        new ClassPathResource("shard-schema.sql")), pool);
+            }
+            pools.add(pool);
+        }
+        return new ShardRoutingDataSource(pools);
+    }
+
+    /**
+     * Actuator binds the metrics of shard 0, the pool it finds behind the
+     * routing DataSource; this binds the other shards' pools.
+     */
+    @Bean
+    public MeterBinder shardPoolMetrics(ShardRoutingDataSource dataSource) {
+        return registry -> dataSource.getShards().stream().skip(1)
+                .forEach(pool -> pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+    }
+
+    /**
+     * Tells {@link ShardedSequenceGenerator} how many shards messageIds are spread over.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer shardedSequenceProperties(@Value("${app.sharding.shards}") int shards) {
+        return properties -> properties.put(ShardedSequenceGenerator.SHARDS_SETTING, shards);
+    }
+}
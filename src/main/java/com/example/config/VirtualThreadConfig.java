@@ -0,0 +1,62 @@
+package com.example.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+/**
+ * Opt-in request execution on virtual threads, enabled with
+ * {@code app.threads.virtual=true}. Tomcat then runs every request on its own
+ * virtual thread instead of a pooled platform thread, and streamed responses
+ * use virtual threads too, so a request blocked in JPA no longer holds one of
+ * {@code server.tomcat.threads.max} threads.
+ * <p>
+ * Concurrency against the database is still capped by the Hikari pool
+ * ({@code spring.datasource.hikari.maximum-pool-size}): virtual threads wait
+ * for a connection rather than opening more. bcrypt keeps its own bounded pool.
+ * <p>
+ * Virtual threads need Java 21 or newer. The executor is looked up reflectively
+ * so the application still builds for Java 11; enabling the mode on an older
+ * runtime fails startup instead of silently using platform threads.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.threads.virtual", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalStateException("app.threads.virtual requires Java 21 or newer, but this is Java "
+                    + Runtime.version().feature());
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new IllegalStateException("Virtual threads could not be started", ex);
+        }
+    }
+
+    /**
+     * Hands Tomcat the virtual thread executor for request processing.
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    /**
+     * Replaces Boot's bounded task executor, which Spring MVC uses to write
+     * streamed (NDJSON) responses.
+     */
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+}
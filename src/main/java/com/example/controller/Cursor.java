@@ -0,0 +1,71 @@
+package com.example.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursors handed out by the paginated endpoints.
+ * A cursor is the base64url form of one or more numeric keys, so clients should
+ * only ever pass back a cursor they were given and never build one themselves.
+ */
+public final class Cursor {
+
+    private static final String PREFIX = "v1:";
+
+    private Cursor() {
+    }
+
+    /**
+     * Builds a cursor from the keys of the last row of a page.
+     * 
+     * @param keys  The keyset values the next page should start after
+     * @return The opaque cursor
+     */
+    public static String encode(long... keys) {
+        StringBuilder builder = new StringBuilder(PREFIX);
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                builder.append(':');
+            }
+            builder.append(keys[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(builder.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Reads the keys back out of a cursor produced by {@link #encode(long...)}.
+     * 
+     * @param cursor        The cursor sent by the client
+     * @param expectedKeys  The number of keys the endpoint expects
+     * @return The keyset values
+     * @throws IllegalArgumentException is thrown when the cursor is malformed
+     */
+    public static long[] decode(String cursor, int expectedKeys) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Malformed cursor", ex);
+        }
+
+        if (!decoded.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+
+        String[] parts = decoded.substring(PREFIX.length()).split(":");
+        if (parts.length != expectedKeys) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+
+        long[] keys = new long[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                keys[i] = Long.parseLong(parts[i]);
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Malformed cursor", ex);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.controller;
+
+import static com.example.controller.SocialMediaController.DEFAULT_PAGE_LIMIT;
+import static com.example.controller.SocialMediaController.MAX_PAGE_LIMIT;
+
+import org.springframework.http.ResponseEntity;
+
+/**
+ * The cursor and limit of a request for one page, checked and decoded once for
+ * both {@link SocialMediaController} and {@link ReactiveSocialMediaController},
+ * so that the two reject the same requests with the same 400.
+ */
+final class PageRequest {
+
+    private final int limit;
+    private final Long key;
+    private final int messageId;
+    private final ResponseEntity<String> error;
+
+    private PageRequest(int limit, Long key, int messageId, ResponseEntity<String> error) {
+        this.limit = limit;
+        this.key = key;
+        this.messageId = messageId;
+        this.error = error;
+    }
+
+    /**
+     * A page ordered by messageId, whose cursor holds the last messageId of the previous page.
+     */
+    static PageRequest afterMessageId(String after, Integer limit) {
+        return parse(after, limit, 1, false);
+    }
+
+    /**
+     * A page ordered newest first, whose cursor holds the timePostedEpoch and messageId
+     * of the last message of the previous page.
+     */
+    static PageRequest beforeTimePosted(String before, Integer limit) {
+        return parse(before, limit, 2, false);
+    }
+
+    /**
+     * A page of search hits, whose cursor holds the exact score and messageId of the
+     * last hit of the previous page.
+     */
+    static PageRequest afterScore(String after, Integer limit) {
+        return parse(after, limit, 2, true);
+    }
+
+    private static PageRequest parse(String cursor, Integer limit, int keys, boolean intKey) {
+        int pageLimit = limit == null ? DEFAULT_PAGE_LIMIT : limit;
+        if (pageLimit < 1 || pageLimit > MAX_PAGE_LIMIT) {
+            return new PageRequest(pageLimit, null, 0, ResponseEntity.badRequest()
+                    .body("The limit must be between 1 and " + MAX_PAGE_LIMIT));
+        }
+        if (cursor == null) {
+            return new PageRequest(pageLimit, null, 0, null);
+        }
+        try {
+            long[] decoded = Cursor.decode(cursor, keys);
+            Long key = keys == 1 ? null : intKey ? (long) Math.toIntExact(decoded[0]) : decoded[0];
+            return new PageRequest(pageLimit, key, Math.toIntExact(decoded[keys - 1]), null);
+        } catch (IllegalArgumentException | ArithmeticException ex) {
+            return new PageRequest(pageLimit, null, 0, ResponseEntity.badRequest()
+                    .body("The cursor is not valid"));
+        }
+    }
+
+    /**
+     * @return The 400 to answer the request with, or null when the request is valid
+     */
+    ResponseEntity<String> getError() {
+        return error;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return The messageId of the cursor, or 0 for the first page
+     */
+    int getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * @return The timePostedEpoch of the cursor, or null for the first page
+     */
+    Long getTimePostedEpoch() {
+        return key;
+    }
+
+    /**
+     * @return The score of the cursor, or null for the first page
+     */
+    Float getScore() {
+        return key == null ? null : Float.intBitsToFloat(key.intValue());
+    }
+}
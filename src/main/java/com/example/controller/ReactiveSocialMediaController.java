@@ -0,0 +1,344 @@
+package com.example.controller;
+
+import static com.example.controller.SocialMediaController.APPLICATION_NDJSON;
+import static com.example.controller.SocialMediaController.INVALID_BULK_BODY;
+import static com.example.controller.SocialMediaController.MAX_BULK_MESSAGES;
+import static com.example.controller.SocialMediaController.isNotModified;
+import static com.example.controller.SocialMediaController.messageIdPage;
+import static com.example.controller.SocialMediaController.newestFirstPage;
+import static com.example.controller.SocialMediaController.notModified;
+import static com.example.controller.SocialMediaController.withValidators;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.codec.CodecException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import com.example.cache.JsonResponseCache;
+import com.example.cache.MessageCache;
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.repository.ReactiveMessageRepository;
+import com.example.service.MessageService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * WebFlux version of {@link SocialMediaController} with the same routes and
+ * responses, active with the {@code reactive} profile.
+ * <p>
+ * Lists of messages are read through the R2DBC repositories without blocking and
+ * written to the client one message at a time as the database returns them, so
+ * a slow client holds back the query instead of having the whole result set
+ * buffered for it. With the {@link JsonResponseCache} an account's messages are
+ * served from it as on the servlet stack instead.
+ * <p>
+ * Every other request is answered by the {@link SocialMediaController} handler
+ * itself, run on the bounded elastic scheduler so that it never blocks an event
+ * loop thread. Single messages are therefore read through the {@link MessageCache}
+ * and the JsonResponseCache, changes go through JPA, which keeps Hibernate's
+ * caches in step with them, and both stacks validate requests and report errors
+ * the same way; the paging parameters they both read are checked by {@link PageRequest}.
+ */
+@RestController
+@Profile("reactive")
+public class ReactiveSocialMediaController {
+
+    private SocialMediaController controller;
+    private MessageService messageService;
+    private JsonResponseCache jsonCache;
+    private ReactiveMessageRepository messageRepository;
+    private ObjectWriter messageWriter;
+
+    @Autowired
+    public ReactiveSocialMediaController(SocialMediaController controller, MessageService messageService,
+            JsonResponseCache jsonCache, ReactiveMessageRepository messageRepository, ObjectMapper objectMapper) {
+        this.controller = controller;
+        this.messageService = messageService;
+        this.jsonCache = jsonCache;
+        this.messageRepository = messageRepository;
+        this.messageWriter = objectMapper.writerFor(Message.class);
+    }
+
+    /**
+     * Controller handler for registering a new account, see {@link SocialMediaController#register(Account)}.
+     */
+    @PostMapping("/register")
+    public Mono<ResponseEntity<?>> register(@RequestBody Account account) {
+        return blocking(() -> controller.register(account));
+    }
+
+    /**
+     * Controller handler for logging in an account, see {@link SocialMediaController#login(Account)}.
+     */
+    @PostMapping("/login")
+    public Mono<ResponseEntity<?>> login(@RequestBody Account account) {
+        return blocking(() -> controller.login(account));
+    }
+
+    /**
+     * Controller handler for creating a message, see {@link SocialMediaController#createMessage(Message)}.
+     */
+    @PostMapping("/messages")
+    public Mono<ResponseEntity<?>> createMessage(@RequestBody Message message) {
+        return blocking(() -> controller.createMessage(message));
+    }
+
+    /**
+     * Controller handler for creating many messages at once, see
+     * {@link SocialMediaController#createMessages(java.io.InputStream)}.
+     */
+    @PostMapping(value = "/messages/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON })
+    public Mono<ResponseEntity<?>> createMessages(@RequestBody Flux<Message> body) {
+        return body.take(MAX_BULK_MESSAGES + 1L)
+                .collectList()
+                .<ResponseEntity<?>>flatMap(messages -> blocking(() -> controller.createMessages(messages)))
+                .onErrorResume(CodecException.class, ex -> Mono.just(ResponseEntity.badRequest()
+                        .body(INVALID_BULK_BODY)));
+    }
+
+    /**
+     * Controller handler for retrieving all messages in the database, written
+     * as a JSON array one message at a time.
+     */
+    @GetMapping(value = "/messages", params = { "!after", "!limit" })
+    public ResponseEntity<Flux<DataBuffer>> getAllMessages() {
+        return jsonArray(messageRepository.findAllOrderByMessageId(), ResponseEntity.ok());
+    }
+
+    /**
+     * Controller handler for exporting all messages in the database as newline-delimited JSON.
+     * Selected when the client accepts {@value SocialMediaController#APPLICATION_NDJSON}.
+     */
+    @GetMapping(value = "/messages", params = { "!after", "!limit" }, produces = APPLICATION_NDJSON)
+    public Flux<Message> streamAllMessages() {
+        return messageRepository.findAllOrderByMessageId();
+    }
+
+    /**
+     * Controller handler for retrieving one page of messages ordered by messageId, see
+     * {@link SocialMediaController#getAllMessage(String, Integer)}.
+     */
+    @GetMapping("/messages")
+    public Mono<ResponseEntity<?>> getMessagesPage(@RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+
+        PageRequest request = PageRequest.afterMessageId(after, limit);
+        if (request.getError() != null) {
+            return Mono.just(request.getError());
+        }
+
+        return messageRepository.findPageAfter(request.getMessageId(), request.getLimit()).collectList()
+                .map(page -> messageIdPage(page, request.getLimit()));
+    }
+
+    /**
+     * Controller handler for searching message text, see
+     * {@link SocialMediaController#searchMessages(String, String, Integer)}.
+     */
+    @GetMapping("/messages/search")
+    public Mono<ResponseEntity<?>> searchMessages(@RequestParam(required = false) String q,
+            @RequestParam(required = false) String after, @RequestParam(required = false) Integer limit) {
+        return blocking(() -> controller.searchMessages(q, after, limit));
+    }
+
+    /**
+     * Controller handler for retrieving a {@link Message} by its messageId, through the same
+     * caches as {@link SocialMediaController#getMessage(int, HttpHeaders)}.
+     */
+    @GetMapping("/messages/{messageId}")
+    public Mono<ResponseEntity<?>> getMessage(@PathVariable int messageId, @RequestHeader HttpHeaders headers) {
+        return blocking(() -> controller.getMessage(messageId, headers));
+    }
+
+    /**
+     * Controller handler for deleting a {@link Message} by its messageId, see
+     * {@link SocialMediaController#deleteMessage(int)}.
+     */
+    @DeleteMapping("/messages/{messageId}")
+    public Mono<ResponseEntity<Integer>> deleteMessage(@PathVariable int messageId) {
+        return blocking(() -> controller.deleteMessage(messageId));
+    }
+
+    /**
+     * Controller handler for updating a {@link Message} by is messageId given new message text, see
+     * {@link SocialMediaController#updateMessage(int, Message)}.
+     */
+    @PatchMapping("/messages/{messageId}")
+    public Mono<ResponseEntity<?>> updateMessage(@PathVariable int messageId, @RequestBody Message message) {
+        return blocking(() -> controller.updateMessage(messageId, message));
+    }
+
+    /**
+     * Controller handler for retrieving all messages for an {@link Account} given an id,
+     * written as a JSON array one message at a time, with the account's validators as in
+     * {@link SocialMediaController#getAllMessagesForUser(int, String, Integer, HttpHeaders)}.
+     */
+    @GetMapping(value = "/accounts/{accountId}/messages", params = { "!before", "!limit" })
+    public ResponseEntity<Flux<DataBuffer>> getAllMessagesForUser(@PathVariable int accountId,
+            @RequestHeader HttpHeaders headers) {
+        long stamp = messageService.getAccountStamp(accountId);
+        if (isNotModified(headers, stamp)) {
+            return notModified(stamp);
+        }
+        if (jsonCache.isEnabled()) {
+            return withValidators(ResponseEntity.ok(), stamp)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(blocking(() -> controller.getAllMessagesForUserJson(accountId, stamp))
+                            .<DataBuffer>map(DefaultDataBufferFactory.sharedInstance::wrap)
+                            .flux());
+        }
+        return jsonArray(allMessagesForUser(accountId), withValidators(ResponseEntity.ok(), stamp));
+    }
+
+    /**
+     * Controller handler for exporting all messages for an {@link Account} as newline-delimited JSON.
+     * Selected when the client accepts {@value SocialMediaController#APPLICATION_NDJSON}.
+     */
+    @GetMapping(value = "/accounts/{accountId}/messages", params = { "!before", "!limit" },
+            produces = APPLICATION_NDJSON)
+    public Flux<Message> streamAllMessagesForUser(@PathVariable int accountId) {
+        return allMessagesForUser(accountId);
+    }
+
+    /**
+     * Controller handler for retrieving one page of an {@link Account}'s messages, newest first, see
+     * {@link SocialMediaController#getAllMessagesForUser(int, String, Integer, HttpHeaders)}.
+     */
+    @GetMapping("/accounts/{accountId}/messages")
+    public Mono<ResponseEntity<?>> getMessagesForUserPage(@PathVariable int accountId,
+            @RequestParam(required = false) String before, @RequestParam(required = false) Integer limit,
+            @RequestHeader HttpHeaders headers) {
+
+        if (jsonCache.isEnabled()) {
+            return blocking(() -> controller.getAllMessagesForUser(accountId, before, limit, headers));
+        }
+
+        PageRequest request = PageRequest.beforeTimePosted(before, limit);
+        if (request.getError() != null) {
+            return Mono.just(request.getError());
+        }
+
+        long stamp = messageService.getAccountStamp(accountId);
+        if (isNotModified(headers, stamp)) {
+            return Mono.just(notModified(stamp));
+        }
+
+        Flux<Message> messages = request.getTimePostedEpoch() == null
+                ? messageRepository.findFirstPageByPostedBy(accountId, request.getLimit())
+                : messageRepository.findPageByPostedByBefore(accountId, request.getTimePostedEpoch(),
+                        request.getMessageId(), request.getLimit());
+        return messages.collectList()
+                .map(page -> newestFirstPage(withValidators(ResponseEntity.ok(), stamp), page, request.getLimit()));
+    }
+
+    /**
+     * Controller handler for making an {@link Account} follow another one, see
+     * {@link SocialMediaController#follow(int, int)}.
+     */
+    @PostMapping("/accounts/{accountId}/following/{followeeId}")
+    public Mono<ResponseEntity<?>> follow(@PathVariable int accountId, @PathVariable int followeeId) {
+        return blocking(() -> controller.follow(accountId, followeeId));
+    }
+
+    /**
+     * Controller handler for making an {@link Account} stop following another one, see
+     * {@link SocialMediaController#unfollow(int, int)}.
+     */
+    @DeleteMapping("/accounts/{accountId}/following/{followeeId}")
+    public Mono<ResponseEntity<Integer>> unfollow(@PathVariable int accountId, @PathVariable int followeeId) {
+        return blocking(() -> controller.unfollow(accountId, followeeId));
+    }
+
+    /**
+     * Controller handler for retrieving the accountIds an {@link Account} follows, see
+     * {@link SocialMediaController#getFollowing(int)}.
+     */
+    @GetMapping("/accounts/{accountId}/following")
+    public Mono<ResponseEntity<List<Integer>>> getFollowing(@PathVariable int accountId) {
+        return blocking(() -> controller.getFollowing(accountId));
+    }
+
+    /**
+     * Controller handler for retrieving one page of an {@link Account}'s home timeline, see
+     * {@link SocialMediaController#getHomeTimeline(int, String, Integer)}.
+     */
+    @GetMapping("/accounts/{accountId}/timeline")
+    public Mono<ResponseEntity<?>> getHomeTimeline(@PathVariable int accountId,
+            @RequestParam(required = false) String before, @RequestParam(required = false) Integer limit) {
+        // Served from memory once built, but the first read of a timeline queries the database
+        return blocking(() -> controller.getHomeTimeline(accountId, before, limit));
+    }
+
+    /**
+     * Reads an account's messages from the database, followed by those still
+     * waiting to be written behind. The unflushed messages are taken before the
+     * query, so one flushed in between is read from the database instead.
+     */
+    private Flux<Message> allMessagesForUser(int accountId) {
+        return Flux.defer(() -> {
+            List<Message> unflushed = messageService.findUnflushedByUser(accountId);
+            if (unflushed.isEmpty()) {
+                return messageRepository.findAllByPostedBy(accountId);
+            }
+            Set<Integer> unflushedIds = unflushed.stream().map(Message::getMessageId).collect(Collectors.toSet());
+            return messageRepository.findAllByPostedBy(accountId)
+                    .filter(message -> !unflushedIds.contains(message.getMessageId()))
+                    .concatWith(Flux.fromIterable(unflushed));
+        });
+    }
+
+    /**
+     * Runs a blocking call on the bounded elastic scheduler.
+     */
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Writes messages as a JSON array, serializing each one as it arrives. The
+     * codec in this version of WebFlux would collect the whole Flux into a list
+     * before writing a JSON array.
+     */
+    private ResponseEntity<Flux<DataBuffer>> jsonArray(Flux<Message> messages,
+            ResponseEntity.BodyBuilder response) {
+        DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+        Flux<DataBuffer> body = Flux.defer(() -> {
+            AtomicBoolean empty = new AtomicBoolean(true);
+            return messages.map(message -> {
+                byte separator = (byte) (empty.getAndSet(false) ? '[' : ',');
+                byte[] json = toJson(message);
+                return bufferFactory.allocateBuffer(json.length + 1).write(separator).write(json);
+            }).concatWith(Mono.fromCallable(() -> bufferFactory.wrap((empty.get() ? "[]" : "]").getBytes())));
+        });
+        return response
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    private byte[] toJson(Message message) {
+        try {
+            return messageWriter.writeValueAsBytes(message);
+        } catch (JsonProcessingException ex) {
+            throw Exceptions.propagate(ex);
+        }
+    }
+}
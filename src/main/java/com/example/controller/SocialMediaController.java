@@ -1,20 +1,46 @@
 package com.example.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.example.cache.JsonResponseCache;
+import com.example.cache.MessageCache;
+import com.example.cache.MessageVersions;
+import com.example.dto.BulkMessageResult;
+import com.example.dto.SearchHit;
 import com.example.entity.Account;
+import com.example.entity.Follow;
 import com.example.entity.Message;
+import com.example.exception.CapacityExceededException;
 import com.example.exception.DuplicateUsernameException;
 import com.example.exception.MessageNotFoundException;
 import com.example.exception.RegistrationException;
+import com.example.ratelimit.RateLimiter;
 import com.example.service.AccountService;
 import com.example.service.MessageService;
+import com.example.service.SearchService;
+import com.example.service.TimelineService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller using Spring. The endpoints you will need can be
@@ -25,13 +51,47 @@ import java.util.Optional;
 @RestController
 public class SocialMediaController {
 
+    /**
+     * Response header carrying the cursor of the next page, when there is one.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * Media type for newline-delimited JSON, one message per line.
+     */
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    static final int DEFAULT_PAGE_LIMIT = 100;
+    static final int MAX_PAGE_LIMIT = 1000;
+    static final int MAX_BULK_MESSAGES = 10000;
+    static final int RETRY_AFTER_SECONDS = 1;
+    static final String INVALID_MESSAGE_TEXT = "The message text must be between 1 and 255 characters long";
+    static final String INVALID_BULK_BODY = "The request body must be a JSON array or newline-delimited JSON of messages";
+
+    /**
+     * Names the page of every message of an account in the {@link JsonResponseCache}.
+     */
+    static final String ALL_MESSAGES_PAGE = "*";
+
     private AccountService accountService;
     private MessageService messageService;
+    private JsonResponseCache jsonCache;
+    private TimelineService timelineService;
+    private SearchService searchService;
+    private RateLimiter rateLimiter;
+    private ObjectMapper objectMapper;
 
     @Autowired
-    public SocialMediaController(AccountService accountService, MessageService messageService) {
+    public SocialMediaController(AccountService accountService, MessageService messageService,
+            JsonResponseCache jsonCache, TimelineService timelineService, SearchService searchService,
+            RateLimiter rateLimiter, ObjectMapper objectMapper) {
         this.accountService = accountService;
         this.messageService = messageService;
+        this.jsonCache = jsonCache;
+        this.timelineService = timelineService;
+        this.searchService = searchService;
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -41,6 +101,7 @@ public class SocialMediaController {
      * at least 4 characters long.
      * If the {@link AccountService} finds a duplicate username, the API will return a 409.
      * If the {@link AccountService} encounters an error while registering, the API will return a 400
+     * If too many passwords are being hashed, the API will return a 503 with a Retry-After header.
      * 
      * @param account  The account to be created, without an accountId
      * @return The account with an accountId if registered successfully
@@ -59,12 +120,16 @@ public class SocialMediaController {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
         } catch(RegistrationException ex) {
             return ResponseEntity.badRequest().body(ex.getMessage());
+        } catch(CapacityExceededException ex) {
+            return serviceUnavailable(ex);
         }
     }
 
     /**
      * Controller handler for logging in an account.
      * Expects an {@link Account} in the request body.
+     * If too many passwords are being checked, the API will return a 503 with a Retry-After header,
+     * and if a username has had too many login attempts, a 429 with a Retry-After header.
      * 
      * @param account The account to be logged in
      * @return The account if the login was successful
@@ -77,7 +142,17 @@ public class SocialMediaController {
                     .body("Username and password must not be empty");
         }
 
-        Optional<Account> loggedInAccount = accountService.login(account);
+        long waitNanos = rateLimiter.acquireLogin(account.getUsername());
+        if (waitNanos > 0) {
+            return tooManyRequests(waitNanos);
+        }
+
+        Optional<Account> loggedInAccount;
+        try {
+            loggedInAccount = accountService.login(account);
+        } catch(CapacityExceededException ex) {
+            return serviceUnavailable(ex);
+        }
 
         if(loggedInAccount.isEmpty()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
@@ -93,6 +168,9 @@ public class SocialMediaController {
      * Expects a {@link Message} in the request body.
      * The message text must be between 1 and 255 characters long
      * and the account posting must exist in the database.
+     * With write-behind enabled, the API will return a 503 with a Retry-After header
+     * while too many messages are waiting to be written. An account posting too
+     * many messages gets a 429 with a Retry-After header.
      * 
      * @param message  The message to be created, without a messageId
      * @return The message with an messageId if created successfully
@@ -100,46 +178,196 @@ public class SocialMediaController {
     @PostMapping("/messages")
     public ResponseEntity<?> createMessage(@RequestBody Message message) {
 
+        long waitNanos = rateLimiter.acquireMessage(message.getPostedBy());
+        if (waitNanos > 0) {
+            return tooManyRequests(waitNanos);
+        }
+
         if (!accountService.accountExists(message.getPostedBy())) {
             return ResponseEntity.badRequest()
                     .body("The account posting this message does not exist");
         }
 
-        if (message.getMessageText().isEmpty() || message.getMessageText().length() > 255) {
+        if (!isValidMessageText(message.getMessageText())) {
             return ResponseEntity.badRequest()
-                    .body("The message text must be between 1 and 255 characters long");
+                    .body(INVALID_MESSAGE_TEXT);
+        }
+
+        try {
+            return ResponseEntity.ok()
+                    .body(messageService.createMessage(message));
+        } catch(CapacityExceededException ex) {
+            return serviceUnavailable(ex);
         }
+    }
+
+    /**
+     * Controller handler for creating many messages at once.
+     * Expects either a JSON array of {@link Message} objects or newline-delimited JSON
+     * with one message per line, and at most {@value #MAX_BULK_MESSAGES} messages.
+     * Each message is validated like in {@link #createMessage(Message)}, but the posting
+     * accounts are checked with one query and the valid messages are inserted in batches.
+     * 
+     * @param body  The request body
+     * @return One {@link BulkMessageResult} per submitted message, in the same order
+     */
+    @PostMapping(value = "/messages/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON })
+    public ResponseEntity<?> createMessages(InputStream body) {
+
+        List<Message> messages = new ArrayList<>();
+        try (MappingIterator<Message> iterator = objectMapper.readerFor(Message.class).readValues(body)) {
+            // Reads one message past the limit, so that the request is rejected without reading the rest
+            while (messages.size() <= MAX_BULK_MESSAGES && iterator.hasNextValue()) {
+                messages.add(iterator.nextValue());
+            }
+        } catch (JsonProcessingException ex) {
+            return ResponseEntity.badRequest()
+                    .body(INVALID_BULK_BODY);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return createMessages(messages);
+    }
+
+    /**
+     * Creates the messages of a bulk request once they have been read, see
+     * {@link #createMessages(InputStream)}.
+     * 
+     * @param messages  The submitted messages, at most one more than {@value #MAX_BULK_MESSAGES}
+     * @return One {@link BulkMessageResult} per submitted message, in the same order
+     */
+    ResponseEntity<?> createMessages(List<Message> messages) {
+
+        if (messages.size() > MAX_BULK_MESSAGES) {
+            return ResponseEntity.badRequest()
+                    .body("At most " + MAX_BULK_MESSAGES + " messages can be created at once");
+        }
+
+        Set<Integer> postedBy = new HashSet<>();
+        for (Message message : messages) {
+            if (message.getPostedBy() != null) {
+                postedBy.add(message.getPostedBy());
+            }
+        }
+        Set<Integer> existingAccounts = accountService.existingAccountIds(postedBy);
 
         return ResponseEntity.ok()
-                .body(messageService.createMessage(message));
+                .body(createValidMessages(messages, existingAccounts, messageService));
     }
 
     /**
-     * Controller handler for retrieving all messages in the database
+     * Controller handler for retrieving all messages in the database.
+     * Without any parameters the whole table is returned. When a cursor or a limit
+     * is given, one page ordered by messageId is returned instead and the
+     * {@value #NEXT_CURSOR_HEADER} header holds the cursor for the following page.
+     * The header is left out once the last page has been reached.
      * 
-     * @return A list of all messages
+     * @param after  The cursor returned with the previous page
+     * @param limit  The maximum number of messages in the page
+     * @return A list of all messages, or of the messages in the requested page
      */
     @GetMapping("/messages")
-    public ResponseEntity<List<Message>> getAllMessage() {        
-        return ResponseEntity.ok()
-                .body(messageService.getAllMessages());
+    public ResponseEntity<?> getAllMessage(@RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+
+        if (after == null && limit == null) {
+            return ResponseEntity.ok()
+                    .body(messageService.getAllMessages());
+        }
+
+        PageRequest request = PageRequest.afterMessageId(after, limit);
+        if (request.getError() != null) {
+            return request.getError();
+        }
+
+        return messageIdPage(messageService.getMessagesAfter(request.getMessageId(), request.getLimit()),
+                request.getLimit());
     }
 
     /**
-     * Controller handler for retrieving a {@link Message} by its messageId
+     * Controller handler for exporting all messages in the database as newline-delimited JSON.
+     * Selected when the client accepts {@value #APPLICATION_NDJSON}. Messages are written
+     * as they are read from the database instead of being collected into a list first.
+     * 
+     * @return A stream of all messages, one JSON object per line
+     */
+    @GetMapping(value = "/messages", produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAllMessages() {
+        return ndjson(messageService::streamAllMessages);
+    }
+
+    /**
+     * Controller handler for searching message text.
+     * Returns one page of {@link SearchHit}s, best match first, and the
+     * {@value #NEXT_CURSOR_HEADER} header holds the cursor for the following page.
+     * All words of the query must match unless they are joined with {@code |}.
+     * 
+     * @param q      The query text
+     * @param after  The cursor returned with the previous page
+     * @param limit  The maximum number of hits in the page
+     * @return A list of the hits in the requested page
+     */
+    @GetMapping("/messages/search")
+    public ResponseEntity<?> searchMessages(@RequestParam(required = false) String q,
+            @RequestParam(required = false) String after, @RequestParam(required = false) Integer limit) {
+
+        if (q == null || q.isBlank()) {
+            return ResponseEntity.badRequest()
+                    .body("The search query must not be empty");
+        }
+
+        PageRequest request = PageRequest.afterScore(after, limit);
+        if (request.getError() != null) {
+            return request.getError();
+        }
+
+        List<SearchHit> page = searchService.search(q, request.getScore(), request.getMessageId(), request.getLimit());
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == request.getLimit()) {
+            response.header(NEXT_CURSOR_HEADER, searchCursor(page.get(page.size() - 1)));
+        }
+        return response.body(page);
+    }
+
+    /**
+     * Controller handler for retrieving a {@link Message} by its messageId.
+     * An existing message comes with an ETag and a Last-Modified header; when the
+     * request's If-None-Match or If-Modified-Since still matches them, the API
+     * returns a 304 without loading the message. With the {@code offheap} message
+     * cache, the body is encoded straight from the cache instead of by Jackson, and
+     * with the {@link JsonResponseCache} a hit is written without encoding anything.
      * 
      * @param messageId
+     * @param headers  The request headers, for the conditional request headers
      * @return The message if it exists
      */
     @GetMapping("/messages/{messageId}")
-    public ResponseEntity<Message> getMessage(@PathVariable int messageId) {
+    public ResponseEntity<?> getMessage(@PathVariable int messageId, @RequestHeader HttpHeaders headers) {
+        long stamp = messageService.getMessageStamp(messageId);
+        if (isNotModified(headers, stamp)) {
+            return notModified(stamp);
+        }
+
+        if (jsonCache.isEnabled() || messageService.isMessageJsonCached()) {
+            Optional<byte[]> json = jsonCache.isEnabled()
+                    ? jsonCache.getMessage(messageId, stamp, this::loadMessageJson)
+                    : messageService.getMessageJson(messageId);
+            if (json.isEmpty()) {
+                return ResponseEntity.ok()
+                        .build();
+            }
+            return withValidators(ResponseEntity.ok(), stamp)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(json.get());
+        }
+
         Optional<Message> message = messageService.getMessage(messageId);
 
         if (message.isEmpty()) {
             return ResponseEntity.ok()
                     .build();
         } else {
-            return ResponseEntity.ok()
+            return withValidators(ResponseEntity.ok(), stamp)
                     .body(message.get());
         }
     }
@@ -177,9 +405,9 @@ public class SocialMediaController {
     @PatchMapping("/messages/{messageId}")
     public ResponseEntity<?> updateMessage(@PathVariable int messageId, @RequestBody Message message) {
 
-        if (message.getMessageText().isEmpty() || message.getMessageText().length() > 255) {
+        if (!isValidMessageText(message.getMessageText())) {
             return ResponseEntity.badRequest()
-                    .body("The message text must be between 1 and 255 characters long");
+                    .body(INVALID_MESSAGE_TEXT);
         }
 
         try {
@@ -194,13 +422,342 @@ public class SocialMediaController {
 
     /**
      * Controller handler for retrieving all messages for an {@link Account} given an id.
+     * Without any parameters every message of the account is returned. When a cursor or
+     * a limit is given, one page of the account's messages is returned newest first, and
+     * the {@value #NEXT_CURSOR_HEADER} header holds the cursor for the following, older page.
+     * Either way the response comes with the account's ETag and Last-Modified, which
+     * change with any of its messages, and a matching conditional request gets a 304
+     * without reading any message. With the {@link JsonResponseCache}, the body of a
+     * page read before is written as it was encoded then.
      * 
      * @param accountId
-     * @return A list of all messages posted by the account
+     * @param before   The cursor returned with the previous page
+     * @param limit    The maximum number of messages in the page
+     * @param headers  The request headers, for the conditional request headers
+     * @return A list of all messages posted by the account, or of the messages in the requested page
      */
     @GetMapping("/accounts/{accountId}/messages")
-    public ResponseEntity<List<Message>> getAllMessagesForUser(@PathVariable int accountId) {
+    public ResponseEntity<?> getAllMessagesForUser(@PathVariable int accountId,
+            @RequestParam(required = false) String before, @RequestParam(required = false) Integer limit,
+            @RequestHeader HttpHeaders headers) {
+
+        long stamp = messageService.getAccountStamp(accountId);
+        if (before == null && limit == null) {
+            if (isNotModified(headers, stamp)) {
+                return notModified(stamp);
+            }
+            if (jsonCache.isEnabled()) {
+                return withValidators(ResponseEntity.ok(), stamp)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(getAllMessagesForUserJson(accountId, stamp));
+            }
+            return withValidators(ResponseEntity.ok(), stamp)
+                .body(messageService.findAllByUser(accountId));
+        }
+
+        PageRequest request = PageRequest.beforeTimePosted(before, limit);
+        if (request.getError() != null) {
+            return request.getError();
+        }
+        int pageLimit = request.getLimit();
+
+        if (isNotModified(headers, stamp)) {
+            return notModified(stamp);
+        }
+
+        ResponseEntity.BodyBuilder response = withValidators(ResponseEntity.ok(), stamp);
+        if (jsonCache.isEnabled()) {
+            String pageKey = before == null ? String.valueOf(pageLimit) : pageLimit + "/" + before;
+            JsonResponseCache.Page cached = jsonCache.getPage(accountId, pageKey, stamp, () -> {
+                List<Message> page = messageService.findPageByUser(accountId, request.getTimePostedEpoch(),
+                        request.getMessageId(), pageLimit);
+                return new JsonResponseCache.Page(JsonResponseCache.toJson(page), nextCursor(page, pageLimit));
+            });
+            if (cached.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, cached.getNextCursor());
+            }
+            return response.contentType(MediaType.APPLICATION_JSON)
+                    .body(cached.getJson());
+        }
+
+        return newestFirstPage(response, messageService.findPageByUser(accountId, request.getTimePostedEpoch(),
+                request.getMessageId(), pageLimit), pageLimit);
+    }
+
+    /**
+     * Controller handler for exporting all messages for an {@link Account} as newline-delimited JSON.
+     * Selected when the client accepts {@value #APPLICATION_NDJSON}.
+     * 
+     * @param accountId
+     * @return A stream of all messages posted by the account, one JSON object per line
+     */
+    @GetMapping(value = "/accounts/{accountId}/messages", produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAllMessagesForUser(@PathVariable int accountId) {
+        return ndjson(consumer -> messageService.streamAllByUser(accountId, consumer));
+    }
+
+    /**
+     * Controller handler for making an {@link Account} follow another one.
+     * Both accounts must exist and an account cannot follow itself, otherwise the API
+     * will return a 400. Following an account that is already followed succeeds again.
+     * 
+     * @param accountId   The account that follows
+     * @param followeeId  The account to be followed
+     * @return The {@link Follow} if successful
+     */
+    @PostMapping("/accounts/{accountId}/following/{followeeId}")
+    public ResponseEntity<?> follow(@PathVariable int accountId, @PathVariable int followeeId) {
+
+        if (accountId == followeeId) {
+            return ResponseEntity.badRequest()
+                    .body("An account cannot follow itself");
+        }
+
+        if (!accountService.accountExists(accountId) || !accountService.accountExists(followeeId)) {
+            return ResponseEntity.badRequest()
+                    .body("Both accounts must exist");
+        }
+
+        return ResponseEntity.ok()
+                .body(timelineService.follow(accountId, followeeId));
+    }
+
+    /**
+     * Controller handler for making an {@link Account} stop following another one.
+     * 
+     * @param accountId   The account that follows
+     * @param followeeId  The account to be unfollowed
+     * @return The number of rows affected if the account was following, otherwise an empty body
+     */
+    @DeleteMapping("/accounts/{accountId}/following/{followeeId}")
+    public ResponseEntity<Integer> unfollow(@PathVariable int accountId, @PathVariable int followeeId) {
+        int rowsAffected = timelineService.unfollow(accountId, followeeId);
+        if (rowsAffected == 0) {
+            return ResponseEntity.ok()
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .body(rowsAffected);
+    }
+
+    /**
+     * Controller handler for retrieving the accountIds an {@link Account} follows.
+     * 
+     * @param accountId
+     * @return A list of accountIds, empty if the account follows no one
+     */
+    @GetMapping("/accounts/{accountId}/following")
+    public ResponseEntity<List<Integer>> getFollowing(@PathVariable int accountId) {
+        return ResponseEntity.ok()
+                .body(timelineService.findFolloweeIds(accountId));
+    }
+
+    /**
+     * Controller handler for retrieving the home timeline of an {@link Account}: the
+     * newest messages of every account it follows, newest first, one page at a time.
+     * The {@value #NEXT_CURSOR_HEADER} header holds the cursor for the following, older page.
+     * 
+     * @param accountId
+     * @param before  The cursor returned with the previous page
+     * @param limit   The maximum number of messages in the page
+     * @return A list of the messages in the requested page
+     */
+    @GetMapping("/accounts/{accountId}/timeline")
+    public ResponseEntity<?> getHomeTimeline(@PathVariable int accountId,
+            @RequestParam(required = false) String before, @RequestParam(required = false) Integer limit) {
+
+        PageRequest request = PageRequest.beforeTimePosted(before, limit);
+        if (request.getError() != null) {
+            return request.getError();
+        }
+
+        return newestFirstPage(ResponseEntity.ok(), timelineService.getHomeTimeline(accountId,
+                request.getTimePostedEpoch(), request.getMessageId(), request.getLimit()), request.getLimit());
+    }
+
+    /**
+     * Validates each message of a bulk request, creates the valid ones in batches
+     * with the {@link MessageService} and reports the outcome of every message.
+     * 
+     * @param messages          The submitted messages
+     * @param existingAccounts  The ids among the messages' postedBy that belong to an account
+     * @return One {@link BulkMessageResult} per submitted message, in the same order
+     */
+    static List<BulkMessageResult> createValidMessages(List<Message> messages, Set<Integer> existingAccounts,
+            MessageService messageService) {
+        List<BulkMessageResult> results = new ArrayList<>(messages.size());
+        List<Message> accepted = new ArrayList<>(messages.size());
+        List<Integer> acceptedIndexes = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (!existingAccounts.contains(message.getPostedBy())) {
+                results.add(BulkMessageResult.rejected(i, "The account posting this message does not exist"));
+            } else if (!isValidMessageText(message.getMessageText())) {
+                results.add(BulkMessageResult.rejected(i, INVALID_MESSAGE_TEXT));
+            } else {
+                message.setMessageId(null);
+                accepted.add(message);
+                acceptedIndexes.add(i);
+                results.add(null);
+            }
+        }
+
+        List<Message> created = messageService.createMessages(accepted);
+        for (int i = 0; i < created.size(); i++) {
+            int index = acceptedIndexes.get(i);
+            results.set(index, BulkMessageResult.created(index, created.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Builds the 503 returned when a bounded resource is full, telling the
+     * client to retry after {@value #RETRY_AFTER_SECONDS} second(s).
+     */
+    static ResponseEntity<String> serviceUnavailable(CapacityExceededException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS))
+                .body(ex.getMessage());
+    }
+
+    /**
+     * Builds the 429 returned when a rate limit of the {@link RateLimiter} is reached.
+     */
+    static ResponseEntity<String> tooManyRequests(long waitNanos) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(RateLimiter.retryAfterSeconds(waitNanos)))
+                .body(RateLimiter.TOO_MANY_REQUESTS);
+    }
+
+    /**
+     * Whether a conditional GET can be answered with a 304 from a {@link MessageVersions}
+     * stamp alone. If-None-Match takes precedence over If-Modified-Since, whose
+     * resolution is only a second.
+     */
+    static boolean isNotModified(HttpHeaders headers, long stamp) {
+        List<String> ifNoneMatch = headers.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            String etag = MessageVersions.etag(stamp);
+            // GET compares weakly, so a weak tag with the same value matches too
+            return ifNoneMatch.contains(etag) || ifNoneMatch.contains("W/" + etag);
+        }
+        long ifModifiedSince = headers.getIfModifiedSince();
+        return ifModifiedSince >= 0 && MessageVersions.lastModified(stamp) / 1000 * 1000 <= ifModifiedSince;
+    }
+
+    /**
+     * Builds the 304 returned for a conditional GET whose validators still match.
+     */
+    static <T> ResponseEntity<T> notModified(long stamp) {
+        return withValidators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), stamp).build();
+    }
+
+    /**
+     * Adds the ETag and Last-Modified headers built from a {@link MessageVersions} stamp.
+     */
+    static ResponseEntity.BodyBuilder withValidators(ResponseEntity.BodyBuilder response, long stamp) {
+        return response.eTag(MessageVersions.etag(stamp))
+                .lastModified(MessageVersions.lastModified(stamp));
+    }
+
+    /**
+     * Encodes every message of an account as one JSON array through the {@link JsonResponseCache},
+     * which must be enabled.
+     */
+    byte[] getAllMessagesForUserJson(int accountId, long stamp) {
+        return jsonCache.getPage(accountId, ALL_MESSAGES_PAGE, stamp,
+                () -> new JsonResponseCache.Page(
+                        JsonResponseCache.toJson(messageService.findAllByUser(accountId)), null)).getJson();
+    }
+
+    /**
+     * Builds the response for a page of messages ordered by messageId, with the cursor of
+     * the following page when the page is full.
+     */
+    static ResponseEntity<List<Message>> messageIdPage(List<Message> page, int pageLimit) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == pageLimit) {
+            response.header(NEXT_CURSOR_HEADER, Cursor.encode(page.get(page.size() - 1).getMessageId()));
+        }
+        return response.body(page);
+    }
+
+    /**
+     * Builds the response for a page of messages ordered newest first, with the cursor of
+     * the following page when there is one.
+     */
+    static ResponseEntity<List<Message>> newestFirstPage(ResponseEntity.BodyBuilder response, List<Message> page,
+            int pageLimit) {
+        String nextCursor = nextCursor(page, pageLimit);
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return response.body(page);
+    }
+
+    /**
+     * Builds the cursor of the page following a page of messages ordered newest first,
+     * or returns null when it is the last page.
+     */
+    static String nextCursor(List<Message> page, int pageLimit) {
+        Message last = page.isEmpty() ? null : page.get(page.size() - 1);
+        // Messages without a timePostedEpoch sort after all others and end the walk
+        if (page.size() == pageLimit && last.getTimePostedEpoch() != null) {
+            return Cursor.encode(last.getTimePostedEpoch(), last.getMessageId());
+        }
+        return null;
+    }
+
+    /**
+     * Builds the cursor of the page following a search hit, from its exact score and messageId.
+     */
+    static String searchCursor(SearchHit last) {
+        return Cursor.encode(Float.floatToIntBits(last.getScore()), last.getMessage().getMessageId());
+    }
+
+    static boolean isValidMessageText(String messageText) {
+        return messageText != null && !messageText.isEmpty() && messageText.length() <= 255;
+    }
+
+    /**
+     * Encodes a message for the {@link JsonResponseCache}, straight from the off-heap
+     * {@link MessageCache} when it is in use.
+     */
+    private Optional<byte[]> loadMessageJson(int messageId) {
+        if (messageService.isMessageJsonCached()) {
+            return messageService.getMessageJson(messageId);
+        }
+        return messageService.getMessage(messageId).map(MessageCache::toJson);
+    }
+
+    /**
+     * Wraps a streaming service call in a response body that writes each message
+     * on its own line as soon as the service hands it over.
+     */
+    private ResponseEntity<StreamingResponseBody> ndjson(Consumer<Consumer<Message>> source) {
+        ObjectWriter writer = objectMapper.writerFor(Message.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        StreamingResponseBody body = outputStream -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+            generator.setRootValueSeparator(null);
+            try {
+                source.accept(message -> {
+                    try {
+                        writer.writeValue(generator, message);
+                        generator.writeRaw('\n');
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            generator.flush();
+        };
+
         return ResponseEntity.ok()
-            .body(messageService.findAllByUser(accountId));
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON))
+                .body(body);
     }
 }
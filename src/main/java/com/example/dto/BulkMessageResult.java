@@ -0,0 +1,88 @@
+package com.example.dto;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The outcome of one message in a bulk create request. Results are returned in
+ * the same order as the submitted messages, and index is the position of the
+ * message in the request.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkMessageResult {
+
+    private int index;
+    private int status;
+    private Message message;
+    private String error;
+
+    public BulkMessageResult() {
+    }
+
+    private BulkMessageResult(int index, int status, Message message, String error) {
+        this.index = index;
+        this.status = status;
+        this.message = message;
+        this.error = error;
+    }
+
+    /**
+     * @param index
+     * @param message  The created message, with its messageId
+     * @return A result with status 200
+     */
+    public static BulkMessageResult created(int index, Message message) {
+        return new BulkMessageResult(index, 200, message, null);
+    }
+
+    /**
+     * @param index
+     * @param error  Why the message was not created
+     * @return A result with status 400
+     */
+    public static BulkMessageResult rejected(int index, String error) {
+        return new BulkMessageResult(index, 400, null, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkMessageResult{" +
+                "index=" + index +
+                ", status=" + status +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
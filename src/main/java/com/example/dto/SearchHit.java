@@ -0,0 +1,37 @@
+package com.example.dto;
+
+import com.example.entity.Message;
+
+/**
+ * One message found by a search, with its relevance score. Hits are returned
+ * best match first; scores are only comparable within one search.
+ */
+public class SearchHit {
+
+    private Message message;
+    private float score;
+
+    public SearchHit() {
+    }
+
+    public SearchHit(Message message, float score) {
+        this.message = message;
+        this.score = score;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public void setScore(float score) {
+        this.score = score;
+    }
+}
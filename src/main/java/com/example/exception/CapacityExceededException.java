@@ -0,0 +1,10 @@
+package com.example.exception;
+
+/**
+ * Thrown when a bounded resource is full and the request should be retried later.
+ */
+public class CapacityExceededException extends Exception {
+    public CapacityExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.ratelimit;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Applies the client and global limits of the {@link RateLimiter} to every
+ * request before it reaches a controller, answering 429 with a Retry-After
+ * header once a bucket is empty. Actuator endpoints are not limited, so health
+ * checks and metric scrapes keep working while the API sheds load.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    public RateLimitFilter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/actuator/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long waitNanos = rateLimiter.acquireRequest(request.getRemoteAddr());
+        if (waitNanos > 0) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(RateLimiter.retryAfterSeconds(waitNanos)));
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getWriter().write(RateLimiter.TOO_MANY_REQUESTS);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+}
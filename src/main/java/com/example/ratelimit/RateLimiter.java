@@ -0,0 +1,220 @@
+package com.example.ratelimit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token-bucket rate limits, so that one client cannot flood the API or
+ * brute-force a password at the expense of everyone else. Every request takes
+ * a token from the bucket of its client address and from one global bucket;
+ * creating a message and logging in also take one from the bucket of the
+ * account concerned. Each limit is set with {@code app.rate-limit.<limit>.per-second}
+ * and {@code .burst}, and all of them are turned off with
+ * {@code app.rate-limit.enabled=false}.
+ * <p>
+ * The buckets of each limit live in a {@link ConcurrentHashMap}, so taking a
+ * token is a map read and a compare-and-set. A bucket that has filled up again
+ * is no different from a new one, so once a second the buckets that are full
+ * are expired and dropped. {@code app.rate-limit.max-buckets} caps each map;
+ * keys that arrive while it is full share one overflow bucket until space is
+ * freed, so a flood of distinct clients is limited as if it were one.
+ * Every method returns 0 when the request may go ahead, and otherwise the
+ * nanoseconds until it may be retried.
+ */
+@Component
+public class RateLimiter {
+
+    /**
+     * The body of a 429 response.
+     */
+    public static final String TOO_MANY_REQUESTS = "Too many requests, try again later";
+
+    private final boolean enabled;
+    private final TokenBucket global;
+    private final LongAdder globalRejected = new LongAdder();
+    private final Limit<String> clients;
+    private final Limit<Integer> accountMessages;
+    private final Limit<String> accountLogins;
+    private final ScheduledExecutorService sweeper;
+
+    @Autowired
+    public RateLimiter(@Value("${app.rate-limit.enabled:true}") boolean enabled,
+            @Value("${app.rate-limit.global.per-second:5000}") double globalPerSecond,
+            @Value("${app.rate-limit.global.burst:10000}") int globalBurst,
+            @Value("${app.rate-limit.client.per-second:100}") double clientPerSecond,
+            @Value("${app.rate-limit.client.burst:200}") int clientBurst,
+            @Value("${app.rate-limit.account-messages.per-second:5}") double messagesPerSecond,
+            @Value("${app.rate-limit.account-messages.burst:20}") int messagesBurst,
+            @Value("${app.rate-limit.account-logins.per-second:1}") double loginsPerSecond,
+            @Value("${app.rate-limit.account-logins.burst:10}") int loginsBurst,
+            @Value("${app.rate-limit.max-buckets:100000}") long maxBuckets) {
+        this.enabled = enabled;
+        this.global = new TokenBucket(globalPerSecond, globalBurst, System.nanoTime());
+        this.clients = new Limit<>(clientPerSecond, clientBurst, maxBuckets);
+        this.accountMessages = new Limit<>(messagesPerSecond, messagesBurst, maxBuckets);
+        this.accountLogins = new Limit<>(loginsPerSecond, loginsBurst, maxBuckets);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            sweeper.scheduleWithFixedDelay(this::expireFullBuckets, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Takes a token for any request, first from its client's bucket so that a
+     * client over its own limit does not use up the global one.
+     *
+     * @param clientAddress  The remote address of the request
+     * @return 0 if the request may go ahead, otherwise the nanoseconds until it may be retried
+     */
+    public long acquireRequest(String clientAddress) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long waitNanos = clients.tryAcquire(clientAddress, now);
+        if (waitNanos > 0) {
+            return waitNanos;
+        }
+        waitNanos = global.tryAcquire(now);
+        if (waitNanos > 0) {
+            globalRejected.increment();
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Takes a token for a message posted by an account.
+     *
+     * @param accountId  The account posting, or null when the request names none
+     * @return 0 if the message may be created, otherwise the nanoseconds until it may be retried
+     */
+    public long acquireMessage(Integer accountId) {
+        if (!enabled || accountId == null) {
+            return 0;
+        }
+        return accountMessages.tryAcquire(accountId, System.nanoTime());
+    }
+
+    /**
+     * Takes a token for a login attempt on a username, whichever client it comes from.
+     *
+     * @param username  The username to log in as
+     * @return 0 if the login may be attempted, otherwise the nanoseconds until it may be retried
+     */
+    public long acquireLogin(String username) {
+        if (!enabled || username == null) {
+            return 0;
+        }
+        return accountLogins.tryAcquire(username, System.nanoTime());
+    }
+
+    /**
+     * @param waitNanos  A wait returned by this limiter
+     * @return The wait in whole seconds, rounded up, for a Retry-After header
+     */
+    public static long retryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public long globalRejectedCount() {
+        return globalRejected.sum();
+    }
+
+    public long clientRejectedCount() {
+        return clients.rejected.sum();
+    }
+
+    public long accountMessagesRejectedCount() {
+        return accountMessages.rejected.sum();
+    }
+
+    public long accountLoginsRejectedCount() {
+        return accountLogins.rejected.sum();
+    }
+
+    public long clientBucketCount() {
+        return clients.buckets.size();
+    }
+
+    public long accountBucketCount() {
+        return accountMessages.buckets.size() + accountLogins.buckets.size();
+    }
+
+    /**
+     * Drops every bucket that has filled up again.
+     */
+    void expireFullBuckets() {
+        long now = System.nanoTime();
+        clients.expireFullBuckets(now);
+        accountMessages.expireFullBuckets(now);
+        accountLogins.expireFullBuckets(now);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * One bucket per key, all with the same rate and burst.
+     */
+    private static final class Limit<K> {
+
+        private final Map<K, TokenBucket> buckets = new ConcurrentHashMap<>();
+        private final Function<K, TokenBucket> newBucket;
+        private final long maxBuckets;
+        private final double perSecond;
+        private final int burst;
+        private volatile TokenBucket overflow;
+        private final LongAdder rejected = new LongAdder();
+
+        Limit(double perSecond, int burst, long maxBuckets) {
+            this.perSecond = perSecond;
+            this.burst = burst;
+            this.maxBuckets = maxBuckets;
+            this.newBucket = key -> new TokenBucket(perSecond, burst, System.nanoTime());
+            this.overflow = newBucket.apply(null);
+        }
+
+        long tryAcquire(K key, long now) {
+            while (true) {
+                TokenBucket bucket = buckets.get(key);
+                if (bucket == null) {
+                    bucket = buckets.size() < maxBuckets ? buckets.computeIfAbsent(key, newBucket) : overflow;
+                }
+                long waitNanos = bucket.tryAcquire(now);
+                if (waitNanos == TokenBucket.EXPIRED) {
+                    // Expired by the sweeper since it was read; the next read finds it gone or replaced
+                    buckets.remove(key, bucket);
+                    continue;
+                }
+                if (waitNanos > 0) {
+                    rejected.increment();
+                }
+                return waitNanos;
+            }
+        }
+
+        void expireFullBuckets(long now) {
+            buckets.entrySet().removeIf(entry -> entry.getValue().expireIfFull(now));
+            if (overflow.expireIfFull(now)) {
+                overflow = new TokenBucket(perSecond, burst, now);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.ratelimit;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * The {@link RateLimitFilter} for the {@code reactive} profile.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveRateLimitFilter implements WebFilter {
+
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    public ReactiveRateLimitFilter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (exchange.getRequest().getPath().value().startsWith("/actuator/")) {
+            return chain.filter(exchange);
+        }
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        long waitNanos = rateLimiter.acquireRequest(
+                remoteAddress == null ? "" : remoteAddress.getAddress().getHostAddress());
+        if (waitNanos > 0) {
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(RateLimiter.retryAfterSeconds(waitNanos)));
+            response.getHeaders().setContentType(MediaType.TEXT_PLAIN);
+            return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory()
+                    .wrap(RateLimiter.TOO_MANY_REQUESTS.getBytes(StandardCharsets.UTF_8))));
+        }
+        return chain.filter(exchange);
+    }
+}
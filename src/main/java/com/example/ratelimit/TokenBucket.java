@@ -0,0 +1,73 @@
+package com.example.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that refills at a constant rate up to a burst size, kept as
+ * the generic cell rate algorithm: a single timestamp of when the bucket will
+ * be full again. Taking a token moves that time forward by one token's worth,
+ * so it is one compare-and-set, without locks or a refill thread.
+ * <p>
+ * A bucket that has filled up again can be expired, after which it never
+ * hands out a token again, so its owner can drop it without losing any.
+ */
+final class TokenBucket {
+
+    /**
+     * Returned by {@link #tryAcquire(long)} once the bucket has been expired.
+     */
+    static final long EXPIRED = -1;
+
+    private static final long EXPIRED_AT = Long.MIN_VALUE;
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param perSecond  Tokens added per second
+     * @param burst      The most tokens the bucket holds, and the size of a burst
+     * @param now        The current {@link System#nanoTime()}; the bucket starts full
+     */
+    TokenBucket(double perSecond, int burst, long now) {
+        this.nanosPerToken = Math.max(1, Math.round(1_000_000_000L / perSecond));
+        this.burstNanos = nanosPerToken * burst;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes one token if there is one.
+     *
+     * @param now  The current {@link System#nanoTime()}
+     * @return 0 if a token was taken, {@link #EXPIRED} if the bucket has been expired,
+     *          otherwise the nanoseconds until a token will be available
+     */
+    long tryAcquire(long now) {
+        while (true) {
+            long full = fullAt.get();
+            if (full == EXPIRED_AT) {
+                return EXPIRED;
+            }
+            long next = (full - now < 0 ? now : full) + nanosPerToken;
+            long excess = next - now - burstNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (fullAt.compareAndSet(full, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Expires the bucket if it is full, as then dropping it is no different
+     * from starting over with a new one.
+     *
+     * @param now  The current {@link System#nanoTime()}
+     * @return true if the bucket was full and has been expired
+     */
+    boolean expireIfFull(long now) {
+        long full = fullAt.get();
+        return full != EXPIRED_AT && full - now <= 0 && fullAt.compareAndSet(full, EXPIRED_AT);
+    }
+}
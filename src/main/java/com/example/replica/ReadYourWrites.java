@@ -0,0 +1,47 @@
+package com.example.replica;
+
+/**
+ * Read-your-writes stickiness for one request. Once a request has written to
+ * the primary, {@link ReplicaRoutingDataSource} sends the rest of its reads to
+ * the primary too, so it never reads from a replica that could still be behind
+ * its own write. Outside a request there is no stickiness.
+ */
+public final class ReadYourWrites {
+
+    private static final ThreadLocal<boolean[]> WROTE = new ThreadLocal<>();
+
+    private ReadYourWrites() {
+    }
+
+    /**
+     * Starts tracking the writes of the request handled on this thread.
+     */
+    public static void begin() {
+        WROTE.set(new boolean[1]);
+    }
+
+    /**
+     * Stops tracking once the request has been handled.
+     */
+    public static void end() {
+        WROTE.remove();
+    }
+
+    /**
+     * Records that the current request has written to the primary.
+     */
+    static void wrote() {
+        boolean[] wrote = WROTE.get();
+        if (wrote != null) {
+            wrote[0] = true;
+        }
+    }
+
+    /**
+     * @return Whether the current request has written to the primary
+     */
+    public static boolean hasWritten() {
+        boolean[] wrote = WROTE.get();
+        return wrote != null && wrote[0];
+    }
+}
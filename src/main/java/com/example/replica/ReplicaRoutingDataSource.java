@@ -0,0 +1,108 @@
+package com.example.replica;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * One DataSource over the primary and its read replicas. Read-only transactions,
+ * which include the reads of every Spring Data repository, take their connection
+ * from the replicas in turn; everything else, and every read of a request that has
+ * already written (see {@link ReadYourWrites}), uses the primary. Replicas are
+ * only read once {@link Replicator} has brought them up to date at startup.
+ * <p>
+ * A transaction begins before its read-only flag is known, so connections are
+ * only taken from a pool at the first statement. Each transaction that writes
+ * runs the {@link #onWriteCommitted(Runnable)} callback once it has committed.
+ */
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    private static final String PRIMARY = "primary";
+
+    private final HikariDataSource primary;
+    private final List<HikariDataSource> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean replicasReady;
+    private volatile Runnable writeCommitted = () -> { };
+
+    /**
+     * @param primary   The pool of the primary
+     * @param replicas  The pool of each replica
+     */
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int replica = 0; replica < replicas.size(); replica++) {
+            targets.put(replica, replicas.get(replica));
+        }
+        Router router = new Router();
+        router.setTargetDataSources(targets);
+        router.setDefaultTargetDataSource(primary);
+        router.afterPropertiesSet();
+        setTargetDataSource(router);
+        afterPropertiesSet();
+    }
+
+    public HikariDataSource getPrimary() {
+        return primary;
+    }
+
+    public List<HikariDataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Lets read-only transactions use the replicas from now on.
+     */
+    void markReplicasReady() {
+        replicasReady = true;
+    }
+
+    /**
+     * @param callback  Run on the committing thread after every transaction that wrote
+     */
+    void onWriteCommitted(Runnable callback) {
+        this.writeCommitted = callback;
+    }
+
+    @Override
+    public void close() {
+        primary.close();
+        replicas.forEach(HikariDataSource::close);
+    }
+
+    private class Router extends AbstractRoutingDataSource {
+
+        @Override
+        protected Object determineCurrentLookupKey() {
+            if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                ReadYourWrites.wrote();
+                if (TransactionSynchronizationManager.isActualTransactionActive()
+                        && TransactionSynchronizationManager.isSynchronizationActive()) {
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            writeCommitted.run();
+                        }
+                    });
+                }
+                return PRIMARY;
+            }
+            if (!replicasReady || ReadYourWrites.hasWritten()) {
+                return PRIMARY;
+            }
+            return Math.floorMod(next.getAndIncrement(), replicas.size());
+        }
+    }
+}
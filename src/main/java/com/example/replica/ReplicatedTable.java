@@ -0,0 +1,77 @@
+package com.example.replica;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The tables copied to the read replicas, with their columns in table order.
+ * The first {@link #keyColumns()} columns are the primary key.
+ */
+enum ReplicatedTable {
+
+    ACCOUNT("account", 1, "accountId", "username", "password"),
+    FOLLOW("follow", 2, "followerId", "followeeId"),
+    MESSAGE("message", 1, "messageId", "postedBy", "messageText", "timePostedEpoch");
+
+    private final String tableName;
+    private final int keyColumns;
+    private final List<String> columns;
+    private final String select;
+    private final String delete;
+    private final String insert;
+
+    ReplicatedTable(String tableName, int keyColumns, String... columns) {
+        this.tableName = tableName;
+        this.keyColumns = keyColumns;
+        this.columns = List.of(columns);
+        String key = this.columns.subList(0, keyColumns).stream()
+                .map(column -> column + " = ?")
+                .collect(Collectors.joining(" and "));
+        this.select = "select " + String.join(", ", columns) + " from " + tableName + " where " + key;
+        this.delete = "delete from " + tableName + " where " + key;
+        this.insert = "insert into " + tableName + " (" + String.join(", ", columns) + ") values ("
+                + this.columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ")";
+    }
+
+    static ReplicatedTable of(String tableName) {
+        return Arrays.stream(values())
+                .filter(table -> table.tableName.equalsIgnoreCase(tableName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Not a replicated table: " + tableName));
+    }
+
+    String tableName() {
+        return tableName;
+    }
+
+    int keyColumns() {
+        return keyColumns;
+    }
+
+    int columnCount() {
+        return columns.size();
+    }
+
+    /**
+     * @return A query for one row by its key
+     */
+    String selectByKey() {
+        return select;
+    }
+
+    /**
+     * @return A query for every row
+     */
+    String selectAll() {
+        return "select " + String.join(", ", columns) + " from " + tableName;
+    }
+
+    String deleteByKey() {
+        return delete;
+    }
+
+    String insert() {
+        return insert;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.replica;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.h2.api.Trigger;
+
+/**
+ * Row trigger on the primary, created by replication-schema.sql, that records
+ * the key of every inserted, updated or deleted row in replication_log. It
+ * writes in the same transaction as the change, so the log only ever names
+ * rows of committed transactions. {@link Replicator} reads the log.
+ */
+public class ReplicationTrigger implements Trigger {
+
+    private ReplicatedTable table;
+
+    @Override
+    public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before,
+            int type) {
+        table = ReplicatedTable.of(tableName);
+    }
+
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        if (oldRow != null) {
+            log(conn, oldRow);
+        }
+        // An update that keeps the key only needs logging once
+        if (newRow != null && (oldRow == null || !sameKey(oldRow, newRow))) {
+            log(conn, newRow);
+        }
+    }
+
+    private boolean sameKey(Object[] oldRow, Object[] newRow) {
+        return Arrays.equals(oldRow, 0, table.keyColumns(), newRow, 0, table.keyColumns());
+    }
+
+    private void log(Connection conn, Object[] row) throws SQLException {
+        try (PreparedStatement insert = conn.prepareStatement(
+                "insert into replication_log (tableName, key1, key2) values (?, ?, ?)")) {
+            insert.setString(1, table.tableName());
+            insert.setObject(2, row[0]);
+            if (table.keyColumns() > 1) {
+                insert.setObject(3, row[1]);
+            } else {
+                insert.setNull(3, Types.INTEGER);
+            }
+            insert.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.replica;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * A stand-in for database replication, which H2 does not have. Every change to
+ * a {@link ReplicatedTable} on the primary is logged by {@link ReplicationTrigger};
+ * the replicator reads the log, copies the current version of each logged row
+ * (or its absence) to every replica, and then removes those log entries.
+ * <p>
+ * It runs on the committing thread after each transaction that wrote, so a write
+ * has reached the replicas by the time its caller sees it succeed, and also every
+ * {@code app.replication.poll-interval-ms} for writes made outside a transaction.
+ * At startup every replica is first loaded with a full copy of the primary.
+ * The replicator reads the primary through its own connection, so it never waits
+ * for the pool that committing transactions are still holding connections of.
+ */
+public class Replicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(Replicator.class);
+
+    /**
+     * Log entries applied per round trip.
+     */
+    private static final int BATCH = 1000;
+
+    private final ReplicaRoutingDataSource dataSource;
+    private final HikariDataSource source;
+    private final long pollIntervalMillis;
+    private final LongAdder rows = new LongAdder();
+    private volatile boolean running = true;
+    private Thread poller;
+
+    /**
+     * @param dataSource          The primary and replicas
+     * @param source              A pool of its own on the primary, for reading the log
+     * @param pollIntervalMillis  How often to look for changes made outside a transaction
+     */
+    public Replicator(ReplicaRoutingDataSource dataSource, HikariDataSource source, long pollIntervalMillis) {
+        this.dataSource = dataSource;
+        this.source = source;
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * Copies the primary to every replica once the schema and sample rows are in
+     * place, before anything else reads from the database at startup, and then
+     * starts replicating.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void start() throws SQLException {
+        copyAll();
+        replicate();
+        dataSource.markReplicasReady();
+        dataSource.onWriteCommitted(this::replicate);
+        poller = new Thread(this::pollLoop, "replicator");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    /**
+     * Brings every replica up to date with the changes logged so far. Failures
+     * are logged and the changes stay in the log to be applied by a later call.
+     */
+    public synchronized void replicate() {
+        try (Connection primary = source.getConnection()) {
+            while (applyBatch(primary) == BATCH) {
+                // A full batch means there may be more
+            }
+        } catch (SQLException ex) {
+            logger.warn("Could not replicate to the read replicas, will retry", ex);
+        }
+    }
+
+    /**
+     * @return The number of rows copied to the replicas since startup
+     */
+    public long rowCount() {
+        return rows.sum();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (poller != null) {
+            poller.interrupt();
+            poller.join();
+        }
+        source.close();
+    }
+
+    private void pollLoop() {
+        while (running) {
+            try {
+                Thread.sleep(pollIntervalMillis);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            replicate();
+        }
+    }
+
+    /**
+     * Applies up to {@value #BATCH} log entries to every replica.
+     *
+     * @return The number of log entries read
+     */
+    private int applyBatch(Connection primary) throws SQLException {
+        List<Long> seqs = new ArrayList<>();
+        // The latest version of each logged row, null once it has been deleted
+        Map<List<Object>, Object[]> changes = new LinkedHashMap<>();
+        try (PreparedStatement log = primary.prepareStatement(
+                "select seq, tableName, key1, key2 from replication_log order by seq limit " + BATCH);
+                ResultSet resultSet = log.executeQuery()) {
+            while (resultSet.next()) {
+                seqs.add(resultSet.getLong(1));
+                ReplicatedTable table = ReplicatedTable.of(resultSet.getString(2));
+                changes.put(Arrays.asList(table, resultSet.getObject(3), resultSet.getObject(4)), null);
+            }
+        }
+        if (seqs.isEmpty()) {
+            return 0;
+        }
+        for (Map.Entry<List<Object>, Object[]> change : changes.entrySet()) {
+            change.setValue(read(primary, change.getKey()));
+        }
+        for (HikariDataSource replica : dataSource.getReplicas()) {
+            apply(replica, changes);
+        }
+        try (PreparedStatement delete = primary.prepareStatement("delete from replication_log where seq = ?")) {
+            for (long seq : seqs) {
+                delete.setLong(1, seq);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+        rows.add(changes.size());
+        return seqs.size();
+    }
+
+    private Object[] read(Connection primary, List<Object> key) throws SQLException {
+        ReplicatedTable table = (ReplicatedTable) key.get(0);
+        try (PreparedStatement select = primary.prepareStatement(table.selectByKey())) {
+            setKey(select, key);
+            try (ResultSet resultSet = select.executeQuery()) {
+                return resultSet.next() ? row(resultSet, table) : null;
+            }
+        }
+    }
+
+    private void apply(HikariDataSource replica, Map<List<Object>, Object[]> changes) throws SQLException {
+        try (Connection connection = replica.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (Map.Entry<List<Object>, Object[]> change : changes.entrySet()) {
+                    ReplicatedTable table = (ReplicatedTable) change.getKey().get(0);
+                    try (PreparedStatement delete = connection.prepareStatement(table.deleteByKey())) {
+                        setKey(delete, change.getKey());
+                        delete.executeUpdate();
+                    }
+                    if (change.getValue() != null) {
+                        insert(connection, table, List.<Object[]>of(change.getValue()));
+                    }
+                }
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of every replica with the rows of the primary.
+     */
+    private void copyAll() throws SQLException {
+        for (HikariDataSource replica : dataSource.getReplicas()) {
+            try (Connection primary = source.getConnection(); Connection connection = replica.getConnection()) {
+                connection.setAutoCommit(false);
+                for (ReplicatedTable table : ReplicatedTable.values()) {
+                    try (PreparedStatement delete = connection.prepareStatement("delete from " + table.tableName())) {
+                        delete.executeUpdate();
+                    }
+                    try (PreparedStatement select = primary.prepareStatement(table.selectAll());
+                            ResultSet resultSet = select.executeQuery()) {
+                        List<Object[]> batch = new ArrayList<>(BATCH);
+                        while (resultSet.next()) {
+                            batch.add(row(resultSet, table));
+                            if (batch.size() == BATCH) {
+                                insert(connection, table, batch);
+                                batch.clear();
+                            }
+                        }
+                        insert(connection, table, batch);
+                    }
+                }
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void insert(Connection connection, ReplicatedTable table, List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement insert = connection.prepareStatement(table.insert())) {
+            for (Object[] row : rows) {
+                for (int column = 0; column < row.length; column++) {
+                    insert.setObject(column + 1, row[column]);
+                }
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private static void setKey(PreparedStatement statement, List<Object> key) throws SQLException {
+        ReplicatedTable table = (ReplicatedTable) key.get(0);
+        for (int column = 0; column < table.keyColumns(); column++) {
+            statement.setObject(column + 1, key.get(column + 1));
+        }
+    }
+
+    private static Object[] row(ResultSet resultSet, ReplicatedTable table) throws SQLException {
+        Object[] row = new Object[table.columnCount()];
+        for (int column = 0; column < row.length; column++) {
+            row[column] = resultSet.getObject(column + 1);
+        }
+        return row;
+    }
+}
@@ -1,16 +1,47 @@
 package com.example.repository;
 
+import java.util.Collection;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.entity.Account;
 
+/**
+ * Query methods run in read-only transactions, like those of {@link MessageRepository}.
+ */
 @Repository
+@Transactional(readOnly = true)
 public interface AccountRepository extends JpaRepository<Account, Integer> {
 
+    /**
+     * Results are kept in the query cache until the account table changes.
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     Optional<Account> findByUsername(String username);
 
-    Optional<Account> findByUsernameAndPassword(String username, String password);
+    /**
+     * Checks many account ids with a single IN query.
+     * 
+     * @return The subset of ids that belong to an existing account
+     */
+    @Query("select a.accountId from Account a where a.accountId in :ids")
+    Set<Integer> findExistingAccountIds(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Streams the id of every account. Must be consumed inside a transaction
+     * and closed afterwards.
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("select a.accountId from Account a")
+    Stream<Integer> streamAllAccountIds();
 }
@@ -0,0 +1,36 @@
+package com.example.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.entity.Follow;
+
+/**
+ * Query methods run in read-only transactions, like those of {@link MessageRepository}.
+ */
+@Repository
+@Transactional(readOnly = true)
+public interface FollowRepository extends JpaRepository<Follow, Follow.Key> {
+
+    /**
+     * The accounts followed by an account, read from the (followerId, followeeId) primary key.
+     */
+    @Query("select f.followeeId from Follow f where f.followerId = :followerId order by f.followeeId")
+    List<Integer> findFolloweeIds(@Param("followerId") int followerId);
+
+    /**
+     * Removes a follow in a single DELETE statement.
+     *
+     * @return The number of rows affected, 0 when the account was not following
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Follow f where f.followerId = :followerId and f.followeeId = :followeeId")
+    int deleteFollow(@Param("followerId") int followerId, @Param("followeeId") int followeeId);
+}
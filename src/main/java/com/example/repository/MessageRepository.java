@@ -1,14 +1,101 @@
 package com.example.repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.entity.Message;
 
+/**
+ * Query methods run in read-only transactions, so that with read replicas they
+ * are served by a replica (see ReplicaRoutingDataSource); methods that change
+ * rows declare a read-write transaction of their own. Updates and deletes are
+ * in {@link MessageRepositoryCustom}.
+ */
 @Repository
-public interface MessageRepository extends JpaRepository<Message, Integer> {
+@Transactional(readOnly = true)
+public interface MessageRepository extends JpaRepository<Message, Integer>, MessageRepositoryCustom {
+
+    /**
+     * Number of rows the JDBC driver fetches per round trip when streaming.
+     */
+    String STREAM_FETCH_SIZE = "500";
     
+    /**
+     * Results are kept in the query cache until the message table changes.
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     List<Message> findAllByPostedBy(int postedBy);
+
+    /**
+     * Keyset query over the messageId primary key. Only the page size in
+     * the {@link Pageable} is used, so no count query is issued.
+     */
+    List<Message> findByMessageIdGreaterThanOrderByMessageIdAsc(int messageId, Pageable pageable);
+
+    /**
+     * First page of an account's messages, newest first. Served by the
+     * (postedBy, timePostedEpoch, messageId) index.
+     */
+    List<Message> findByPostedByOrderByTimePostedEpochDescMessageIdDesc(int postedBy, Pageable pageable);
+
+    /**
+     * Following pages of an account's messages, newest first, starting after the
+     * (timePostedEpoch, messageId) of the last message of the previous page. The
+     * extra timePostedEpoch bound lets the database seek straight to the page in
+     * the (postedBy, timePostedEpoch, messageId) index.
+     */
+    @Query("select m from Message m where m.postedBy = :postedBy and m.timePostedEpoch <= :timePostedEpoch"
+            + " and (m.timePostedEpoch < :timePostedEpoch or m.messageId < :messageId)"
+            + " order by m.timePostedEpoch desc, m.messageId desc")
+    List<Message> findByPostedByBefore(@Param("postedBy") int postedBy,
+            @Param("timePostedEpoch") long timePostedEpoch, @Param("messageId") int messageId, Pageable pageable);
+
+    /**
+     * The newest messages of several accounts, newest first. Used in place of
+     * {@link #findNewestFollowedBy(int, Pageable)} on shards other than the one
+     * holding the follows.
+     */
+    List<Message> findByPostedByInOrderByTimePostedEpochDescMessageIdDesc(Collection<Integer> postedBy,
+            Pageable pageable);
+
+    /**
+     * The newest messages of every account an account follows. Only used to
+     * build a home timeline the first time it is read; after that it is kept
+     * up to date in memory.
+     */
+    @Query("select m from Message m where m.postedBy in"
+            + " (select f.followeeId from Follow f where f.followerId = :followerId)"
+            + " order by m.timePostedEpoch desc, m.messageId desc")
+    List<Message> findNewestFollowedBy(@Param("followerId") int followerId, Pageable pageable);
+
+    /**
+     * Streams every message ordered by messageId. Must be consumed inside a
+     * transaction and closed afterwards.
+     */
+    @QueryHints({
+        @QueryHint(name = "org.hibernate.fetchSize", value = STREAM_FETCH_SIZE),
+        @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    Stream<Message> streamAllByOrderByMessageIdAsc();
+
+    /**
+     * Streams every message posted by an account ordered by messageId. Must be
+     * consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints({
+        @QueryHint(name = "org.hibernate.fetchSize", value = STREAM_FETCH_SIZE),
+        @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    Stream<Message> streamAllByPostedByOrderByMessageIdAsc(int postedBy);
 }
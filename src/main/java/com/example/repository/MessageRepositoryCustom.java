@@ -0,0 +1,29 @@
+package com.example.repository;
+
+import java.util.List;
+
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Changes to messages that also return the author of every row they change,
+ * read by the same statement from H2's data change delta tables, so that no
+ * SELECT is needed to know whose messages changed.
+ */
+public interface MessageRepositoryCustom {
+
+    /**
+     * Replaces the text of a message in a single UPDATE statement.
+     *
+     * @return The postedBy of each message changed, empty when the message does not exist
+     */
+    @Transactional
+    List<Integer> updateMessageTextById(int messageId, String messageText);
+
+    /**
+     * Deletes a message in a single DELETE statement.
+     *
+     * @return The postedBy of each message deleted, empty when the message does not exist
+     */
+    @Transactional
+    List<Integer> deleteMessageById(int messageId);
+}
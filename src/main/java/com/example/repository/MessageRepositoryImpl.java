@@ -0,0 +1,66 @@
+package com.example.repository;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.entity.Message;
+
+/**
+ * The statements of {@link MessageRepositoryCustom}. Hibernate does not see a
+ * change made by a native query, so they clean up after themselves as its own
+ * bulk UPDATE and DELETE do: cached results of queries over the message table
+ * stop being served as the statement runs, and the changed message and those
+ * results are dropped from the caches once the transaction has completed.
+ */
+class MessageRepositoryImpl implements MessageRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public List<Integer> updateMessageTextById(int messageId, String messageText) {
+        return changeReturningPostedBy(messageId, entityManager.createNativeQuery(
+                "select postedBy from final table (update message set messageText = ?1 where messageId = ?2)")
+                .setParameter(1, messageText)
+                .setParameter(2, messageId));
+    }
+
+    @Override
+    @Transactional
+    public List<Integer> deleteMessageById(int messageId) {
+        return changeReturningPostedBy(messageId, entityManager.createNativeQuery(
+                "select postedBy from old table (delete from message where messageId = ?1)")
+                .setParameter(1, messageId));
+    }
+
+    private List<Integer> changeReturningPostedBy(int messageId, Query statement) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        SessionFactoryImplementor factory = session.getFactory();
+        Serializable[] querySpaces = factory.getMetamodel().entityPersister(Message.class).getQuerySpaces();
+        boolean queryCache = factory.getSessionFactoryOptions().isQueryCacheEnabled();
+        if (queryCache) {
+            factory.getCache().getTimestampsCache().preInvalidate(querySpaces, session);
+        }
+        List<Integer> postedBy = new ArrayList<>();
+        for (Object row : statement.getResultList()) {
+            postedBy.add(row == null ? null : ((Number) row).intValue());
+        }
+        session.getActionQueue().registerProcess((success, completed) -> {
+            factory.getCache().evictEntityData(Message.class, messageId);
+            if (queryCache) {
+                factory.getCache().getTimestampsCache().invalidate(querySpaces, completed);
+            }
+        });
+        return postedBy;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.repository;
+
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+
+import com.example.entity.Message;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * R2DBC access to the message table for the reactive stack. Only created when
+ * the {@code reactive} profile is active. Queries are written out in SQL so
+ * they use the same columns and index as {@link MessageRepository}.
+ */
+@Repository
+public interface ReactiveMessageRepository extends ReactiveCrudRepository<Message, Integer> {
+
+    @Query("select * from message order by messageId")
+    Flux<Message> findAllOrderByMessageId();
+
+    @Query("select * from message where messageId > :messageId order by messageId limit :limit")
+    Flux<Message> findPageAfter(@Param("messageId") int messageId, @Param("limit") int limit);
+
+    @Query("select * from message where postedBy = :postedBy order by messageId")
+    Flux<Message> findAllByPostedBy(@Param("postedBy") int postedBy);
+
+    @Query("select * from message where postedBy = :postedBy"
+            + " order by timePostedEpoch desc, messageId desc limit :limit")
+    Flux<Message> findFirstPageByPostedBy(@Param("postedBy") int postedBy, @Param("limit") int limit);
+
+    @Query("select * from message where postedBy = :postedBy and timePostedEpoch <= :timePostedEpoch"
+            + " and (timePostedEpoch < :timePostedEpoch or messageId < :messageId)"
+            + " order by timePostedEpoch desc, messageId desc limit :limit")
+    Flux<Message> findPageByPostedByBefore(@Param("postedBy") int postedBy,
+            @Param("timePostedEpoch") long timePostedEpoch, @Param("messageId") int messageId,
+            @Param("limit") int limit);
+}
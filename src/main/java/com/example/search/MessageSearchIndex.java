@@ -0,0 +1,367 @@
+package com.example.search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.dto.SearchHit;
+import com.example.entity.Message;
+
+/**
+ * A Lucene inverted index over messageText, so searching never scans the
+ * message table. The index lives in memory, or in {@code app.search.directory}
+ * when that is set. Each document stores the whole message, so results need
+ * no database reads.
+ * <p>
+ * An index in a directory records in its last commit whether it was closed
+ * cleanly. Only then can it be reused at the next start instead of being rebuilt
+ * from the database, as writes since its last commit would otherwise be missing.
+ * <p>
+ * Writes are visible to searches after at most
+ * {@code app.search.refresh-interval-ms}, like a near-real-time search engine,
+ * instead of reopening the index on every write.
+ * <p>
+ * Writes to one message are serialized by a lock striped on its messageId, as
+ * an update reads the stored fields back before writing them again. Messages
+ * deleted since the last refresh are remembered, since the searcher an update
+ * reads from may still hold them, so an update never brings one back.
+ */
+@Component
+public class MessageSearchIndex {
+
+    private static final String ID = "id";
+    private static final String MESSAGE_ID = "messageId";
+    private static final String POSTED_BY = "postedBy";
+    private static final String MESSAGE_TEXT = "messageText";
+    private static final String TIME_POSTED_EPOCH = "timePostedEpoch";
+    private static final String CLOSED_CLEANLY = "closedCleanly";
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * Best match first, newest first among equal scores.
+     */
+    private static final Sort RANKING = new Sort(SortField.FIELD_SCORE,
+            new SortField(MESSAGE_ID, SortField.Type.INT, true));
+
+    private final Directory directory;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    /**
+     * messageIds deleted since the searcher was last refreshed.
+     */
+    private final Set<Integer> deleted = ConcurrentHashMap.newKeySet();
+    private volatile boolean reusable;
+
+    @Autowired
+    public MessageSearchIndex(@Value("${app.search.directory:}") String directory,
+            @Value("${app.search.refresh-interval-ms:1000}") long refreshIntervalMillis) {
+        try {
+            this.directory = directory.isBlank() ? new ByteBuffersDirectory() : FSDirectory.open(Paths.get(directory));
+            this.writer = new IndexWriter(this.directory, new IndexWriterConfig(analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+            boolean closedCleanly = false;
+            if (writer.getLiveCommitData() != null) {
+                for (Map.Entry<String, String> entry : writer.getLiveCommitData()) {
+                    closedCleanly |= entry.getKey().equals(CLOSED_CLEANLY) && entry.getValue().equals("true");
+                }
+            }
+            this.reusable = closedCleanly;
+            // Until close() says otherwise, a crash leaves an index that must be rebuilt
+            writer.setLiveCommitData(Map.of(CLOSED_CLEANLY, "false").entrySet());
+            writer.commit();
+            this.searcherManager = new SearcherManager(writer, null);
+            searcherManager.addListener(new ReferenceManager.RefreshListener() {
+                private Set<Integer> refreshed = Set.of();
+
+                @Override
+                public void beforeRefresh() {
+                    refreshed = Set.copyOf(deleted);
+                }
+
+                @Override
+                public void afterRefresh(boolean didRefresh) {
+                    // The new searcher no longer holds what was deleted before the refresh began
+                    deleted.removeAll(refreshed);
+                }
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        double refreshSeconds = refreshIntervalMillis / 1000.0;
+        this.reopenThread = new ControlledRealTimeReopenThread<>(writer, searcherManager, refreshSeconds, refreshSeconds);
+        reopenThread.setName("search-index-refresh");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+    }
+
+    /**
+     * Adds a message to the index, replacing any earlier version of it.
+     *
+     * @param message
+     */
+    public void index(Message message) {
+        synchronized (lock(message.getMessageId())) {
+            try {
+                writer.updateDocument(idTerm(message.getMessageId()), document(message));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            deleted.remove(message.getMessageId());
+        }
+    }
+
+    /**
+     * Adds many messages to the index, replacing any earlier versions of them.
+     *
+     * @param messages
+     */
+    public void indexAll(Collection<Message> messages) {
+        for (Message message : messages) {
+            index(message);
+        }
+    }
+
+    /**
+     * Replaces the text of an indexed message, keeping the fields stored with it,
+     * so an update is indexed without reading the message back from the database.
+     * Does nothing for a message that is not in the index or has been deleted from it.
+     *
+     * @param messageId
+     * @param messageText  The new text
+     */
+    public void update(int messageId, String messageText) {
+        synchronized (lock(messageId)) {
+            if (deleted.contains(messageId)) {
+                return;
+            }
+            find(messageId).ifPresent(message -> {
+                message.setMessageText(messageText);
+                index(message);
+            });
+        }
+    }
+
+    /**
+     * Finds a message by its messageId from the fields stored in the index. A
+     * message written since the last refresh is found by refreshing early.
+     *
+     * @param messageId
+     * @return The message if it is in the index
+     */
+    public Optional<Message> find(int messageId) {
+        try {
+            Optional<Message> found = findVisible(messageId);
+            if (found.isEmpty() && !searcherManager.isSearcherCurrent()) {
+                searcherManager.maybeRefreshBlocking();
+                found = findVisible(messageId);
+            }
+            return found;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Removes a message from the index.
+     *
+     * @param messageId
+     */
+    public void delete(int messageId) {
+        synchronized (lock(messageId)) {
+            try {
+                writer.deleteDocuments(idTerm(messageId));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            deleted.add(messageId);
+        }
+    }
+
+    /**
+     * Tells whether the index left by the previous run can be used as it is:
+     * it was closed cleanly and still holds as many messages as the database.
+     *
+     * @param messageCount  The number of messages in the database
+     * @return true if the index does not need to be rebuilt
+     */
+    public boolean isReusable(long messageCount) {
+        return reusable && documentCount() == messageCount;
+    }
+
+    /**
+     * Removes every message from the index.
+     */
+    public void clear() {
+        reusable = false;
+        try {
+            writer.deleteAll();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Makes every write so far visible to searches, and on disk durable.
+     */
+    public void commit() {
+        try {
+            writer.commit();
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Finds the messages whose text matches a query, best match first. All
+     * words must match by default; the query may also use {@code "phrases"},
+     * {@code |} for or, {@code -} to exclude a word and {@code *} for a prefix.
+     *
+     * @param query           The query text
+     * @param afterScore      The score of the last hit of the previous page, or null for the first page
+     * @param afterMessageId  The messageId of the last hit of the previous page
+     * @param limit           The maximum number of hits to return
+     * @return At most limit hits
+     */
+    public List<SearchHit> search(String query, Float afterScore, int afterMessageId, int limit) {
+        SimpleQueryParser parser = new SimpleQueryParser(analyzer, MESSAGE_TEXT);
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        Query parsed = parser.parse(query);
+
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                // messageIds are unique, so the last doc id only serves to skip the previous page's last hit
+                TopDocs topDocs = afterScore == null
+                        ? searcher.search(parsed, limit, RANKING, true)
+                        : searcher.searchAfter(new FieldDoc(searcher.getIndexReader().maxDoc() - 1, afterScore,
+                                new Object[] { afterScore, afterMessageId }), parsed, limit, RANKING, true);
+                StoredFields storedFields = searcher.storedFields();
+                List<SearchHit> hits = new ArrayList<>(topDocs.scoreDocs.length);
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    hits.add(new SearchHit(message(storedFields.document(scoreDoc.doc)), scoreDoc.score));
+                }
+                return hits;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return The number of messages in the index, including writes not yet visible to searches
+     */
+    public int documentCount() {
+        return writer.getDocStats().numDocs;
+    }
+
+    /**
+     * Commits the index, marked as closed cleanly so the next start can reuse it.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        reopenThread.close();
+        searcherManager.close();
+        writer.setLiveCommitData(Map.of(CLOSED_CLEANLY, "true").entrySet());
+        writer.close();
+        directory.close();
+    }
+
+    private Optional<Message> findVisible(int messageId) throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(new TermQuery(idTerm(messageId)), 1);
+            if (topDocs.scoreDocs.length == 0) {
+                return Optional.empty();
+            }
+            return Optional.of(message(searcher.storedFields().document(topDocs.scoreDocs[0].doc)));
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private Object lock(int messageId) {
+        return locks[Math.floorMod(messageId, LOCK_STRIPES)];
+    }
+
+    private static Term idTerm(int messageId) {
+        return new Term(ID, Integer.toString(messageId));
+    }
+
+    private static Document document(Message message) {
+        Document document = new Document();
+        document.add(new StringField(ID, message.getMessageId().toString(), Field.Store.NO));
+        document.add(new NumericDocValuesField(MESSAGE_ID, message.getMessageId()));
+        document.add(new StoredField(MESSAGE_ID, message.getMessageId()));
+        if (message.getPostedBy() != null) {
+            document.add(new StoredField(POSTED_BY, message.getPostedBy()));
+        }
+        if (message.getTimePostedEpoch() != null) {
+            document.add(new StoredField(TIME_POSTED_EPOCH, message.getTimePostedEpoch()));
+        }
+        if (message.getMessageText() != null) {
+            document.add(new TextField(MESSAGE_TEXT, message.getMessageText(), Field.Store.YES));
+        }
+        return document;
+    }
+
+    private static Message message(Document document) {
+        Number postedBy = document.getField(POSTED_BY) == null ? null
+                : document.getField(POSTED_BY).numericValue();
+        Number timePostedEpoch = document.getField(TIME_POSTED_EPOCH) == null ? null
+                : document.getField(TIME_POSTED_EPOCH).numericValue();
+        return new Message(document.getField(MESSAGE_ID).numericValue().intValue(),
+                postedBy == null ? null : postedBy.intValue(),
+                document.get(MESSAGE_TEXT),
+                timePostedEpoch == null ? null : timePostedEpoch.longValue());
+    }
+}
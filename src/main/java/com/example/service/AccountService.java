@@ -1,40 +1,87 @@
 package com.example.service;
 
+import static com.example.config.MetricsConfig.SERVICE_TIMER;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.example.cache.AccountIdIndex;
 import com.example.entity.Account;
+import com.example.exception.CapacityExceededException;
 import com.example.exception.DuplicateUsernameException;
 import com.example.exception.RegistrationException;
 import com.example.repository.AccountRepository;
 
+import io.micrometer.core.annotation.Timed;
+
 @Service
 public class AccountService {
+
+    /**
+     * Upper bound on the number of ids sent in one IN list.
+     */
+    private static final int MAX_IN_LIST = 1000;
     
     private AccountRepository accountRepository;
+    private AccountIdIndex accountIdIndex;
+    private PasswordService passwordService;
 
     @Autowired
-    public AccountService(AccountRepository accountRepository) {
+    public AccountService(AccountRepository accountRepository, AccountIdIndex accountIdIndex,
+            PasswordService passwordService) {
         this.accountRepository = accountRepository;
+        this.accountIdIndex = accountIdIndex;
+        this.passwordService = passwordService;
+    }
+
+    /**
+     * Loads the id of every existing account into the {@link AccountIdIndex} once
+     * the application has started. Until this has finished, {@link #accountExists(int)}
+     * falls back to the database.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void loadAccountIdIndex() {
+        try (Stream<Integer> ids = accountRepository.streamAllAccountIds()) {
+            ids.forEach(accountIdIndex::add);
+        }
+        accountIdIndex.markLoaded();
     }
 
     /**
      * Attempts to create an account given an {@link Account} object using 
-     * the {@link AccountRepository}.
+     * the {@link AccountRepository}. The password is stored as a salted hash
+     * computed by the {@link PasswordService}.
      * 
      * @param account  The account to be created
-     * @return The account if created successfully
+     * @return The account if created successfully, carrying the password that was
+     *          submitted rather than the stored hash
      * @throws DuplicateUsernameException is thrown when the username already exists
      *          in the database
      * @throws RegistrationException is thrown when there is an error registering
+     * @throws CapacityExceededException is thrown when too many passwords are being hashed
      */
-    public Optional<Account> createAccount(Account account) throws DuplicateUsernameException, RegistrationException {
+    @Timed(SERVICE_TIMER)
+    public Optional<Account> createAccount(Account account)
+            throws DuplicateUsernameException, RegistrationException, CapacityExceededException {
 
         if(account.getPassword().length() >= 4) {
             if (accountRepository.findByUsername(account.getUsername()).isEmpty()) {
-                return Optional.of(accountRepository.save(account));
+                String hash = passwordService.hash(account.getPassword());
+                Account created = accountRepository.save(new Account(account.getUsername(), hash));
+                accountIdIndex.add(created.getAccountId());
+                return Optional.of(new Account(created.getAccountId(), created.getUsername(), account.getPassword()));
             } else {
                 throw new DuplicateUsernameException(account.getUsername() + " already exists");
             }
@@ -45,23 +92,74 @@ public class AccountService {
     }
 
     /**
-     * Searches for a matching pair of username and password using the
-     * {@link AccountRepository}
+     * Looks up an account by username using the {@link AccountRepository} and
+     * verifies the password against the stored hash with the {@link PasswordService}.
+     * Passwords still stored in plaintext are replaced with a hash on their first
+     * successful login.
      * 
      * @param account  The account to be logged in
-     * @return The account if login was successful
+     * @return The account if login was successful, carrying the password that was
+     *          submitted rather than the stored hash
+     * @throws CapacityExceededException is thrown when too many passwords are being checked
      */
-    public Optional<Account> login(Account account) {
-        return accountRepository.findByUsernameAndPassword(account.getUsername(), account.getPassword());
+    @Timed(SERVICE_TIMER)
+    public Optional<Account> login(Account account) throws CapacityExceededException {
+        Optional<Account> stored = accountRepository.findByUsername(account.getUsername());
+        String storedPassword = stored.map(Account::getPassword).orElse(null);
+
+        boolean passwordMatches = passwordService.matches(account.getPassword(), storedPassword);
+        if (stored.isEmpty() || !passwordMatches) {
+            return Optional.empty();
+        }
+
+        Account existing = stored.get();
+        if (passwordService.needsRehash(storedPassword)) {
+            existing.setPassword(passwordService.hash(account.getPassword()));
+            accountRepository.save(existing);
+        }
+        return Optional.of(new Account(existing.getAccountId(), existing.getUsername(), account.getPassword()));
     }
 
     /**
-     * Checks the database for whether an account exists using its id
+     * Checks whether an account exists using its id. Answered from the
+     * {@link AccountIdIndex} without a database read once the index is loaded;
+     * before that, an existence-only query is used.
      * 
      * @param id
      * @return True if the account exists, false otherwise
      */
+    @Timed(SERVICE_TIMER)
     public boolean accountExists(int id) {
-        return !accountRepository.findById(id).isEmpty();
+        if (accountIdIndex.contains(id)) {
+            return true;
+        }
+        if (accountIdIndex.isLoaded()) {
+            return false;
+        }
+        return accountRepository.existsById(id);
+    }
+
+    /**
+     * Checks the database for which of many account ids exist, using one
+     * IN query per {@value #MAX_IN_LIST} ids instead of one lookup per id
+     * 
+     * @param ids
+     * @return The ids that belong to an existing account
+     */
+    @Timed(SERVICE_TIMER)
+    public Set<Integer> existingAccountIds(Collection<Integer> ids) {
+        Set<Integer> existing = new HashSet<>();
+        List<Integer> chunk = new ArrayList<>(Math.min(ids.size(), MAX_IN_LIST));
+        for (Integer id : ids) {
+            chunk.add(id);
+            if (chunk.size() == MAX_IN_LIST) {
+                existing.addAll(accountRepository.findExistingAccountIds(chunk));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            existing.addAll(accountRepository.findExistingAccountIds(chunk));
+        }
+        return existing;
     }
 }
@@ -1,33 +1,159 @@
 package com.example.service;
 
+import static com.example.config.MetricsConfig.SERVICE_TIMER;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.example.cache.HomeTimelines;
+import com.example.cache.JsonResponseCache;
+import com.example.cache.MessageCache;
+import com.example.cache.MessageVersions;
 import com.example.entity.Message;
+import com.example.exception.CapacityExceededException;
 import com.example.exception.MessageNotFoundException;
 import com.example.repository.MessageRepository;
+import com.example.search.MessageSearchIndex;
+import com.example.shard.MessageShards;
+import com.example.store.InMemoryMessageStore;
+
+import io.micrometer.core.annotation.Timed;
 
 @Service
 public class MessageService {
 
+    /**
+     * Messages read from each shard per query when walking all of them in messageId order.
+     */
+    private static final int MERGE_PAGE_SIZE = 500;
+
+    private static final Comparator<Message> BY_MESSAGE_ID = Comparator.comparing(Message::getMessageId);
+
     private MessageRepository messageRepository;
+    private EntityManager entityManager;
+    private MessageCache messageCache;
+    private JsonResponseCache jsonCache;
+    private HomeTimelines homeTimelines;
+    private MessageSearchIndex messageSearchIndex;
+    private MessageWriteBehind messageWriteBehind;
+    private MessageVersions messageVersions;
+    private MessageShards shards;
+    private InMemoryMessageStore memoryStore;
+    private TransactionTemplate transactionTemplate;
+    private TransactionTemplate readOnlyTransactionTemplate;
+    private int batchSize;
 
     @Autowired
-    public MessageService(MessageRepository messageRepository) {
+    public MessageService(MessageRepository messageRepository, EntityManager entityManager,
+            MessageCache messageCache, JsonResponseCache jsonCache, HomeTimelines homeTimelines,
+            MessageSearchIndex messageSearchIndex, MessageWriteBehind messageWriteBehind, MessageVersions messageVersions, MessageShards shards,
+            InMemoryMessageStore memoryStore, PlatformTransactionManager transactionManager,
+            @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
         this.messageRepository = messageRepository;
+        this.entityManager = entityManager;
+        this.messageCache = messageCache;
+        this.jsonCache = jsonCache;
+        this.homeTimelines = homeTimelines;
+        this.messageSearchIndex = messageSearchIndex;
+        this.messageWriteBehind = messageWriteBehind;
+        this.messageVersions = messageVersions;
+        this.shards = shards;
+        this.memoryStore = memoryStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.batchSize = batchSize;
+        messageWriteBehind.onFailure(messages -> messages.forEach(
+                message -> messageDeleted(message.getMessageId(), message.getPostedBy())));
     }
 
     /**
-     * Creates a message using {@link MessageRepository}
+     * Creates a message using {@link MessageRepository}, pushes it into the
+     * home timeline of every follower of its author, indexes it for search and
+     * records the change in its author's {@link MessageVersions} stamp, then
+     * drops the author's pages from the {@link JsonResponseCache}. The message
+     * is written to its author's shard, or to the {@link InMemoryMessageStore}
+     * when that is the engine. With write-behind enabled the message is handed to {@link MessageWriteBehind}
+     * instead, and returned before it has been written.
      * 
      * @param message  The message to be created
      * @return The message if successful
+     * @throws CapacityExceededException is thrown when too many messages are
+     *          waiting to be written behind
+     */
+    @Timed(SERVICE_TIMER)
+    public Message createMessage(Message message) throws CapacityExceededException {
+        Message created = memoryStore.isEnabled() ? memoryStore.save(message)
+                : messageWriteBehind.isEnabled() ? messageWriteBehind.submit(message)
+                : shards.on(shards.shardOf(message.getPostedBy()), () -> messageRepository.save(message));
+        homeTimelines.add(created);
+        messageSearchIndex.index(created);
+        messageVersions.messageCreated(created.getPostedBy());
+        jsonCache.invalidateAccount(created.getPostedBy());
+        return created;
+    }
+
+    /**
+     * Creates many messages in one transaction per shard. The persistence context is
+     * flushed and cleared every JDBC batch, so Hibernate sends the inserts as
+     * batches and memory use stays bounded however many messages there are.
+     * The messages must already have been validated. They are pushed into their
+     * followers' home timelines, indexed for search and stamped in {@link MessageVersions}
+     * once every transaction has committed. With several shards, the shards written
+     * before one that fails keep their messages. The {@link InMemoryMessageStore}
+     * stores copies of the messages and returns those.
+     * 
+     * @param messages  The messages to be created
+     * @return The messages with their messageIds, in the same order
      */
-    public Message createMessage(Message message){
-        return messageRepository.save(message);
+    @Timed(SERVICE_TIMER)
+    public List<Message> createMessages(List<Message> messages) {
+        List<Message> created = memoryStore.isEnabled() ? memoryStore.saveAll(messages) : persistAllSharded(messages);
+        homeTimelines.addAll(created);
+        messageSearchIndex.indexAll(created);
+        for (Message message : created) {
+            messageVersions.messageCreated(message.getPostedBy());
+            jsonCache.invalidateAccount(message.getPostedBy());
+        }
+        return created;
+    }
+
+    /**
+     * Persists the messages in one transaction per shard, giving them their messageIds.
+     */
+    private List<Message> persistAllSharded(List<Message> messages) {
+        List<List<Message>> byShard = new ArrayList<>(shards.count());
+        for (int shard = 0; shard < shards.count(); shard++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Message message : messages) {
+            byShard.get(shards.shardOf(message.getPostedBy())).add(message);
+        }
+        for (int shard = 0; shard < shards.count(); shard++) {
+            List<Message> shardMessages = byShard.get(shard);
+            if (!shardMessages.isEmpty()) {
+                shards.on(shard, () -> transactionTemplate.execute(status -> persistAll(shardMessages)));
+            }
+        }
+        return messages;
     }
 
     /**
@@ -35,41 +161,192 @@ public class MessageService {
      * 
      * @return A list of all messages
      */
+    @Timed(SERVICE_TIMER)
     public List<Message> getAllMessages() {
-        return messageRepository.findAll();
+        if (memoryStore.isEnabled()) {
+            return memoryStore.findAll();
+        }
+        if (!shards.isSharded()) {
+            return messageRepository.findAll();
+        }
+        return shards.onEach(shard -> messageRepository.findAll()).stream()
+                .flatMap(List::stream)
+                .sorted(BY_MESSAGE_ID)
+                .collect(Collectors.toList());
     }
 
     /**
-     * Gets a message by its messageId using {@link MessageRepository}
+     * Counts all messages using {@link MessageRepository}
+     * 
+     * @return The number of messages
+     */
+    @Timed(SERVICE_TIMER)
+    public long countMessages() {
+        if (memoryStore.isEnabled()) {
+            return memoryStore.count();
+        }
+        return shards.onEach(shard -> messageRepository.count()).stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Streams all messages ordered by messageId to a consumer using {@link MessageRepository}.
+     * Each message is detached from the persistence context once it has been read,
+     * so memory use does not grow with the size of the table. With several shards,
+     * their messages are merged a page per shard at a time.
+     * 
+     * @param consumer  Receives each message as it is read
+     */
+    @Timed(SERVICE_TIMER)
+    public void streamAllMessages(Consumer<Message> consumer) {
+        if (memoryStore.isEnabled()) {
+            memoryStore.forEach(consumer);
+            return;
+        }
+        if (shards.isSharded()) {
+            forEachMerged(consumer);
+            return;
+        }
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Message> messages = messageRepository.streamAllByOrderByMessageIdAsc()) {
+                forEachDetached(messages, consumer);
+            }
+        });
+    }
+
+    /**
+     * Gets one page of messages ordered by messageId using {@link MessageRepository}.
+     * Only messages with a messageId greater than afterId are returned, so
+     * the cost of a page does not depend on how deep into the table it is.
+     * 
+     * @param afterId  The last messageId of the previous page, or 0 for the first page
+     * @param limit    The maximum number of messages to return
+     * @return A list of at most limit messages
+     */
+    @Timed(SERVICE_TIMER)
+    public List<Message> getMessagesAfter(int afterId, int limit) {
+        if (memoryStore.isEnabled()) {
+            return memoryStore.findByMessageIdGreaterThan(afterId, limit);
+        }
+        if (!shards.isSharded()) {
+            return messageRepository.findByMessageIdGreaterThanOrderByMessageIdAsc(afterId, PageRequest.of(0, limit));
+        }
+        return shards.onEach(shard -> messageRepository.findByMessageIdGreaterThanOrderByMessageIdAsc(afterId,
+                        PageRequest.of(0, limit))).stream()
+                .flatMap(List::stream)
+                .sorted(BY_MESSAGE_ID)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets a message by its messageId through the {@link MessageCache}, falling
+     * back to {@link MessageRepository} on a miss. A message still waiting to be
+     * written behind is returned from memory. Only the shard named by the messageId is read.
+     * The {@link InMemoryMessageStore} is read directly, as it is a cache in itself.
      * 
      * @param id
      * @return The message if it exists
      */
+    @Timed(SERVICE_TIMER)
     public Optional<Message> getMessage(int id) {
-        return messageRepository.findById(id);
+        if (memoryStore.isEnabled()) {
+            return memoryStore.findById(id);
+        }
+        Optional<Message> unflushed = messageWriteBehind.findUnflushed(id);
+        if (unflushed.isPresent()) {
+            return unflushed;
+        }
+        return messageCache.get(id, this::findById);
+    }
+
+    /**
+     * @return Whether {@link #getMessageJson(int)} serves messages from the off-heap
+     *          {@link MessageCache}, rather than getMessage being the faster read
+     */
+    public boolean isMessageJsonCached() {
+        return messageCache.getPolicy() == MessageCache.Policy.OFFHEAP && !memoryStore.isEnabled();
+    }
+
+    /**
+     * Gets a message by its messageId as the JSON of its response body, through the
+     * {@link MessageCache} like {@link #getMessage(int)} but without building the
+     * message on a hit.
+     * 
+     * @param id
+     * @return The message as JSON if it exists
+     */
+    @Timed(SERVICE_TIMER)
+    public Optional<byte[]> getMessageJson(int id) {
+        Optional<Message> unflushed = messageWriteBehind.findUnflushed(id);
+        if (unflushed.isPresent()) {
+            return unflushed.map(MessageCache::toJson);
+        }
+        return messageCache.getJson(id, this::findById);
+    }
+
+    /**
+     * @param id
+     * @return The messages of an account that are still waiting to be written behind
+     */
+    public List<Message> findUnflushedByUser(int id) {
+        return messageWriteBehind.findUnflushedBy(id);
+    }
+
+    /**
+     * @param id
+     * @return The {@link MessageVersions} stamp of a message, to be read before the message itself
+     */
+    public long getMessageStamp(int id) {
+        return messageVersions.messageStamp(id);
+    }
+
+    /**
+     * @param id
+     * @return The {@link MessageVersions} stamp of an account's messages, to be read before the messages
+     */
+    public long getAccountStamp(int id) {
+        return messageVersions.accountStamp(id);
     }
 
     /**
-     * Deletes a message by its messageId using {@link MessageRepository}
+     * Deletes a message by its messageId using {@link MessageRepository}.
+     * Runs a single DELETE, which also returns the author whose stamp changes,
+     * and reports a missing message from its row count.
+     * The message is also taken out of every home timeline and the search index, and
+     * once it is known to have existed, the change is recorded in {@link MessageVersions}
+     * and dropped from the {@link JsonResponseCache}.
      * 
      * @param id
      * @return The number of rows affected if successful
      * @throws MessageNotFoundException is thrown when the messageId 
      *          does not exist in the database
      */
+    @Timed(SERVICE_TIMER)
     public int deleteMessage(int id) throws MessageNotFoundException {
-        Optional<Message> message = messageRepository.findById(id);
-        if (message.isEmpty()) {
+        messageWriteBehind.awaitFlushed(id);
+        List<Integer> deleted = memoryStore.isEnabled() ? memoryStore.deleteMessageById(id)
+                : shards.on(shards.shardOfMessage(id), () -> messageRepository.deleteMessageById(id));
+        int rowsAffected = deleted.size();
+        Integer postedBy = rowsAffected == 0 ? null : deleted.get(0);
+        messageCache.invalidate(id);
+        homeTimelines.remove(id);
+        messageSearchIndex.delete(id);
+        if (rowsAffected == 0) {
             throw new MessageNotFoundException(String.format("The messageId %d cannot be found", id));
-        } else {
-            messageRepository.delete(message.get());
-            return 1;
         }
+        messageVersions.messageChanged(id, postedBy);
+        invalidateJson(id, postedBy);
+        return rowsAffected;
     }
 
     /**
      * Updates a message with new messageText by its messageId 
-     * using {@link MessageRepository}
+     * using {@link MessageRepository}.
+     * Runs a single UPDATE, which also returns the author whose stamp changes,
+     * and reports a missing message from its row count.
+     * The new text also replaces the old one in every home timeline and in the search index, which keeps
+     * the other fields it stored instead of reading the message back,
+     * and the change is recorded in {@link MessageVersions} and dropped from the {@link JsonResponseCache}.
      * 
      * @param id
      * @param newText
@@ -77,25 +354,194 @@ public class MessageService {
      * @throws MessageNotFoundException is thrown when the messageId 
      *          does not exist in the database
      */
+    @Timed(SERVICE_TIMER)
     public int updateMessage(int id, String newText) throws MessageNotFoundException {
-        Optional<Message> message = messageRepository.findById(id);
-        if (message.isEmpty()) {
+        messageWriteBehind.awaitFlushed(id);
+        List<Integer> updated = memoryStore.isEnabled() ? memoryStore.updateMessageTextById(id, newText)
+                : shards.on(shards.shardOfMessage(id), () -> messageRepository.updateMessageTextById(id, newText));
+        int rowsAffected = updated.size();
+        Integer postedBy = rowsAffected == 0 ? null : updated.get(0);
+        messageCache.invalidate(id);
+        homeTimelines.update(id, newText);
+        if (rowsAffected == 0) {
             throw new MessageNotFoundException(String.format("The messageId %d cannot be found", id));
-        } else {
-            message.get().setMessageText(newText);
-            messageRepository.save(message.get());
-            return 1;
         }
+        messageSearchIndex.update(id, newText);
+        messageVersions.messageChanged(id, postedBy);
+        invalidateJson(id, postedBy);
+        return rowsAffected;
+    }
+
+    /**
+     * Brings the caches, home timelines, search index and {@link MessageVersions}
+     * in line with a message that was deleted without going through JPA.
+     * 
+     * @param id
+     * @param postedBy  The account that posted the message, or null when it is not known
+     */
+    @Timed(SERVICE_TIMER)
+    public void messageDeleted(int id, Integer postedBy) {
+        evictCachedMessage(id);
+        homeTimelines.remove(id);
+        messageSearchIndex.delete(id);
+        messageVersions.messageChanged(id, postedBy);
+        invalidateJson(id, postedBy);
     }
 
     /**
      * Retrieves all messages for a account specified by its id using
-     * {@link MessageRepository}
+     * {@link MessageRepository}, followed by those still waiting to be written behind
      * 
      * @param id
      * @return A list of all messages posted by the user
      */
+    @Timed(SERVICE_TIMER)
     public List<Message> findAllByUser(int id) {
-        return messageRepository.findAllByPostedBy(id);
+        if (memoryStore.isEnabled()) {
+            return memoryStore.findAllByPostedBy(id);
+        }
+        // Taken before the query, so a message flushed in between is found in the database instead
+        List<Message> unflushed = messageWriteBehind.findUnflushedBy(id);
+        List<Message> messages = shards.on(shards.shardOf(id), () -> messageRepository.findAllByPostedBy(id));
+        if (unflushed.isEmpty()) {
+            return messages;
+        }
+        List<Message> all = new ArrayList<>(messages);
+        Set<Integer> ids = new HashSet<>();
+        for (Message message : messages) {
+            ids.add(message.getMessageId());
+        }
+        for (Message message : unflushed) {
+            if (ids.add(message.getMessageId())) {
+                all.add(message);
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Retrieves one page of messages for an account specified by its id,
+     * newest first, using {@link MessageRepository}. Pages are chained on
+     * (timePostedEpoch, messageId) so each one is a bounded index range read.
+     * 
+     * @param id
+     * @param beforeTimePostedEpoch  The timePostedEpoch of the last message of the previous page,
+     *          or null for the first page
+     * @param beforeMessageId        The messageId of the last message of the previous page
+     * @param limit                  The maximum number of messages to return
+     * @return A list of at most limit messages posted by the user
+     */
+    @Timed(SERVICE_TIMER)
+    public List<Message> findPageByUser(int id, Long beforeTimePostedEpoch, int beforeMessageId, int limit) {
+        if (memoryStore.isEnabled()) {
+            return memoryStore.findByPostedBy(id, beforeTimePostedEpoch, beforeMessageId, limit);
+        }
+        PageRequest page = PageRequest.of(0, limit);
+        return shards.on(shards.shardOf(id), () -> beforeTimePostedEpoch == null
+                ? messageRepository.findByPostedByOrderByTimePostedEpochDescMessageIdDesc(id, page)
+                : messageRepository.findByPostedByBefore(id, beforeTimePostedEpoch, beforeMessageId, page));
+    }
+
+    /**
+     * Streams all messages for an account specified by its id to a consumer using
+     * {@link MessageRepository}. Each message is detached from the persistence
+     * context once it has been read.
+     * 
+     * @param id
+     * @param consumer  Receives each message as it is read
+     */
+    @Timed(SERVICE_TIMER)
+    public void streamAllByUser(int id, Consumer<Message> consumer) {
+        if (memoryStore.isEnabled()) {
+            memoryStore.forEachByPostedBy(id, consumer);
+            return;
+        }
+        shards.on(shards.shardOf(id), () -> readOnlyTransactionTemplate.execute(status -> {
+            try (Stream<Message> messages = messageRepository.streamAllByPostedByOrderByMessageIdAsc(id)) {
+                forEachDetached(messages, consumer);
+            }
+            return null;
+        }));
+    }
+
+
+    /**
+     * Drops the cached response bodies holding a message, once its change has been stamped.
+     */
+    private void invalidateJson(int id, Integer postedBy) {
+        jsonCache.invalidateMessage(id);
+        if (postedBy != null) {
+            jsonCache.invalidateAccount(postedBy);
+        }
+    }
+
+    /**
+     * Drops a message from the {@link MessageCache} and from Hibernate's second-level cache.
+     */
+    private void evictCachedMessage(int id) {
+        messageCache.invalidate(id);
+        entityManager.getEntityManagerFactory().getCache().evict(Message.class, id);
+    }
+
+    private Optional<Message> findById(int id) {
+        if (memoryStore.isEnabled()) {
+            return memoryStore.findById(id);
+        }
+        return shards.on(shards.shardOfMessage(id), () -> messageRepository.findById(id));
+    }
+
+    /**
+     * Persists the messages of one shard inside its transaction.
+     */
+    private List<Message> persistAll(List<Message> messages) {
+        int persisted = 0;
+        for (Message message : messages) {
+            entityManager.persist(message);
+            if (++persisted % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Walks the messages of every shard in messageId order, holding one keyset
+     * page per shard and reading a shard's next page once its current one is used up.
+     */
+    private void forEachMerged(Consumer<Message> consumer) {
+        List<ArrayDeque<Message>> pages = new ArrayList<>(shards.count());
+        PriorityQueue<Integer> next = new PriorityQueue<>(
+                Comparator.comparing((Integer shard) -> pages.get(shard).peekFirst().getMessageId()));
+        for (int shard = 0; shard < shards.count(); shard++) {
+            pages.add(new ArrayDeque<>(pageAfter(shard, 0)));
+            if (!pages.get(shard).isEmpty()) {
+                next.add(shard);
+            }
+        }
+        while (!next.isEmpty()) {
+            int shard = next.poll();
+            ArrayDeque<Message> page = pages.get(shard);
+            Message message = page.pollFirst();
+            consumer.accept(message);
+            if (page.isEmpty()) {
+                page.addAll(pageAfter(shard, message.getMessageId()));
+            }
+            if (!page.isEmpty()) {
+                next.add(shard);
+            }
+        }
+    }
+
+    private List<Message> pageAfter(int shard, int afterId) {
+        return shards.on(shard, () -> messageRepository.findByMessageIdGreaterThanOrderByMessageIdAsc(afterId,
+                PageRequest.of(0, MERGE_PAGE_SIZE)));
+    }
+
+    private void forEachDetached(Stream<Message> messages, Consumer<Message> consumer) {
+        messages.forEach(message -> {
+            entityManager.detach(message);
+            consumer.accept(message);
+        });
     }
 }
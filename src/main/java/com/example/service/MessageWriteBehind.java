@@ -0,0 +1,323 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.entity.Message;
+import com.example.exception.CapacityExceededException;
+import com.example.shard.MessageShards;
+
+/**
+ * Optional write-behind for new messages, enabled with
+ * {@code app.write-behind.enabled=true}. A message is given its messageId from
+ * the same sequence and allocator as JPA, held in memory and acknowledged right
+ * away. A single writer thread then inserts the waiting messages in batches of up
+ * to {@code app.write-behind.batch-size}, one transaction and one commit per batch,
+ * waiting at most {@code app.write-behind.flush-interval-ms} for a batch to fill.
+ * <p>
+ * At most {@code app.write-behind.queue-capacity} messages can wait at once; beyond
+ * that {@link #submit(Message)} throws {@link CapacityExceededException} so clients
+ * back off instead of the queue growing. Waiting messages are lost if the process
+ * dies, so the durability window is the flush interval plus one commit.
+ * <p>
+ * Batches are written with one multi-row INSERT through Hibernate, so the query
+ * cache still sees the message table change. With several {@link MessageShards},
+ * each batch is written as one transaction per shard.
+ */
+@Service
+public class MessageWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageWriteBehind.class);
+
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final MessageShards shards;
+    private final SessionFactoryImplementor sessionFactory;
+    private final IdentifierGenerator idGenerator;
+
+    private final Semaphore permits;
+    private final BlockingQueue<Message> queue = new LinkedBlockingQueue<>();
+    private final ConcurrentMap<Integer, Message> unflushed = new ConcurrentHashMap<>();
+    private final Object flushed = new Object();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile Consumer<List<Message>> failureListener = messages -> { };
+    private volatile boolean running = true;
+    private final Thread writer;
+
+    @Autowired
+    public MessageWriteBehind(@Value("${app.write-behind.enabled:false}") boolean enabled,
+            @Value("${app.write-behind.queue-capacity:10000}") int capacity,
+            @Value("${app.write-behind.batch-size:500}") int batchSize,
+            @Value("${app.write-behind.flush-interval-ms:10}") long flushIntervalMillis,
+            EntityManager entityManager, EntityManagerFactory entityManagerFactory,
+            PlatformTransactionManager transactionManager, MessageShards shards) {
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shards = shards;
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.idGenerator = sessionFactory.getMetamodel().entityPersister(Message.class).getIdentifierGenerator();
+        this.permits = new Semaphore(capacity);
+        if (enabled) {
+            writer = new Thread(this::writeLoop, "message-write-behind");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            writer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets what to do with messages that were acknowledged but could not be written.
+     *
+     * @param listener  Receives each batch that failed
+     */
+    public void onFailure(Consumer<List<Message>> listener) {
+        this.failureListener = listener;
+    }
+
+    /**
+     * Assigns a message its messageId and queues it to be written.
+     *
+     * @param message  The validated message, without a messageId
+     * @return The message with its messageId
+     * @throws CapacityExceededException is thrown when the queue is full
+     */
+    public Message submit(Message message) throws CapacityExceededException {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            throw new CapacityExceededException("Too many messages waiting to be written, try again later");
+        }
+        Message queued;
+        try {
+            queued = new Message(nextId(message), message.getPostedBy(), message.getMessageText(),
+                    message.getTimePostedEpoch());
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+        unflushed.put(queued.getMessageId(), queued);
+        queue.add(queued);
+        return queued;
+    }
+
+    /**
+     * @param id
+     * @return The message if it has been acknowledged but not yet written
+     */
+    public Optional<Message> findUnflushed(int id) {
+        return Optional.ofNullable(unflushed.get(id));
+    }
+
+    /**
+     * @param postedBy
+     * @return The messages of an account that have been acknowledged but not yet written
+     */
+    public List<Message> findUnflushedBy(int postedBy) {
+        if (unflushed.isEmpty()) {
+            return List.of();
+        }
+        List<Message> messages = new ArrayList<>();
+        for (Message message : unflushed.values()) {
+            if (message.getPostedBy() == postedBy) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Waits until a message is no longer waiting to be written, so that it can be
+     * changed in the database. Returns at once for any other messageId.
+     *
+     * @param id
+     */
+    public void awaitFlushed(int id) {
+        synchronized (flushed) {
+            while (unflushed.containsKey(id)) {
+                try {
+                    flushed.wait(100);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public int unflushedCount() {
+        return unflushed.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public long flushCount() {
+        return flushes.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Stops the writer once everything still queued has been written, before
+     * the database is shut down.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join();
+        }
+    }
+
+    /**
+     * Takes the next messageId from the allocator JPA uses, which only reads
+     * message_seq once per block of ids, on the shard of the message's author.
+     */
+    private Integer nextId(Message message) {
+        return shards.on(shards.shardOf(message.getPostedBy()), () -> {
+            try (StatelessSession session = sessionFactory.openStatelessSession()) {
+                return (Integer) idGenerator.generate((SharedSessionContractImplementor) session, message);
+            }
+        });
+    }
+
+    private void writeLoop() {
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Group commit: keep collecting until the batch is full or the oldest message has waited long enough
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Message next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException ex) {
+                // Only the JVM shutting down interrupts the writer; write what has been collected
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Message> batch) {
+        try {
+            if (shards.isSharded()) {
+                Map<Integer, List<Message>> byShard = batch.stream()
+                        .collect(Collectors.groupingBy(message -> shards.shardOfMessage(message.getMessageId())));
+                byShard.forEach((shard, messages) -> shards.on(shard, () -> write(messages)));
+            } else {
+                write(batch);
+            }
+        } finally {
+            for (Message message : batch) {
+                unflushed.remove(message.getMessageId());
+            }
+            permits.release(batch.size());
+            synchronized (flushed) {
+                flushed.notifyAll();
+            }
+        }
+    }
+
+    private boolean write(List<Message> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(batch));
+            flushes.increment();
+            return true;
+        } catch (RuntimeException ex) {
+            failed.add(batch.size());
+            logger.error("Could not write {} acknowledged messages, they are lost", batch.size(), ex);
+            failureListener.accept(List.copyOf(batch));
+            return false;
+        }
+    }
+
+    /**
+     * Inserts a batch with a single statement. Registering the Message entity
+     * lets Hibernate invalidate cached queries over the message table.
+     */
+    @SuppressWarnings("rawtypes")
+    private void insert(List<Message> batch) {
+        StringBuilder sql = new StringBuilder(
+                "insert into message (messageId, postedBy, messageText, timePostedEpoch) values ");
+        for (int i = 0; i < batch.size(); i++) {
+            int first = i * 4 + 1;
+            sql.append(i == 0 ? "" : ", ")
+                    .append("(?").append(first).append(", ?").append(first + 1)
+                    .append(", ?").append(first + 2).append(", ?").append(first + 3).append(')');
+        }
+
+        NativeQuery query = entityManager.createNativeQuery(sql.toString()).unwrap(NativeQuery.class);
+        query.addSynchronizedEntityClass(Message.class);
+        for (int i = 0; i < batch.size(); i++) {
+            Message message = batch.get(i);
+            int first = i * 4 + 1;
+            query.setParameter(first, message.getMessageId(), StandardBasicTypes.INTEGER);
+            query.setParameter(first + 1, message.getPostedBy(), StandardBasicTypes.INTEGER);
+            query.setParameter(first + 2, message.getMessageText(), StandardBasicTypes.STRING);
+            query.setParameter(first + 3, message.getTimePostedEpoch(), StandardBasicTypes.LONG);
+        }
+        query.executeUpdate();
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import com.example.exception.CapacityExceededException;
+
+/**
+ * Hashes and verifies passwords with salted bcrypt.
+ * <p>
+ * bcrypt is deliberately CPU-heavy, so all hashing runs on a dedicated pool of
+ * {@code app.password-hashing.threads} threads (one per core by default) with a
+ * queue of {@code app.password-hashing.queue-capacity} waiting requests. When the
+ * queue is full, callers get a {@link CapacityExceededException} right away instead
+ * of piling up, and a burst of logins can never use more cores than the pool has.
+ */
+@Service
+public class PasswordService {
+
+    private static final String[] BCRYPT_PREFIXES = { "$2a$", "$2b$", "$2y$" };
+
+    private final BCryptPasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+    /**
+     * Hash compared against when a username does not exist, so that an unknown
+     * username takes as long to reject as a wrong password.
+     */
+    private final String dummyHash;
+
+    @Autowired
+    public PasswordService(@Value("${app.password-hashing.bcrypt-strength:10}") int strength,
+            @Value("${app.password-hashing.threads:0}") int threads,
+            @Value("${app.password-hashing.queue-capacity:64}") int queueCapacity) {
+        this.encoder = new BCryptPasswordEncoder(strength);
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.dummyHash = encoder.encode("dummy-password");
+    }
+
+    /**
+     * Hashes a password with a new random salt.
+     * 
+     * @param rawPassword
+     * @return The bcrypt hash, including its salt and cost
+     * @throws CapacityExceededException is thrown when the hashing queue is full
+     */
+    public String hash(String rawPassword) throws CapacityExceededException {
+        return submit(() -> encoder.encode(rawPassword));
+    }
+
+    /**
+     * Checks a password against a stored value. Stored values that are not bcrypt
+     * hashes are treated as legacy plaintext passwords and compared in constant time.
+     * 
+     * @param rawPassword
+     * @param storedPassword  The stored hash, or null to only spend the time of a check
+     * @return True if the password matches
+     * @throws CapacityExceededException is thrown when the hashing queue is full
+     */
+    public boolean matches(String rawPassword, String storedPassword) throws CapacityExceededException {
+        if (storedPassword == null) {
+            submit(() -> encoder.matches(rawPassword, dummyHash));
+            return false;
+        }
+        if (!isHashed(storedPassword)) {
+            return MessageDigest.isEqual(rawPassword.getBytes(StandardCharsets.UTF_8),
+                    storedPassword.getBytes(StandardCharsets.UTF_8));
+        }
+        return submit(() -> encoder.matches(rawPassword, storedPassword));
+    }
+
+    /**
+     * @param storedPassword
+     * @return True if the stored value should be replaced with a fresh hash,
+     *          because it is plaintext or uses a different cost
+     */
+    public boolean needsRehash(String storedPassword) {
+        return !isHashed(storedPassword) || encoder.upgradeEncoding(storedPassword);
+    }
+
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int activeCount() {
+        return executor.getActiveCount();
+    }
+
+    public int queuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    private static boolean isHashed(String storedPassword) {
+        for (String prefix : BCRYPT_PREFIXES) {
+            if (storedPassword.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private <T> T submit(Callable<T> task) throws CapacityExceededException {
+        try {
+            return executor.submit(task).get();
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            throw new CapacityExceededException("Too many password checks in progress, try again later");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CapacityExceededException("Interrupted while waiting for a password check");
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Password hashing failed", ex.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.service;
+
+import static com.example.config.MetricsConfig.SERVICE_TIMER;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.example.dto.SearchHit;
+import com.example.search.MessageSearchIndex;
+
+import io.micrometer.core.annotation.Timed;
+
+@Service
+public class SearchService {
+
+    private MessageService messageService;
+    private MessageSearchIndex messageSearchIndex;
+
+    @Autowired
+    public SearchService(MessageService messageService, MessageSearchIndex messageSearchIndex) {
+        this.messageService = messageService;
+        this.messageSearchIndex = messageSearchIndex;
+    }
+
+    /**
+     * Indexes every existing message once the application has started, streaming
+     * them from the database so memory use does not grow with the table. Until
+     * this has finished, searches only find messages written since startup.
+     * An index on disk that was closed cleanly and matches the message count is
+     * kept as it is, so a warm start does not read the table at all.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadSearchIndex() {
+        if (messageSearchIndex.isReusable(messageService.countMessages())) {
+            return;
+        }
+        messageSearchIndex.clear();
+        messageService.streamAllMessages(messageSearchIndex::index);
+        messageSearchIndex.commit();
+    }
+
+    /**
+     * Searches message text using the {@link MessageSearchIndex}, best match first.
+     * Pages are chained on (score, messageId); as scores depend on the whole
+     * index, a page may repeat or skip a hit when messages change in between.
+     *
+     * @param query           The query text
+     * @param afterScore      The score of the last hit of the previous page, or null for the first page
+     * @param afterMessageId  The messageId of the last hit of the previous page
+     * @param limit           The maximum number of hits to return
+     * @return A list of at most limit hits
+     */
+    @Timed(SERVICE_TIMER)
+    public List<SearchHit> search(String query, Float afterScore, int afterMessageId, int limit) {
+        return messageSearchIndex.search(query, afterScore, afterMessageId, limit);
+    }
+}
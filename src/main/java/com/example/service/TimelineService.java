@@ -0,0 +1,158 @@
+package com.example.service;
+
+import static com.example.config.MetricsConfig.SERVICE_TIMER;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import com.example.cache.HomeTimelines;
+import com.example.entity.Follow;
+import com.example.entity.Message;
+import com.example.repository.FollowRepository;
+import com.example.repository.MessageRepository;
+import com.example.shard.MessageShards;
+import com.example.store.InMemoryMessageStore;
+
+import io.micrometer.core.annotation.Timed;
+
+@Service
+public class TimelineService {
+
+    private FollowRepository followRepository;
+    private MessageRepository messageRepository;
+    private AccountService accountService;
+    private HomeTimelines homeTimelines;
+    private MessageShards shards;
+    private InMemoryMessageStore memoryStore;
+    private HomeTimelines.Loader loader;
+
+    @Autowired
+    public TimelineService(FollowRepository followRepository, MessageRepository messageRepository,
+            AccountService accountService, HomeTimelines homeTimelines, MessageShards shards,
+            InMemoryMessageStore memoryStore) {
+        this.followRepository = followRepository;
+        this.messageRepository = messageRepository;
+        this.accountService = accountService;
+        this.homeTimelines = homeTimelines;
+        this.shards = shards;
+        this.memoryStore = memoryStore;
+        this.loader = new HomeTimelines.Loader() {
+            @Override
+            public List<Integer> followeeIds(int accountId) {
+                return followRepository.findFolloweeIds(accountId);
+            }
+
+            @Override
+            public List<Message> newestFollowed(int accountId, int limit) {
+                if (memoryStore.isEnabled()) {
+                    return memoryStore.findNewestByPostedBy(followRepository.findFolloweeIds(accountId), limit);
+                }
+                if (!shards.isSharded()) {
+                    return messageRepository.findNewestFollowedBy(accountId, PageRequest.of(0, limit));
+                }
+                return newestOnEachShard(followRepository.findFolloweeIds(accountId), limit);
+            }
+        };
+    }
+
+    /**
+     * The follows are only on shard 0, so with several shards the followees'
+     * newest messages are read from each of their shards and merged. Messages
+     * without a timePostedEpoch come last, as they do in the database's order.
+     */
+    private List<Message> newestOnEachShard(List<Integer> followeeIds, int limit) {
+        Map<Integer, List<Integer>> byShard = followeeIds.stream().collect(Collectors.groupingBy(shards::shardOf));
+        return byShard.entrySet().stream()
+                .flatMap(entry -> shards.on(entry.getKey(), () -> messageRepository
+                        .findByPostedByInOrderByTimePostedEpochDescMessageIdDesc(entry.getValue(),
+                                PageRequest.of(0, limit))).stream())
+                .sorted(Comparator.comparing(Message::getTimePostedEpoch,
+                        Comparator.nullsFirst(Comparator.<Long>naturalOrder())).reversed()
+                        .thenComparing(Comparator.comparing(Message::getMessageId).reversed()))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Makes one account follow another using {@link FollowRepository}, and merges
+     * the followed account's newest messages into the follower's home timeline.
+     * Following an account twice has no further effect.
+     * Both accounts must already have been checked to exist.
+     *
+     * @param followerId
+     * @param followeeId
+     * @return The follow
+     */
+    @Timed(SERVICE_TIMER)
+    public Follow follow(int followerId, int followeeId) {
+        Follow follow = new Follow(followerId, followeeId);
+        if (!followRepository.existsById(new Follow.Key(followerId, followeeId))) {
+            try {
+                followRepository.save(follow);
+            } catch (DataIntegrityViolationException ex) {
+                // A concurrent request created the same follow first
+            }
+        }
+        homeTimelines.follow(followerId, followeeId, limit -> memoryStore.isEnabled()
+                ? memoryStore.findByPostedBy(followeeId, null, 0, limit)
+                : shards.on(shards.shardOf(followeeId),
+                        () -> messageRepository.findByPostedByOrderByTimePostedEpochDescMessageIdDesc(followeeId,
+                                PageRequest.of(0, limit))));
+        return follow;
+    }
+
+    /**
+     * Makes one account stop following another using {@link FollowRepository},
+     * and takes the followed account's messages out of the follower's home timeline.
+     *
+     * @param followerId
+     * @param followeeId
+     * @return The number of rows affected, 0 when the account was not following
+     */
+    @Timed(SERVICE_TIMER)
+    public int unfollow(int followerId, int followeeId) {
+        int rowsAffected = followRepository.deleteFollow(followerId, followeeId);
+        homeTimelines.unfollow(followerId, followeeId);
+        return rowsAffected;
+    }
+
+    /**
+     * Retrieves the accountIds an account follows using {@link FollowRepository}
+     *
+     * @param followerId
+     * @return A list of accountIds in ascending order
+     */
+    @Timed(SERVICE_TIMER)
+    public List<Integer> findFolloweeIds(int followerId) {
+        return followRepository.findFolloweeIds(followerId);
+    }
+
+    /**
+     * Retrieves one page of an account's home timeline, newest first, from
+     * {@link HomeTimelines}. The first read of a timeline builds it from the
+     * database; every later read is served from memory. The timeline reaches
+     * back at most {@code app.timeline.max-length} messages.
+     *
+     * @param accountId
+     * @param beforeTimePostedEpoch  The timePostedEpoch of the last message of the previous page,
+     *          or null for the first page
+     * @param beforeMessageId        The messageId of the last message of the previous page
+     * @param limit                  The maximum number of messages to return
+     * @return A list of at most limit messages posted by the accounts the account follows,
+     *          empty when the account does not exist
+     */
+    @Timed(SERVICE_TIMER)
+    public List<Message> getHomeTimeline(int accountId, Long beforeTimePostedEpoch, int beforeMessageId, int limit) {
+        if (!accountService.accountExists(accountId)) {
+            return List.of();
+        }
+        return homeTimelines.page(accountId, beforeTimePostedEpoch, beforeMessageId, limit, loader);
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.shard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Places messages on one of {@code app.sharding.shards} databases. A message
+ * lives on the shard chosen by a hash of its postedBy, so all of an account's
+ * messages are on one shard, and its messageId says which shard that is (see
+ * {@link ShardedSequenceGenerator}). Accounts and follows stay on shard 0.
+ * <p>
+ * Work is sent to a shard by running it inside {@link #on(int, Supplier)}, which
+ * makes the shard current for the thread; {@link ShardRoutingDataSource} then
+ * hands out that shard's connections. A transaction takes its connection when
+ * it begins, so the shard must be chosen before, never inside, a transaction.
+ * With a single shard everything runs as it is, on the one database.
+ */
+@Component
+public class MessageShards {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final int count;
+    private final ExecutorService scatter;
+
+    @Autowired
+    public MessageShards(@Value("${app.sharding.shards:1}") int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("app.sharding.shards must be at least 1");
+        }
+        this.count = count;
+        AtomicInteger threads = new AtomicInteger();
+        this.scatter = count == 1 ? null : Executors.newFixedThreadPool(count, runnable -> {
+            Thread thread = new Thread(runnable, "message-shard-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    /**
+     * @return The shard current for this thread, 0 outside {@link #on(int, Supplier)}
+     */
+    public static int currentShard() {
+        Integer shard = CURRENT.get();
+        return shard == null ? 0 : shard;
+    }
+
+    /**
+     * @param postedBy  The account posting a message
+     * @return The shard holding the account's messages
+     */
+    public int shardOf(Integer postedBy) {
+        if (count == 1 || postedBy == null) {
+            return 0;
+        }
+        // Fibonacci hashing, so accounts created one after another spread evenly
+        int hash = postedBy * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), count);
+    }
+
+    /**
+     * @param messageId
+     * @return The shard holding a message, read from its messageId
+     */
+    public int shardOfMessage(int messageId) {
+        return Math.floorMod(messageId, count);
+    }
+
+    /**
+     * Runs work against one shard on this thread.
+     *
+     * @param shard
+     * @param work
+     * @return What the work returned
+     */
+    public <T> T on(int shard, Supplier<T> work) {
+        if (count == 1) {
+            return work.get();
+        }
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs work against every shard at once and gathers the results.
+     *
+     * @param work  Called with each shard, on that shard
+     * @return The results in shard order
+     */
+    public <T> List<T> onEach(IntFunction<T> work) {
+        if (count == 1) {
+            return List.of(work.apply(0));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            int target = shard;
+            futures.add(CompletableFuture.supplyAsync(() -> on(target, () -> work.apply(target)), scatter));
+        }
+        List<T> results = new ArrayList<>(count);
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scatter != null) {
+            scatter.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.shard;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.boot.model.relational.Database;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Message ids that are unique across shards without any coordination between
+ * them. Every shard has its own message_seq, read in blocks through its own
+ * pooled allocator, and a value v taken on shard s becomes the messageId
+ * {@code v * shards + s}, so the id also says where the message lives. With a
+ * single shard ids are the sequence values themselves.
+ * <p>
+ * The shard count comes from the Hibernate setting {@value #SHARDS_SETTING};
+ * it cannot change once messages have been written.
+ */
+public class ShardedSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String SHARDS_SETTING = "app.sharding.shards";
+
+    private int shards;
+    private SequenceStyleGenerator[] others;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, params, serviceRegistry);
+        shards = ConfigurationHelper.getInt(SHARDS_SETTING,
+                serviceRegistry.getService(ConfigurationService.class).getSettings(), 1);
+        // Each shard keeps its own block of sequence values; shard 0 uses this generator's
+        others = new SequenceStyleGenerator[shards];
+        for (int shard = 1; shard < shards; shard++) {
+            others[shard] = new SequenceStyleGenerator();
+            others[shard].configure(type, (Properties) params.clone(), serviceRegistry);
+        }
+    }
+
+    @Override
+    public void registerExportables(Database database) {
+        super.registerExportables(database);
+        for (int shard = 1; shard < shards; shard++) {
+            others[shard].registerExportables(database);
+        }
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        int shard = MessageShards.currentShard();
+        if (shards == 1) {
+            return super.generate(session, object);
+        }
+        Serializable value = shard == 0 ? super.generate(session, object) : others[shard].generate(session, object);
+        return Math.addExact(Math.multiplyExact(((Number) value).intValue(), shards), shard);
+    }
+}
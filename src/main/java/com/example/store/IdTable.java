@@ -0,0 +1,76 @@
+package com.example.store;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A map from int keys to values for keys that are handed out densely, such as
+ * messageIds and accountIds. Values are held in chunks of {@value #CHUNK_SIZE}
+ * slots, allocated the first time a key in their range is stored, so a lookup
+ * is two array reads: no hashing, no boxed keys and no locks.
+ * <p>
+ * Any number of threads may read while one thread at a time writes. Readers
+ * see every value stored before the one they find.
+ */
+final class IdTable<V> {
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private volatile AtomicReferenceArray<V>[] chunks = newDirectory(16);
+
+    /**
+     * @param key
+     * @return The value stored under the key, or null
+     */
+    V get(int key) {
+        if (key < 0) {
+            return null;
+        }
+        AtomicReferenceArray<V>[] directory = chunks;
+        int chunk = key >>> CHUNK_BITS;
+        if (chunk >= directory.length || directory[chunk] == null) {
+            return null;
+        }
+        return directory[chunk].get(key & CHUNK_MASK);
+    }
+
+    /**
+     * Stores a value, or removes the key's value when it is null. Only one thread may write at a time.
+     *
+     * @param key    A key of 0 or more
+     * @param value
+     */
+    void put(int key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key " + key);
+        }
+        int chunk = key >>> CHUNK_BITS;
+        AtomicReferenceArray<V>[] directory = chunks;
+        if (chunk >= directory.length || directory[chunk] == null) {
+            if (value == null) {
+                return;
+            }
+            if (chunk >= directory.length) {
+                directory = Arrays.copyOf(directory, Math.max(directory.length * 2, chunk + 1));
+            }
+            directory[chunk] = new AtomicReferenceArray<>(CHUNK_SIZE);
+            // Published again so that readers who find the value below also find its chunk
+            chunks = directory;
+        }
+        directory[chunk].set(key & CHUNK_MASK, value);
+    }
+
+    /**
+     * Removes every value. Only one thread may write at a time.
+     */
+    void clear() {
+        chunks = newDirectory(16);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> AtomicReferenceArray<V>[] newDirectory(int length) {
+        return new AtomicReferenceArray[length];
+    }
+}
@@ -0,0 +1,499 @@
+package com.example.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.entity.Message;
+import com.example.repository.MessageRepository;
+
+/**
+ * Message storage in memory, used in place of {@link MessageRepository} when
+ * {@code app.message-store.engine=memory}. It answers the same queries as the
+ * repository without Hibernate or JDBC: messages are kept as {@link StoredMessage}
+ * records in an {@link IdTable} by messageId, and in {@link StoredMessageList}s
+ * sorted by messageId and, for each account, by timePostedEpoch, so a page is
+ * found by a binary search and read without sorting. Reads take no locks and
+ * return new {@link Message} objects built from the records, which callers own;
+ * an edit changes the stored text in place.
+ * <p>
+ * Writes are made one at a time. Each is first appended to a {@link MessageLog}
+ * at {@code app.message-store.log-file}, which is replayed at startup, and forced
+ * to disk when {@code app.message-store.fsync=true}. A log mostly made of
+ * superseded records is rewritten at startup. The first start without a log
+ * takes its messages from the message table; after that the table is not used.
+ * <p>
+ * The store hands out messageIds itself, following on from the highest one it has
+ * seen. It cannot be combined with sharding or write-behind, and the reactive
+ * profile, which reads the message table directly, does not support it.
+ */
+@Component
+public class InMemoryMessageStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryMessageStore.class);
+
+    /**
+     * Newest first, as the (postedBy, timePostedEpoch, messageId) index orders them,
+     * with messages posted without a time last.
+     */
+    private static final Comparator<Message> NEWEST_FIRST = Comparator
+            .comparing(Message::getTimePostedEpoch, Comparator.nullsFirst(Comparator.<Long>naturalOrder()))
+            .thenComparing(Message::getMessageId)
+            .reversed();
+
+    private static final Comparator<StoredMessage> BY_MESSAGE_ID = Comparator.comparingInt(message -> message.messageId);
+
+    /**
+     * The reverse of {@link #NEWEST_FIRST}, so that each account's list is added to at its end.
+     */
+    private static final Comparator<StoredMessage> OLDEST_FIRST = Comparator
+            .<StoredMessage>comparingLong(message -> message.timePostedEpoch)
+            .thenComparingInt(message -> message.messageId);
+
+    /**
+     * A log holding fewer records than this is never rewritten.
+     */
+    private static final long REWRITE_MIN_RECORDS = 1000;
+
+    private final boolean enabled;
+    private final Path file;
+    private final boolean fsync;
+    private final MessageRepository messageRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    private final IdTable<StoredMessage> messages = new IdTable<>();
+    private volatile StoredMessageList byMessageId = new StoredMessageList(BY_MESSAGE_ID);
+    private final IdTable<StoredMessageList> byPostedBy = new IdTable<>();
+    private volatile int lastId;
+    private volatile int size;
+    private MessageLog log;
+
+    @Autowired
+    public InMemoryMessageStore(@Value("${app.message-store.engine:jpa}") String engine,
+            @Value("${app.message-store.log-file:./data/messages.log}") String file,
+            @Value("${app.message-store.fsync:false}") boolean fsync,
+            @Value("${app.sharding.shards:1}") int shards,
+            @Value("${app.write-behind.enabled:false}") boolean writeBehind,
+            Environment environment, MessageRepository messageRepository, EntityManager entityManager,
+            PlatformTransactionManager transactionManager) {
+        if (!engine.equals("jpa") && !engine.equals("memory")) {
+            throw new IllegalArgumentException("app.message-store.engine must be jpa or memory, not " + engine);
+        }
+        this.enabled = engine.equals("memory");
+        if (enabled && environment.acceptsProfiles(Profiles.of("reactive"))) {
+            throw new IllegalStateException("app.message-store.engine=memory is not supported with the reactive profile");
+        }
+        if (enabled && shards > 1) {
+            throw new IllegalStateException("app.message-store.engine=memory cannot be combined with app.sharding.shards");
+        }
+        if (enabled && writeBehind) {
+            throw new IllegalStateException("app.message-store.engine=memory cannot be combined with write-behind");
+        }
+        this.file = Paths.get(file);
+        this.fsync = fsync;
+        this.messageRepository = messageRepository;
+        this.entityManager = entityManager;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Replays the log, or on the first start imports the message table, once the
+     * sample rows are in place and before anything reads messages at startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public synchronized void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (!Files.exists(file)) {
+            importMessages();
+            return;
+        }
+        log = MessageLog.replay(file, fsync, new MessageLog.Replay() {
+            @Override
+            public void created(Message message) {
+                messages.put(message.getMessageId(), new StoredMessage(message));
+                reserve(message.getMessageId());
+            }
+
+            @Override
+            public void updated(int id, String messageText) {
+                StoredMessage message = messages.get(id);
+                if (message != null) {
+                    message.setMessageText(messageText);
+                }
+            }
+
+            @Override
+            public void deleted(int id) {
+                messages.put(id, null);
+            }
+
+            @Override
+            public void reserved(int id) {
+                reserve(id);
+            }
+        });
+        indexByPostedBy();
+        logger.info("Replayed {} message log records into {} messages", log.records(), size);
+        if (log.records() >= REWRITE_MIN_RECORDS && log.records() > 2L * size) {
+            rewrite();
+        }
+    }
+
+    /**
+     * Replaces every message in the store, and its log, with the rows of the message table.
+     *
+     * @throws IOException is thrown when the new log cannot be written
+     */
+    public synchronized void importMessages() throws IOException {
+        messages.clear();
+        byPostedBy.clear();
+        lastId = 0;
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Message> rows = messageRepository.streamAllByOrderByMessageIdAsc()) {
+                rows.forEach(row -> {
+                    entityManager.detach(row);
+                    messages.put(row.getMessageId(), new StoredMessage(row));
+                    reserve(row.getMessageId());
+                });
+            }
+        });
+        indexByPostedBy();
+        rewrite();
+        logger.info("Imported {} messages from the message table", size);
+    }
+
+    /**
+     * Gives a message the next messageId and stores it.
+     *
+     * @param message  The validated message, without a messageId
+     * @return The stored message with its messageId
+     */
+    public synchronized Message save(Message message) {
+        Message saved = new Message(lastId + 1, message.getPostedBy(), message.getMessageText(),
+                message.getTimePostedEpoch());
+        try {
+            log.created(saved);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write to the message log", ex);
+        }
+        add(new StoredMessage(saved));
+        return saved;
+    }
+
+    /**
+     * @param messages  The validated messages, without messageIds
+     * @return The stored messages with their messageIds, in the same order
+     */
+    public synchronized List<Message> saveAll(List<Message> messages) {
+        List<Message> stored = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            stored.add(save(message));
+        }
+        return stored;
+    }
+
+    /**
+     * @param id
+     * @return The message if it exists
+     */
+    public Optional<Message> findById(int id) {
+        StoredMessage message = messages.get(id);
+        return message == null ? Optional.empty() : Optional.ofNullable(message.toMessage());
+    }
+
+    /**
+     * @return Every message, ordered by messageId
+     */
+    public List<Message> findAll() {
+        List<Message> all = new ArrayList<>(size);
+        forEach(all::add);
+        return all;
+    }
+
+    /**
+     * @return The number of messages
+     */
+    public long count() {
+        return size;
+    }
+
+    /**
+     * Passes every message to a consumer, ordered by messageId.
+     *
+     * @param consumer
+     */
+    public void forEach(Consumer<Message> consumer) {
+        byMessageId.forEachAfter(null, stored -> {
+            Message message = stored.toMessage();
+            if (message != null) {
+                consumer.accept(message);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * @param id     Only messages with a greater messageId are returned
+     * @param limit  The maximum number of messages to return
+     * @return The messages after id, ordered by messageId
+     */
+    public List<Message> findByMessageIdGreaterThan(int id, int limit) {
+        List<Message> page = new ArrayList<>(Math.min(limit, size));
+        if (limit < 1) {
+            return page;
+        }
+        byMessageId.forEachAfter(key(id, StoredMessage.NO_TIME), stored -> {
+            Message message = stored.toMessage();
+            if (message != null) {
+                page.add(message);
+            }
+            return page.size() < limit;
+        });
+        return page;
+    }
+
+    /**
+     * @param postedBy
+     * @return Every message the account posted, ordered by messageId
+     */
+    public List<Message> findAllByPostedBy(int postedBy) {
+        StoredMessageList list = byPostedBy.get(postedBy);
+        if (list == null) {
+            return List.of();
+        }
+        List<Message> found = new ArrayList<>(list.size());
+        list.forEachAfter(null, stored -> {
+            Message message = stored.toMessage();
+            if (message != null) {
+                found.add(message);
+            }
+            return true;
+        });
+        // Already in order unless messages were posted with earlier times than older ones
+        found.sort(Comparator.comparing(Message::getMessageId));
+        return found;
+    }
+
+    /**
+     * Passes every message an account posted to a consumer, ordered by messageId.
+     *
+     * @param postedBy
+     * @param consumer
+     */
+    public void forEachByPostedBy(int postedBy, Consumer<Message> consumer) {
+        findAllByPostedBy(postedBy).forEach(consumer);
+    }
+
+    /**
+     * One page of an account's messages, newest first, with the same keyset as
+     * {@link MessageRepository#findByPostedByBefore}. The account's list is walked
+     * back from the cursor, so only the messages on the page are read.
+     *
+     * @param postedBy
+     * @param beforeTimePostedEpoch  The timePostedEpoch of the last message of the previous page,
+     *          or null for the first page
+     * @param beforeMessageId        The messageId of the last message of the previous page
+     * @param limit                  The maximum number of messages to return
+     * @return At most limit messages
+     */
+    public List<Message> findByPostedBy(int postedBy, Long beforeTimePostedEpoch, int beforeMessageId, int limit) {
+        StoredMessageList list = byPostedBy.get(postedBy);
+        if (list == null || limit < 1) {
+            return List.of();
+        }
+        List<Message> page = new ArrayList<>(Math.min(limit, list.size()));
+        StoredMessage key = beforeTimePostedEpoch == null ? null : key(beforeMessageId, beforeTimePostedEpoch);
+        list.forEachBefore(key, stored -> {
+            // Messages without a time come after every other message and are never after a cursor
+            if (key != null && stored.timePostedEpoch == StoredMessage.NO_TIME) {
+                return false;
+            }
+            Message message = stored.toMessage();
+            if (message != null) {
+                page.add(message);
+            }
+            return page.size() < limit;
+        });
+        return page;
+    }
+
+    /**
+     * The newest messages of several accounts, newest first, as
+     * {@link MessageRepository#findNewestFollowedBy} returns for the accounts one follows.
+     *
+     * @param postedBy  The accounts
+     * @param limit     The maximum number of messages to return
+     * @return At most limit messages
+     */
+    public List<Message> findNewestByPostedBy(Collection<Integer> postedBy, int limit) {
+        return postedBy.stream()
+                .flatMap(id -> findByPostedBy(id, null, 0, limit).stream())
+                .sorted(NEWEST_FIRST)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Replaces the text of a message.
+     *
+     * @return The postedBy of the message changed, empty when the message does not exist
+     */
+    public synchronized List<Integer> updateMessageTextById(int id, String messageText) {
+        StoredMessage message = messages.get(id);
+        if (message == null) {
+            return List.of();
+        }
+        try {
+            log.updated(id, messageText);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write to the message log", ex);
+        }
+        message.setMessageText(messageText);
+        return Collections.singletonList(postedBy(message));
+    }
+
+    /**
+     * Deletes a message.
+     *
+     * @return The postedBy of the message deleted, empty when the message does not exist
+     */
+    public synchronized List<Integer> deleteMessageById(int id) {
+        StoredMessage message = messages.get(id);
+        if (message == null) {
+            return List.of();
+        }
+        try {
+            log.deleted(id);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write to the message log", ex);
+        }
+        message.delete();
+        messages.put(id, null);
+        byMessageId.deleted();
+        if (message.postedBy != StoredMessage.NO_POSTED_BY) {
+            byPostedBy.get(message.postedBy).deleted();
+        }
+        size = size - 1;
+        return Collections.singletonList(postedBy(message));
+    }
+
+    /**
+     * @return The number of records in the log
+     */
+    public long logRecordCount() {
+        return log == null ? 0 : log.records();
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    private void add(StoredMessage message) {
+        messages.put(message.messageId, message);
+        reserve(message.messageId);
+        byMessageId.add(message);
+        if (message.postedBy != StoredMessage.NO_POSTED_BY) {
+            list(message.postedBy).add(message);
+        }
+        size = size + 1;
+    }
+
+    private void reserve(int id) {
+        if (id > lastId) {
+            lastId = id;
+        }
+    }
+
+    private StoredMessageList list(int postedBy) {
+        StoredMessageList list = byPostedBy.get(postedBy);
+        if (list == null) {
+            list = new StoredMessageList(OLDEST_FIRST);
+            byPostedBy.put(postedBy, list);
+        }
+        return list;
+    }
+
+    /**
+     * Builds the lists, and the count, from the messages. They are added by account
+     * and then oldest first, so that every one of them goes at the end of its lists.
+     */
+    private void indexByPostedBy() {
+        List<StoredMessage> all = new ArrayList<>();
+        for (int id = 1; id <= lastId; id++) {
+            StoredMessage message = messages.get(id);
+            if (message != null) {
+                all.add(message);
+            }
+        }
+        byMessageId = new StoredMessageList(BY_MESSAGE_ID);
+        all.forEach(byMessageId::add);
+        all.sort(Comparator.<StoredMessage>comparingInt(message -> message.postedBy).thenComparing(OLDEST_FIRST));
+        for (StoredMessage message : all) {
+            if (message.postedBy != StoredMessage.NO_POSTED_BY) {
+                list(message.postedBy).add(message);
+            }
+        }
+        size = all.size();
+    }
+
+    /**
+     * Puts a log holding only the current messages in place of the old one.
+     */
+    private void rewrite() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+        log = MessageLog.rewrite(file, fsync, lastId, findAll());
+    }
+
+    private static Integer postedBy(StoredMessage message) {
+        return message.postedBy == StoredMessage.NO_POSTED_BY ? null : message.postedBy;
+    }
+
+    /**
+     * A message to search the lists with.
+     */
+    private static StoredMessage key(int messageId, long timePostedEpoch) {
+        return new StoredMessage(messageId, StoredMessage.NO_POSTED_BY, timePostedEpoch, null);
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.store;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.entity.Message;
+
+/**
+ * The append-only file behind {@link InMemoryMessageStore}. Every change is one
+ * record: a length, a CRC32C checksum and then the change itself. Replaying the
+ * records in order rebuilds the store. A record cut short by a crash, or one
+ * whose checksum does not match, ends the log; it and anything after it are cut
+ * off when the log is opened.
+ * <p>
+ * Each record is written to the file before its change is made visible, so it
+ * survives the process dying. With {@code fsync} it is also forced to disk,
+ * which it needs to survive the machine going down. A record that fails to be
+ * written is cut off again before the failure is reported, so that later
+ * records are not appended after a damaged one and lost with it at the next
+ * start; if it cannot be cut off, the log refuses every later write.
+ */
+final class MessageLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageLog.class);
+
+    private static final byte CREATE = 1;
+    private static final byte UPDATE = 2;
+    private static final byte DELETE = 3;
+    /**
+     * Every messageId up to the one in this record has been handed out. Written
+     * when the log is rewritten, so ids of deleted messages are never reused.
+     */
+    private static final byte RESERVE = 4;
+
+    private static final int HEADER = 8;
+    private static final int MAX_RECORD = 1 << 20;
+
+    /**
+     * Opens the file of a log for appending.
+     */
+    interface Opener {
+
+        FileChannel open(Path file) throws IOException;
+    }
+
+    static final Opener APPEND = file -> FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+    /**
+     * Receives the records of a log in the order they were written.
+     */
+    interface Replay {
+
+        void created(Message message);
+
+        void updated(int id, String messageText);
+
+        void deleted(int id);
+
+        void reserved(int id);
+    }
+
+    private final Path file;
+    private final boolean fsync;
+    private final Opener opener;
+    private FileChannel channel;
+    private long records;
+    private long length;
+    private IOException failure;
+
+    private MessageLog(Path file, boolean fsync, Opener opener) {
+        this.file = file;
+        this.fsync = fsync;
+        this.opener = opener;
+    }
+
+    /**
+     * Replays an existing log and opens it for appending.
+     *
+     * @param file    The log, which must exist
+     * @param fsync   Whether to force each record to disk
+     * @param replay  Receives every record
+     * @return The log, positioned after its last good record
+     * @throws IOException
+     */
+    static MessageLog replay(Path file, boolean fsync, Replay replay) throws IOException {
+        return replay(file, fsync, replay, APPEND);
+    }
+
+    static MessageLog replay(Path file, boolean fsync, Replay replay, Opener opener) throws IOException {
+        MessageLog log = new MessageLog(file, fsync, opener);
+        long end = log.read(replay);
+        long length = Files.size(file);
+        if (end < length) {
+            logger.warn("Message log {} ends in a damaged record, discarding its last {} bytes", file, length - end);
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(end);
+                truncate.force(true);
+            }
+        }
+        log.openForAppend();
+        return log;
+    }
+
+    /**
+     * Writes a new log holding only the given messages, then puts it in place of
+     * any log already at the file in one atomic rename.
+     *
+     * @param file      Where the log lives
+     * @param fsync     Whether to force each later record to disk
+     * @param reserved  The highest messageId handed out so far
+     * @param messages  The messages, in messageId order
+     * @return The new log, open for appending
+     * @throws IOException
+     */
+    static MessageLog rewrite(Path file, boolean fsync, int reserved, Iterable<Message> messages) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        MessageLog log = new MessageLog(temporary, false, APPEND);
+        try {
+            log.channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+            log.append(reserveRecord(reserved));
+            for (Message message : messages) {
+                log.append(createRecord(message));
+            }
+            log.channel.force(true);
+            log.channel.close();
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            log.close();
+            Files.deleteIfExists(temporary);
+            throw ex;
+        }
+        MessageLog rewritten = new MessageLog(file, fsync, APPEND);
+        rewritten.records = log.records;
+        rewritten.openForAppend();
+        return rewritten;
+    }
+
+    void created(Message message) throws IOException {
+        write(createRecord(message));
+    }
+
+    void updated(int id, String messageText) throws IOException {
+        byte[] text = messageText.getBytes(StandardCharsets.UTF_8);
+        write(record(UPDATE, id, 4 + text.length).putInt(text.length).put(text));
+    }
+
+    void deleted(int id) throws IOException {
+        write(record(DELETE, id, 0));
+    }
+
+    /**
+     * @return The number of records in the log, which only a rewrite brings down
+     */
+    long records() {
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void openForAppend() throws IOException {
+        channel = opener.open(file);
+        length = channel.size();
+    }
+
+    private void write(ByteBuffer record) throws IOException {
+        if (failure != null) {
+            throw new IOException("The message log could not be repaired after a failed write", failure);
+        }
+        long end = length;
+        long before = records;
+        try {
+            append(record);
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException ex) {
+            records = before;
+            length = end;
+            try {
+                channel.truncate(end);
+            } catch (IOException truncation) {
+                ex.addSuppressed(truncation);
+                failure = ex;
+                logger.error("Message log {} could not be cut back after a failed write, refusing further writes",
+                        file, ex);
+            }
+            throw ex;
+        }
+    }
+
+    private void append(ByteBuffer record) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), HEADER, record.position() - HEADER);
+        record.putInt(0, record.position() - HEADER).putInt(4, (int) crc.getValue()).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        records++;
+        length += record.limit();
+    }
+
+    /**
+     * Reads records until the end of the file or the first damaged one.
+     *
+     * @return The position just after the last good record
+     */
+    private long read(Replay replay) throws IOException {
+        long position = 0;
+        try (InputStream file = Files.newInputStream(this.file);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException ex) {
+                    return position;
+                }
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD) {
+                    return position;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    return position;
+                }
+                apply(ByteBuffer.wrap(payload), replay);
+                records++;
+                position += HEADER + length;
+            }
+        } catch (EOFException ex) {
+            return position;
+        }
+    }
+
+    private static void apply(ByteBuffer payload, Replay replay) {
+        byte type = payload.get();
+        int id = payload.getInt();
+        switch (type) {
+        case CREATE:
+            int postedBy = payload.getInt();
+            long timePostedEpoch = payload.getLong();
+            String messageText = text(payload);
+            // Long.MIN_VALUE stands for a message posted without a time
+            replay.created(new Message(id, postedBy, messageText,
+                    timePostedEpoch == Long.MIN_VALUE ? null : timePostedEpoch));
+            break;
+        case UPDATE:
+            replay.updated(id, text(payload));
+            break;
+        case DELETE:
+            replay.deleted(id);
+            break;
+        case RESERVE:
+            replay.reserved(id);
+            break;
+        default:
+            throw new IllegalStateException("Unknown message log record type " + type);
+        }
+    }
+
+    private static String text(ByteBuffer payload) {
+        byte[] text = new byte[payload.getInt()];
+        payload.get(text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer createRecord(Message message) {
+        byte[] text = message.getMessageText().getBytes(StandardCharsets.UTF_8);
+        Long timePostedEpoch = message.getTimePostedEpoch();
+        return record(CREATE, message.getMessageId(), 16 + text.length)
+                .putInt(message.getPostedBy())
+                .putLong(timePostedEpoch == null ? Long.MIN_VALUE : timePostedEpoch)
+                .putInt(text.length)
+                .put(text);
+    }
+
+    private static ByteBuffer reserveRecord(int id) {
+        return record(RESERVE, id, 0);
+    }
+
+    /**
+     * @return A buffer with room for the header, positioned after the record's type and messageId
+     */
+    private static ByteBuffer record(byte type, int id, int bodyLength) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER + 5 + bodyLength);
+        record.position(HEADER);
+        return record.put(type).putInt(id);
+    }
+}
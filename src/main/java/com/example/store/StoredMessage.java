@@ -0,0 +1,74 @@
+package com.example.store;
+
+import com.example.entity.Message;
+
+/**
+ * How {@link InMemoryMessageStore} keeps a message: its fields unboxed, without
+ * the messageId, postedBy and timePostedEpoch objects of a {@link Message}. Only
+ * the text changes once stored, in place, and it is replaced with a marker when
+ * the message is deleted.
+ */
+final class StoredMessage {
+
+    /**
+     * Stands for a message without an author, which belongs to no account.
+     */
+    static final int NO_POSTED_BY = Integer.MIN_VALUE;
+
+    /**
+     * Stands for a message posted without a time, which sorts before all others.
+     */
+    static final long NO_TIME = Long.MIN_VALUE;
+
+    /**
+     * The text of a deleted message, told apart from any real text by identity.
+     */
+    private static final String DELETED = new String();
+
+    final int messageId;
+    final int postedBy;
+    final long timePostedEpoch;
+    private volatile String messageText;
+
+    StoredMessage(int messageId, int postedBy, long timePostedEpoch, String messageText) {
+        this.messageId = messageId;
+        this.postedBy = postedBy;
+        this.timePostedEpoch = timePostedEpoch;
+        this.messageText = messageText;
+    }
+
+    StoredMessage(Message message) {
+        this(message.getMessageId(), message.getPostedBy() == null ? NO_POSTED_BY : message.getPostedBy(),
+                message.getTimePostedEpoch() == null ? NO_TIME : message.getTimePostedEpoch(),
+                message.getMessageText());
+    }
+
+    /**
+     * Only one thread may change the text at a time.
+     *
+     * @param messageText
+     */
+    void setMessageText(String messageText) {
+        this.messageText = messageText;
+    }
+
+    void delete() {
+        messageText = DELETED;
+    }
+
+    boolean isDeleted() {
+        return messageText == DELETED;
+    }
+
+    /**
+     * @return A new message with the stored fields, or null when the message has been deleted
+     */
+    Message toMessage() {
+        String text = messageText;
+        if (text == DELETED) {
+            return null;
+        }
+        return new Message(messageId, postedBy == NO_POSTED_BY ? null : postedBy, text,
+                timePostedEpoch == NO_TIME ? null : timePostedEpoch);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.store;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+/**
+ * A sorted list of stored messages, such as all messages by messageId or one
+ * account's messages oldest first. Deleted messages stay in the list until they
+ * make up half of it, when it is copied without them, so a walk never passes
+ * more deleted messages than live ones.
+ * <p>
+ * Any number of threads may read while one thread at a time changes the list.
+ * A reader walks the list as it was when it started: a message added in order
+ * is written past the end that readers can see, and one added out of order, or
+ * a list being compacted, is written to a new array.
+ */
+final class StoredMessageList {
+
+    /**
+     * The array and how much of it is in use, replaced together.
+     */
+    private static final class Contents {
+        final StoredMessage[] messages;
+        final int size;
+
+        Contents(StoredMessage[] messages, int size) {
+            this.messages = messages;
+            this.size = size;
+        }
+    }
+
+    private final Comparator<StoredMessage> order;
+    private volatile Contents contents = new Contents(new StoredMessage[4], 0);
+    private int deleted;
+
+    StoredMessageList(Comparator<StoredMessage> order) {
+        this.order = order;
+    }
+
+    /**
+     * Adds a message in its place. Adding after the last message is amortized
+     * constant time, anywhere else copies the list. Only one thread may change
+     * the list at a time.
+     *
+     * @param message
+     */
+    void add(StoredMessage message) {
+        Contents current = contents;
+        StoredMessage[] messages = current.messages;
+        int size = current.size;
+        if (size > 0 && order.compare(messages[size - 1], message) > 0) {
+            int at = after(messages, size, message);
+            StoredMessage[] copy = new StoredMessage[Math.max(messages.length, size + 1)];
+            System.arraycopy(messages, 0, copy, 0, at);
+            copy[at] = message;
+            System.arraycopy(messages, at, copy, at + 1, size - at);
+            contents = new Contents(copy, size + 1);
+            return;
+        }
+        if (size == messages.length) {
+            messages = Arrays.copyOf(messages, size * 2);
+        }
+        messages[size] = message;
+        contents = new Contents(messages, size + 1);
+    }
+
+    /**
+     * Counts a message of the list as deleted, and drops the deleted messages once
+     * they make up half of the list. Only one thread may change the list at a time.
+     */
+    void deleted() {
+        deleted++;
+        Contents current = contents;
+        if (deleted * 2 < current.size) {
+            return;
+        }
+        StoredMessage[] live = new StoredMessage[Math.max(4, current.size - deleted)];
+        int size = 0;
+        for (int i = 0; i < current.size; i++) {
+            StoredMessage message = current.messages[i];
+            if (!message.isDeleted()) {
+                if (size == live.length) {
+                    live = Arrays.copyOf(live, size * 2);
+                }
+                live[size++] = message;
+            }
+        }
+        contents = new Contents(live, size);
+        deleted = 0;
+    }
+
+    /**
+     * @return The number of messages, including deleted ones not dropped yet
+     */
+    int size() {
+        return contents.size;
+    }
+
+    /**
+     * Passes the messages that sort after a key to an action, in order, until it returns false.
+     *
+     * @param key     A message to start after, or null to start at the first one
+     * @param action
+     */
+    void forEachAfter(StoredMessage key, Predicate<StoredMessage> action) {
+        Contents current = contents;
+        int from = key == null ? 0 : after(current.messages, current.size, key);
+        for (int i = from; i < current.size; i++) {
+            if (!action.test(current.messages[i])) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Passes the messages that sort before a key to an action, in reverse order, until it returns false.
+     *
+     * @param key     A message to start before, or null to start at the last one
+     * @param action
+     */
+    void forEachBefore(StoredMessage key, Predicate<StoredMessage> action) {
+        Contents current = contents;
+        int from = key == null ? current.size : before(current.messages, current.size, key);
+        for (int i = from - 1; i >= 0; i--) {
+            if (!action.test(current.messages[i])) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The index of the first message that sorts after the key
+     */
+    private int after(StoredMessage[] messages, int size, StoredMessage key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (order.compare(messages[middle], key) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The index of the first message that does not sort before the key
+     */
+    private int before(StoredMessage[] messages, int size, StoredMessage key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (order.compare(messages[middle], key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -1,17 +1,12 @@
-drop table if exists message;
-drop table if exists account;
-create table account (
-    accountId int primary key auto_increment,
-    username varchar(255) not null unique,
-    password varchar(255)
-);
-create table message (
-    messageId int primary key auto_increment,
-    postedBy int,
-    messageText varchar(255),
-    timePostedEpoch bigint,
-    foreign key (postedBy) references account(accountId)
-);
+-- Sample rows for the in-memory database; the prod profile does not load them.
+-- The database can outlive a restart in the same JVM, so start from empty tables and sequences.
+-- New ids start at 10000, above the sample ids, so new rows never collide with them. message_seq is
+-- read in blocks of 50 that end at the value taken (see Message), so its first block is 10000 to 10049.
+delete from follow;
+delete from message;
+delete from account;
+alter sequence message_seq restart with 10049;
+alter sequence hibernate_sequence restart with 10000;
 
 -- Starting test values with ids of 9999 to avoid test issues
 insert into account values (9999, 'testuser1', 'password');
@@ -22,4 +17,3 @@ insert into account values (9996, 'testuser4', 'password');
 insert into message values (9999, 9999,'test message 1',1669947792);
 insert into message values (9997, 9997,'test message 2',1669947792);
 insert into message values (9996, 9996,'test message 3',1669947792);
-
@@ -0,0 +1,14 @@
+-- Change log of the primary when there are read replicas (see ReplicationConfig). ReplicationTrigger records the key
+-- of every changed row in the writing transaction, and Replicator copies those rows to the replicas
+create table if not exists replication_log (
+    seq bigint generated by default as identity primary key,
+    tableName varchar(32) not null,
+    key1 int not null,
+    key2 int
+);
+create trigger if not exists account_replication after insert, update, delete on account
+    for each row call 'com.example.replica.ReplicationTrigger';
+create trigger if not exists follow_replication after insert, update, delete on follow
+    for each row call 'com.example.replica.ReplicationTrigger';
+create trigger if not exists message_replication after insert, update, delete on message
+    for each row call 'com.example.replica.ReplicationTrigger';
@@ -0,0 +1,27 @@
+-- Idempotent, so a file-backed database (see application-prod.properties) keeps its rows across restarts
+create table if not exists account (
+    accountId int primary key auto_increment,
+    username varchar(255) not null unique,
+    password varchar(255)
+);
+create table if not exists message (
+    messageId int primary key auto_increment,
+    postedBy int,
+    messageText varchar(255),
+    timePostedEpoch bigint,
+    foreign key (postedBy) references account(accountId)
+);
+-- The follow graph; the primary key serves the followees of an account
+create table if not exists follow (
+    followerId int,
+    followeeId int,
+    primary key (followerId, followeeId),
+    foreign key (followerId) references account(accountId),
+    foreign key (followeeId) references account(accountId)
+);
+-- Serves newest-first pages of one account's messages (see MessageRepository) from an index range scan
+create index if not exists message_postedBy_timePosted_idx on message (postedBy, timePostedEpoch desc, messageId desc);
+-- Message ids are allocated in blocks of 50 (see Message) so inserts can be batched
+create sequence if not exists message_seq start with 1 increment by 50;
+-- Account ids (see Account)
+create sequence if not exists hibernate_sequence start with 1 increment by 1;
@@ -0,0 +1,10 @@
+-- The message table of shards 1 and up (see ShardingConfig); accounts and follows live on shard 0 only,
+-- so postedBy cannot reference them here
+create table if not exists message (
+    messageId int primary key,
+    postedBy int,
+    messageText varchar(255),
+    timePostedEpoch bigint
+);
+create index if not exists message_postedBy_timePosted_idx on message (postedBy, timePostedEpoch desc, messageId desc);
+create sequence if not exists message_seq start with 1 increment by 50;
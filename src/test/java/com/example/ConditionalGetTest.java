@@ -0,0 +1,214 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.cache.MessageVersions;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ConditionalGetTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/9999, repeating it with its ETag in
+     * If-None-Match and its Last-Modified in If-Modified-Since, then again after a PATCH of the message
+     *
+     * Expected Response:
+     *  Status Code: 200 with ETag and Last-Modified headers, then 304 with no body twice,
+     *  then 200 with the new text and a new ETag
+     */
+    @Test
+    public void getMessageIsConditional() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages/9999", null, null);
+        Assertions.assertEquals(200, response.statusCode());
+        String etag = response.headers().firstValue("ETag").orElseThrow();
+        String lastModified = response.headers().firstValue("Last-Modified").orElseThrow();
+
+        HttpResponse<String> notModified = get("/messages/9999", "If-None-Match", etag);
+        Assertions.assertEquals(304, notModified.statusCode());
+        Assertions.assertEquals("", notModified.body());
+        Assertions.assertEquals(etag, notModified.headers().firstValue("ETag").orElse(null));
+        Assertions.assertEquals(304, get("/messages/9999", "If-Modified-Since", lastModified).statusCode());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"edited\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> modified = get("/messages/9999", "If-None-Match", etag);
+        Assertions.assertEquals(200, modified.statusCode());
+        Assertions.assertEquals("edited", objectMapper.readValue(modified.body(), Message.class).getMessageText());
+        Assertions.assertNotEquals(etag, modified.headers().firstValue("ETag").orElse(null));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/9999/messages, repeating it with its ETag
+     * in If-None-Match, then again after posting a new message for the account
+     *
+     * Expected Response:
+     *  Status Code: 200 with an ETag header, then 304 with no body, then 200 with both messages
+     */
+    @Test
+    public void getAllMessagesForUserIsConditional() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/accounts/9999/messages", null, null);
+        Assertions.assertEquals(200, response.statusCode());
+        String etag = response.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> notModified = get("/accounts/9999/messages", "If-None-Match", etag);
+        Assertions.assertEquals(304, notModified.statusCode());
+        Assertions.assertEquals("", notModified.body());
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"postedBy\":9999,\"messageText\": \"hello\","
+                        + "\"timePostedEpoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> modified = get("/accounts/9999/messages", "If-None-Match", etag);
+        Assertions.assertEquals(200, modified.statusCode());
+        List<Message> messages = objectMapper.readValue(modified.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(2, messages.size());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/accounts/9999/messages and /accounts/9997/messages, editing
+     * message 9999, which no request has read on its own, then repeating both with their ETags
+     *
+     * Expected Response:
+     *  Status Code: 200 with the edited message for account 9999, whose author is found without reading
+     *  the message, and 304 for account 9997, which did not change
+     */
+    @Test
+    public void editingAMessageChangesOnlyItsAccount() throws IOException, InterruptedException {
+        String etag = get("/accounts/9999/messages", null, null).headers().firstValue("ETag").orElseThrow();
+        String otherEtag = get("/accounts/9997/messages", null, null).headers().firstValue("ETag").orElseThrow();
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"edited\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> modified = get("/accounts/9999/messages", "If-None-Match", etag);
+        Assertions.assertEquals(200, modified.statusCode());
+        List<Message> messages = objectMapper.readValue(modified.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals("edited", messages.get(0).getMessageText());
+        Assertions.assertEquals(304, get("/accounts/9997/messages", "If-None-Match", otherEtag).statusCode());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/accounts/9997/messages and /accounts/9999/messages, deleting
+     * message 9997, which no request has read on its own, then repeating both with their ETags
+     *
+     * Expected Response:
+     *  Status Code: 200 without the deleted message for account 9997, whose author the DELETE returns,
+     *  and 304 for account 9999, which did not change
+     */
+    @Test
+    public void deletingAMessageChangesOnlyItsAccount() throws IOException, InterruptedException {
+        String etag = get("/accounts/9997/messages", null, null).headers().firstValue("ETag").orElseThrow();
+        String otherEtag = get("/accounts/9999/messages", null, null).headers().firstValue("ETag").orElseThrow();
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9997"))
+                .DELETE()
+                .build();
+        Assertions.assertEquals("1", webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).body());
+
+        HttpResponse<String> modified = get("/accounts/9997/messages", "If-None-Match", etag);
+        Assertions.assertEquals(200, modified.statusCode());
+        Assertions.assertEquals("[]", modified.body());
+        Assertions.assertEquals(304, get("/accounts/9999/messages", "If-None-Match", otherEtag).statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/100 for a message that does not exist
+     *
+     * Expected Response:
+     *  Status Code: 200 with an empty body and no ETag, so that the message can be fetched once it exists
+     */
+    @Test
+    public void missingMessageHasNoValidator() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages/100", null, null);
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("", response.body());
+        Assertions.assertTrue(response.headers().firstValue("ETag").isEmpty());
+    }
+
+    /**
+     * Sending an http request to DELETE and one to PATCH localhost:8080/messages/100 for a message that
+     * does not exist
+     *
+     * Expected Response:
+     *  No change is recorded, so no stamp is taken up and no validator changes
+     */
+    @Test
+    public void changesToMissingMessagesAreNotRecorded() throws IOException, InterruptedException {
+        MessageVersions messageVersions = app.getBean(MessageVersions.class);
+        String etag = get("/messages/9999", null, null).headers().firstValue("ETag").orElseThrow();
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/100"))
+                .DELETE()
+                .build();
+        Assertions.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/100"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"edited\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(400, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assertions.assertEquals(0, messageVersions.size());
+        Assertions.assertEquals(304, get("/messages/9999", "If-None-Match", etag).statusCode());
+    }
+
+    private HttpResponse<String> get(String path, String header, String value) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path));
+        if (header != null) {
+            request.header(header, value);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
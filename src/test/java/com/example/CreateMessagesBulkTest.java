@@ -0,0 +1,109 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.dto.BulkMessageResult;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class CreateMessagesBulkTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/bulk with a JSON array holding one valid message,
+     * one message from a user that doesnt exist in db and one message with empty text
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per message, in order, with only the first one created
+     */
+    @Test
+    public void createMessagesBulkJsonArray() throws IOException, InterruptedException {
+    	String json = "[{\"postedBy\":9999,\"messageText\": \"hello message\",\"timePostedEpoch\": 1669947792},"
+    			+ "{\"postedBy\":5050,\"messageText\": \"hello message\",\"timePostedEpoch\": 1669947792},"
+    			+ "{\"postedBy\":9999,\"messageText\": \"\",\"timePostedEpoch\": 1669947792}]";
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/bulk"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+        List<BulkMessageResult> results = objectMapper.readValue(response.body(), new TypeReference<List<BulkMessageResult>>(){});
+        Assertions.assertEquals(3, results.size());
+        Assertions.assertEquals(200, results.get(0).getStatus());
+        Assertions.assertEquals(new Message(10000, 9999, "hello message", 1669947792L), results.get(0).getMessage());
+        Assertions.assertEquals(400, results.get(1).getStatus());
+        Assertions.assertEquals(1, results.get(1).getIndex());
+        Assertions.assertEquals(400, results.get(2).getStatus());
+        Assertions.assertEquals(2, results.get(2).getIndex());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/bulk with two valid messages as newline-delimited JSON
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: both messages created, and retrievable afterwards
+     */
+    @Test
+    public void createMessagesBulkNdjson() throws IOException, InterruptedException {
+    	String ndjson = "{\"postedBy\":9998,\"messageText\": \"first\",\"timePostedEpoch\": 1669947792}\n"
+    			+ "{\"postedBy\":9998,\"messageText\": \"second\",\"timePostedEpoch\": 1669947793}\n";
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/bulk"))
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson))
+                .header("Content-Type", "application/x-ndjson")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+        List<BulkMessageResult> results = objectMapper.readValue(response.body(), new TypeReference<List<BulkMessageResult>>(){});
+        Assertions.assertEquals(2, results.size());
+        Assertions.assertEquals(200, results.get(0).getStatus());
+        Assertions.assertEquals(200, results.get(1).getStatus());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9998/messages"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> actualResult = objectMapper.readValue(getResponse.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(List.of(results.get(0).getMessage(), results.get(1).getMessage()), actualResult);
+    }
+}
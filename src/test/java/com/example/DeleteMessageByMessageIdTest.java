@@ -6,6 +6,10 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -60,6 +64,34 @@ public class DeleteMessageByMessageIdTest {
         Assertions.assertTrue(actualResult.equals(1), "Expected to modify 1 row, but actually modified " + actualResult + " rows.");
     }
 
+    /**
+     * Sending an http request to DELETE localhost:8080/messages/9999 on the servlet stack, with message
+     * 9999 not cached anywhere
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  The delete takes a single prepared statement, as counted by Hibernate
+     */
+    @Test
+    public void deleteMessageTakesOneStatement() throws IOException, InterruptedException {
+        // Statements are counted by Hibernate, so the app is restarted on the stack that writes through JPA
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, "--spring.profiles.active=default");
+        EntityManagerFactory entityManagerFactory = app.getBean(EntityManagerFactory.class);
+        // Reindexing at startup leaves the message in the second-level cache, which a real miss would not find
+        entityManagerFactory.getCache().evictAll();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .DELETE()
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
     /**
      * Sending an http request to DELETE localhost:8080/messages/100 (message does NOT exists)
      * 
@@ -0,0 +1,213 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.cache.HomeTimelines;
+import com.example.entity.Follow;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class HomeTimelineTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * User 9999 follows users 9997 and 9996 and reads their timeline, then user 9997 posts a new message
+     * and GET localhost:8080/accounts/9999/timeline?limit=2 is followed through its cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the new message and message 9997 with a next cursor, then message 9996 without one
+     */
+    @Test
+    public void homeTimelineReceivesNewMessages() throws IOException, InterruptedException {
+        HttpResponse<String> followResponse = send(post("/accounts/9999/following/9997"));
+        Assertions.assertEquals(200, followResponse.statusCode());
+        Assertions.assertEquals(new Follow(9999, 9997), objectMapper.readValue(followResponse.body(), Follow.class));
+        Assertions.assertEquals(200, send(post("/accounts/9999/following/9996")).statusCode());
+        Assertions.assertEquals(2, timeline(send(get("/accounts/9999/timeline"))).size());
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"postedBy\":9997,\"messageText\": \"newest\","
+                        + "\"timePostedEpoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, send(postRequest).statusCode());
+
+        HttpResponse<String> firstResponse = send(get("/accounts/9999/timeline?limit=2"));
+        int firstStatus = firstResponse.statusCode();
+        Assertions.assertEquals(200, firstStatus, "Expected Status Code 200 - Actual Code was: " + firstStatus);
+        List<Message> firstPage = timeline(firstResponse);
+        Assertions.assertEquals(2, firstPage.size());
+        Assertions.assertEquals("newest", firstPage.get(0).getMessageText());
+        Assertions.assertEquals(new Message(9997, 9997, "test message 2", 1669947792L), firstPage.get(1));
+        Optional<String> cursor = firstResponse.headers().firstValue("X-Next-Cursor");
+        Assertions.assertTrue(cursor.isPresent(), "Expected a next cursor on a full page");
+
+        HttpResponse<String> secondResponse = send(get("/accounts/9999/timeline?limit=2&before=" + cursor.get()));
+        List<Message> secondPage = timeline(secondResponse);
+        Assertions.assertEquals(List.of(new Message(9996, 9996, "test message 3", 1669947792L)), secondPage);
+        Assertions.assertTrue(secondResponse.headers().firstValue("X-Next-Cursor").isEmpty(),
+                "Expected no next cursor on the last page");
+    }
+
+    /**
+     * User 9999 follows user 9997 and reads their timeline, then message 9997 is updated and deleted
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the updated text after the update, and an empty timeline after the delete
+     */
+    @Test
+    public void homeTimelineFollowsUpdatesAndDeletes() throws IOException, InterruptedException {
+        Assertions.assertEquals(200, send(post("/accounts/9999/following/9997")).statusCode());
+        Assertions.assertEquals(1, timeline(send(get("/accounts/9999/timeline"))).size());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9997"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, send(patchRequest).statusCode());
+        Assertions.assertEquals(List.of(new Message(9997, 9997, "updated message", 1669947792L)),
+                timeline(send(get("/accounts/9999/timeline"))));
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9997"))
+                .DELETE()
+                .build();
+        Assertions.assertEquals(200, send(deleteRequest).statusCode());
+        Assertions.assertEquals(List.of(), timeline(send(get("/accounts/9999/timeline"))));
+    }
+
+    /**
+     * With room for a single timeline, users 9999, 9998 and 9996 each follow one account and read their
+     * timelines, then user 9997 posts a new message and user 9999 reads their timeline again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  One timeline and the followers of its one followee are held in memory, and the timeline read again
+     *  is built again with the new message
+     */
+    @Test
+    public void homeTimelinesAreBounded() throws IOException, InterruptedException {
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, "--app.timeline.max-feeds=1");
+        Thread.sleep(500);
+        HomeTimelines homeTimelines = app.getBean(HomeTimelines.class);
+        Assertions.assertEquals(200, send(post("/accounts/9999/following/9997")).statusCode());
+        Assertions.assertEquals(200, send(post("/accounts/9998/following/9996")).statusCode());
+        Assertions.assertEquals(200, send(post("/accounts/9996/following/9997")).statusCode());
+        for (int accountId : new int[] { 9999, 9998, 9996 }) {
+            Assertions.assertEquals(1, timeline(send(get("/accounts/" + accountId + "/timeline"))).size());
+        }
+        Assertions.assertEquals(1, homeTimelines.feedCount());
+        Assertions.assertEquals(1, homeTimelines.followeeCount());
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"postedBy\":9997,\"messageText\": \"newest\","
+                        + "\"timePostedEpoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, send(postRequest).statusCode());
+        List<Message> timeline = timeline(send(get("/accounts/9999/timeline")));
+        Assertions.assertEquals(2, timeline.size());
+        Assertions.assertEquals("newest", timeline.get(0).getMessageText());
+    }
+
+    /**
+     * User 9999 follows and then unfollows user 9997
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: 1 row affected, then an empty following list and an empty timeline
+     */
+    @Test
+    public void unfollowRemovesMessagesFromHomeTimeline() throws IOException, InterruptedException {
+        Assertions.assertEquals(200, send(post("/accounts/9999/following/9997")).statusCode());
+        Assertions.assertEquals("[9997]", send(get("/accounts/9999/following")).body());
+        Assertions.assertEquals(1, timeline(send(get("/accounts/9999/timeline"))).size());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9999/following/9997"))
+                .DELETE()
+                .build();
+        HttpResponse<String> unfollowResponse = send(deleteRequest);
+        Assertions.assertEquals(200, unfollowResponse.statusCode());
+        Assertions.assertEquals("1", unfollowResponse.body());
+        Assertions.assertEquals("[]", send(get("/accounts/9999/following")).body());
+        Assertions.assertEquals(List.of(), timeline(send(get("/accounts/9999/timeline"))));
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/accounts/9999/following/{followeeId} for
+     * an account that does not exist and for the account itself
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void followUnknownAccountOrSelf() throws IOException, InterruptedException {
+        Assertions.assertEquals(400, send(post("/accounts/9999/following/1")).statusCode());
+        Assertions.assertEquals(400, send(post("/accounts/9999/following/9999")).statusCode());
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+    }
+
+    private HttpRequest post(String path) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> timeline(HttpResponse<String> response) throws IOException {
+        Assertions.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+}
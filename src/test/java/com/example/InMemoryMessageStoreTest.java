@@ -0,0 +1,191 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class InMemoryMessageStoreTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Path dataDirectory;
+
+    /**
+     * Before every test, create an empty data directory, start the app with the memory profile keeping its
+     * message log there, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * The profile replaces any active one, as the in-memory store is only supported on the servlet stack.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws IOException, InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        dataDirectory = Files.createTempDirectory("message-store");
+        app = start();
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException, InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dataDirectory)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Posting a message, editing message 9999 and deleting message 9997, restarting the app on the same
+     * message log, then sending http requests to GET localhost:8080/messages and
+     * GET localhost:8080/accounts/9999/messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the sample messages as changed plus the posted one, replayed from the log,
+     *  while the message table still holds the sample rows untouched
+     */
+    @Test
+    public void changesSurviveARestart() throws IOException, InterruptedException {
+        Message created = post("{\"postedBy\":9999,\"messageText\": \"kept in memory\",\"timePostedEpoch\": 1669947793}");
+        Assertions.assertEquals(10000, created.getMessageId());
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"edited\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9997"))
+                .DELETE()
+                .build();
+        Assertions.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        JdbcTemplate jdbc = app.getBean(JdbcTemplate.class);
+        Assertions.assertEquals(List.of("test message 1", "test message 2", "test message 3"), jdbc.queryForList(
+                "select messageText from message order by messageId desc", String.class));
+
+        SpringApplication.exit(app);
+        app = start();
+
+        List<Message> expected = List.of(
+                new Message(9996, 9996, "test message 3", 1669947792L),
+                new Message(9999, 9999, "edited", 1669947792L),
+                created);
+        Assertions.assertEquals(expected, getMessages("/messages"));
+        Assertions.assertEquals(List.of(expected.get(1), created), getMessages("/accounts/9999/messages"));
+        Assertions.assertEquals(List.of(created, expected.get(1)), getMessages("/accounts/9999/messages?limit=10"));
+    }
+
+    /**
+     * Posting a message, stopping the app, appending half a record to the message log and restarting,
+     * then posting another message
+     *
+     * Expected Response:
+     *  The app starts with the first message, the damaged tail is cut off and the next message gets the next id
+     */
+    @Test
+    public void damagedLogTailIsDiscarded() throws IOException, InterruptedException {
+        Message first = post("{\"postedBy\":9998,\"messageText\": \"before the crash\",\"timePostedEpoch\": 1669947793}");
+
+        SpringApplication.exit(app);
+        Path log = dataDirectory.resolve("messages.log");
+        long length = Files.size(log);
+        Files.write(log, new byte[] { 0, 0, 0, 40, 1, 2, 3 }, StandardOpenOption.APPEND);
+        app = start();
+
+        Assertions.assertEquals(length, Files.size(log));
+        Assertions.assertEquals(List.of(first), getMessages("/accounts/9998/messages"));
+        Message second = post("{\"postedBy\":9998,\"messageText\": \"after the crash\",\"timePostedEpoch\": 1669947794}");
+        Assertions.assertEquals(first.getMessageId() + 1, second.getMessageId());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/accounts/9997/messages and /accounts/9999/messages, editing
+     * and then deleting message 9997, then repeating both with their ETags
+     *
+     * Expected Response:
+     *  Status Code: 200 without the deleted message for account 9997, whose author the store returns,
+     *  and 304 for account 9999, which did not change
+     */
+    @Test
+    public void changesAreAttributedToTheirAuthor() throws IOException, InterruptedException {
+        String etag = get("/accounts/9997/messages", null).headers().firstValue("ETag").orElseThrow();
+        String otherEtag = get("/accounts/9999/messages", null).headers().firstValue("ETag").orElseThrow();
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9997"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"edited\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assertions.assertEquals(304, get("/accounts/9999/messages", otherEtag).statusCode());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9997"))
+                .DELETE()
+                .build();
+        Assertions.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> modified = get("/accounts/9997/messages", etag);
+        Assertions.assertEquals(200, modified.statusCode());
+        Assertions.assertEquals("[]", modified.body());
+        Assertions.assertEquals(304, get("/accounts/9999/messages", otherEtag).statusCode());
+    }
+
+    private Message post(String body) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private List<Message> getMessages(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path)).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> get(String path, String etag) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path));
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private ApplicationContext start() {
+        String[] args = new String[] { "--spring.profiles.active=memory",
+                "--app.data-directory=" + dataDirectory.toAbsolutePath() };
+        return SpringApplication.run(SocialMediaApp.class, args);
+    }
+}
@@ -0,0 +1,160 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.cache.JsonResponseCache;
+import com.example.controller.SocialMediaController;
+import com.example.entity.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class JsonResponseCacheTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    JsonResponseCache jsonCache;
+
+    /**
+     * Before every test, start the app with its JSON response cache, and create a new webClient and the
+     * app's own ObjectMapper for interacting locally on the web. The default profile replaces any active
+     * one, so that the servlet stack is tested whichever profile the build runs with.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] { "--spring.profiles.active=default" };
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        objectMapper = app.getBean(ObjectMapper.class);
+        jsonCache = app.getBean(JsonResponseCache.class);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending two http requests to GET localhost:8080/messages/9999, editing the message, then
+     * sending another one
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same bytes Jackson writes for the message, the second time from the cache,
+     *  and the edited message once it has been edited
+     */
+    @Test
+    public void cachedMessageIsReplacedWhenUpdated() throws IOException, InterruptedException {
+        byte[] expected = objectMapper.writeValueAsBytes(new Message(9999, 9999, "test message 1", 1669947792L));
+        long hits = jsonCache.hitCount();
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<byte[]> response = get("/messages/9999");
+            Assertions.assertEquals(200, response.statusCode());
+            Assertions.assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+            Assertions.assertArrayEquals(expected, response.body());
+        }
+        Assertions.assertEquals(hits + 1, jsonCache.hitCount());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"edited\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assertions.assertArrayEquals(objectMapper.writeValueAsBytes(new Message(9999, 9999, "edited", 1669947792L)),
+                get("/messages/9999").body());
+    }
+
+    /**
+     * Restarting the app on the reactive stack, then sending two http requests to GET localhost:8080/messages/9999
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same bytes as on the servlet stack, the second time from the cache
+     */
+    @Test
+    public void reactiveStackReadsThroughTheCache() throws IOException, InterruptedException {
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, "--spring.profiles.active=reactive");
+        jsonCache = app.getBean(JsonResponseCache.class);
+
+        byte[] expected = objectMapper.writeValueAsBytes(new Message(9999, 9999, "test message 1", 1669947792L));
+        long hits = jsonCache.hitCount();
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<byte[]> response = get("/messages/9999");
+            Assertions.assertEquals(200, response.statusCode());
+            Assertions.assertArrayEquals(expected, response.body());
+        }
+        Assertions.assertEquals(hits + 1, jsonCache.hitCount());
+    }
+
+    /**
+     * Reading a page of account 9997's messages twice, posting a message for it, reading the page again,
+     * then deleting message 9997 and reading all of its messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the JSON Jackson writes for each page, the posted message at the top once posted,
+     *  with the same cursor whether or not the page came from the cache, and no message once deleted
+     */
+    @Test
+    public void cachedPagesAreReplacedWhenMessagesChange() throws IOException, InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<byte[]> response = get("/accounts/9997/messages?limit=1");
+            Assertions.assertEquals(200, response.statusCode());
+            Assertions.assertArrayEquals(objectMapper.writeValueAsBytes(
+                    List.of(new Message(9997, 9997, "test message 2", 1669947792L))), response.body());
+            Assertions.assertTrue(response.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).isPresent());
+        }
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"postedBy\":9997,\"messageText\": \"posted later\",\"timePostedEpoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> posted = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, posted.statusCode());
+        Message created = objectMapper.readValue(posted.body(), Message.class);
+
+        String cursor = null;
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<byte[]> response = get("/accounts/9997/messages?limit=1");
+            Assertions.assertArrayEquals(objectMapper.writeValueAsBytes(List.of(created)), response.body());
+            String next = response.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).orElseThrow();
+            Assertions.assertTrue(cursor == null || cursor.equals(next));
+            cursor = next;
+        }
+
+        Assertions.assertEquals(200, get("/accounts/9997/messages").statusCode());
+        Assertions.assertEquals(200, get("/messages/9997").statusCode());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9997"))
+                .DELETE()
+                .build();
+        Assertions.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assertions.assertArrayEquals(objectMapper.writeValueAsBytes(List.of(created)),
+                get("/accounts/9997/messages").body());
+        Assertions.assertEquals(0, get("/messages/9997").body().length);
+    }
+
+    private HttpResponse<byte[]> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,133 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.cache.MessageCache;
+import com.example.entity.Message;
+import com.example.service.MessageService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class OffHeapMessageCacheTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    MessageCache messageCache;
+
+    /**
+     * Before every test, start the app with a 64 KB off-heap message cache and no JSON response cache in
+     * front of it, and create a new webClient and the app's own ObjectMapper for interacting locally on the
+     * web. The default profile replaces any active one, as only the servlet stack writes messages from the cache.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] { "--spring.profiles.active=default", "--app.message-cache.policy=offheap",
+                "--app.message-cache.offheap-bytes=65536", "--app.json-cache.max-bytes=0" };
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        objectMapper = app.getBean(ObjectMapper.class);
+        messageCache = app.getBean(MessageCache.class);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Editing message 9999 to a text that needs escaping, then sending two http requests to
+     * GET localhost:8080/messages/9999
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: both times the same bytes Jackson writes for the message, the second from the cache
+     */
+    @Test
+    public void cachedMessageIsTheSameJsonAsJackson() throws IOException, InterruptedException {
+        String text = "\"quoted\" back\\slash\nnew line\ttab\u0001 caf\u00e9 \ud83d\ude00 </script>";
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                        objectMapper.writeValueAsString(new Message(null, null, text, null))))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        byte[] expected = objectMapper.writeValueAsBytes(new Message(9999, 9999, text, 1669947792L));
+
+        long hits = messageCache.hitCount();
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<byte[]> response = webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/9999")).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            Assertions.assertEquals(200, response.statusCode());
+            Assertions.assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+            Assertions.assertArrayEquals(expected, response.body());
+        }
+        Assertions.assertTrue(messageCache.hitCount() > hits);
+    }
+
+    /**
+     * Inserting a message without a postedBy straight into the message table, then reading it twice
+     * as JSON and once as a message
+     *
+     * Expected Response:
+     *  Both reads are the bytes Jackson writes for the message, with a null postedBy, the second from
+     *  the cache, and the message read from the cache has no postedBy
+     */
+    @Test
+    public void messageWithoutAuthorIsCached() throws IOException {
+        app.getBean(JdbcTemplate.class).update("insert into message values (10, null, 'no author', 1669947792)");
+        MessageService messageService = app.getBean(MessageService.class);
+        Message expected = new Message(10, null, "no author", 1669947792L);
+
+        long hits = messageCache.hitCount();
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertArrayEquals(objectMapper.writeValueAsBytes(expected),
+                    messageService.getMessageJson(10).orElseThrow());
+        }
+        Assertions.assertEquals(hits + 1, messageCache.hitCount());
+        Assertions.assertEquals(expected, messageService.getMessage(10).orElseThrow());
+    }
+
+    /**
+     * Creating far more messages than fit in the cache, then reading each of them twice
+     *
+     * Expected Response:
+     *  The oldest messages are evicted to make room, and every read, hit or miss, is the message's JSON
+     */
+    @Test
+    public void oldestMessagesAreEvicted() throws IOException {
+        MessageService messageService = app.getBean(MessageService.class);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            messages.add(new Message(9998, "cached message " + i, 1669947792L + i));
+        }
+        List<Message> created = messageService.createMessages(messages);
+
+        for (int round = 0; round < 2; round++) {
+            for (Message message : created) {
+                Assertions.assertArrayEquals(objectMapper.writeValueAsBytes(message),
+                        messageService.getMessageJson(message.getMessageId()).orElseThrow());
+            }
+        }
+        Assertions.assertTrue(messageCache.evictionCount() > 0);
+        Assertions.assertTrue(messageCache.size() < created.size());
+        Assertions.assertTrue(messageService.getMessageJson(1_000_000).isEmpty());
+    }
+}
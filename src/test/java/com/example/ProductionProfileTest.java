@@ -0,0 +1,116 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.dto.SearchHit;
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ProductionProfileTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Path dataDirectory;
+
+    /**
+     * Before every test, create an empty data directory, start the app with the prod profile on it,
+     * and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws IOException, InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        dataDirectory = Files.createTempDirectory("prod-profile");
+        app = start();
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException, InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dataDirectory)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Registering an account and posting a message, restarting the app on the same data directory,
+     * then sending http requests to GET localhost:8080/messages and GET localhost:8080/messages/search?q=durable
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the posted message only, as the sample rows are not loaded, and one search hit for it
+     */
+    @Test
+    public void restartKeepsMessagesAndSearchIndex() throws IOException, InterruptedException {
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"produser\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> registerResponse = webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, registerResponse.statusCode());
+        Account account = objectMapper.readValue(registerResponse.body(), Account.class);
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"postedBy\":" + account.getAccountId()
+                        + ",\"messageText\": \"durable message\",\"timePostedEpoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> postResponse = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, postResponse.statusCode());
+        Message created = objectMapper.readValue(postResponse.body(), Message.class);
+
+        SpringApplication.exit(app);
+        app = start();
+
+        HttpResponse<String> allResponse = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, allResponse.statusCode());
+        List<Message> messages = objectMapper.readValue(allResponse.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(List.of(created), messages);
+
+        HttpResponse<String> searchResponse = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q="
+                        + URLEncoder.encode("durable", StandardCharsets.UTF_8))).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, searchResponse.statusCode());
+        List<SearchHit> hits = objectMapper.readValue(searchResponse.body(), new TypeReference<List<SearchHit>>(){});
+        Assertions.assertEquals(1, hits.size());
+        Assertions.assertEquals(created, hits.get(0).getMessage());
+    }
+
+    private ApplicationContext start() {
+        String[] args = new String[] { "--spring.profiles.include=prod",
+                "--app.data-directory=" + dataDirectory.toAbsolutePath() };
+        return SpringApplication.run(SocialMediaApp.class, args);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+public class PrometheusMetricsTest {
+	ApplicationContext app;
+    HttpClient webClient;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/login, then to
+     * GET localhost:8080/actuator/prometheus
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: request, service, repository, connection pool, Hibernate and JVM metrics
+     *  in Prometheus text format
+     */
+    @Test
+    public void scrapeMetricsAfterRequest() throws IOException, InterruptedException {
+        HttpRequest login = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser1\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(login, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest scrape = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/actuator/prometheus"))
+                .build();
+        String loginMetric = "http_server_requests_seconds_count{exception=\"None\",method=\"POST\",outcome=\"SUCCESS\",status=\"200\",uri=\"/login\",}";
+        HttpResponse<String> response = webClient.send(scrape, HttpResponse.BodyHandlers.ofString());
+        // WebFlux times a request once its response has been written, which can be after the client has read it,
+        // and records it as cancelled if the client has moved on by then; log in again when that happens
+        for (int i = 0; i < 50 && !response.body().contains(loginMetric); i++) {
+            if (response.body().contains("uri=\"/login\"")) {
+                webClient.send(login, HttpResponse.BodyHandlers.ofString());
+            }
+            Thread.sleep(100);
+            response = webClient.send(scrape, HttpResponse.BodyHandlers.ofString());
+        }
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+        String body = response.body();
+        for (String metric : new String[] {
+                loginMetric,
+                "app_service_invocations_seconds_count{class=\"com.example.service.AccountService\",exception=\"none\",method=\"login\",}",
+                "spring_data_repository_invocations_seconds_count{exception=\"None\",method=\"findByUsername\",repository=\"AccountRepository\",state=\"SUCCESS\",}",
+                "cache_gets_total{cache=\"message\",policy=\"tinylfu\",result=\"miss\",}",
+                "hikaricp_connections_active",
+                "hibernate_query_executions_total",
+                "hibernate_entities_loads_total",
+                "hibernate_second_level_cache_puts_total{entityManagerFactory=\"entityManagerFactory\",region=\"account\",}",
+                "hibernate_cache_query_puts_total",
+                "jvm_gc_memory_allocated_bytes_total",
+                "password_hashing_queued" }) {
+            Assertions.assertTrue(body.contains(metric), "Expected metric " + metric);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.ratelimit.RateLimiter;
+
+public class RateLimitTest {
+	ApplicationContext app;
+    HttpClient webClient;
+
+    /**
+     * Before every test, reset the database, restart the app with bursts of ten requests per client and
+     * two logins and messages per account that practically never refill, and create a new webClient for
+     * interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] { "--app.rate-limit.client.per-second=0.001", "--app.rate-limit.client.burst=10",
+                "--app.rate-limit.account-logins.per-second=0.001", "--app.rate-limit.account-logins.burst=2",
+                "--app.rate-limit.account-messages.per-second=0.001", "--app.rate-limit.account-messages.burst=2" };
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending three http requests to POST localhost:8080/login as testuser1, then one as testuser2
+     *
+     * Expected Response:
+     *  Status Code: 200 twice, then 429 with a Retry-After header, then 200 for the other account
+     */
+    @Test
+    public void loginsAreLimitedPerAccount() throws IOException, InterruptedException {
+        Assertions.assertEquals(200, login("testuser1").statusCode());
+        Assertions.assertEquals(200, login("testuser1").statusCode());
+
+        HttpResponse<String> rejected = login("testuser1");
+        Assertions.assertEquals(429, rejected.statusCode());
+        Assertions.assertTrue(rejected.headers().firstValue("Retry-After").isPresent());
+        Assertions.assertEquals(RateLimiter.TOO_MANY_REQUESTS, rejected.body());
+
+        Assertions.assertEquals(200, login("testuser2").statusCode());
+    }
+
+    /**
+     * Sending eleven http requests to GET localhost:8080/messages, then one to GET localhost:8080/actuator/health
+     *
+     * Expected Response:
+     *  Status Code: 200 ten times, then 429 with a Retry-After header, and 200 from the actuator,
+     *  which is not limited
+     */
+    @Test
+    public void requestsAreLimitedPerClient() throws IOException, InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertEquals(200, get("/messages").statusCode());
+        }
+
+        HttpResponse<String> rejected = get("/messages");
+        Assertions.assertEquals(429, rejected.statusCode());
+        Assertions.assertTrue(rejected.headers().firstValue("Retry-After").isPresent());
+
+        Assertions.assertEquals(200, get("/actuator/health").statusCode());
+    }
+
+    /**
+     * Sending three http requests to POST localhost:8080/messages for user 9999, then one for user 9998
+     *
+     * Expected Response:
+     *  Status Code: 200 twice, then 429 with a Retry-After header, then 200 for the other account
+     */
+    @Test
+    public void messagesAreLimitedPerAccount() throws IOException, InterruptedException {
+        Assertions.assertEquals(200, createMessage(9999).statusCode());
+        Assertions.assertEquals(200, createMessage(9999).statusCode());
+
+        HttpResponse<String> rejected = createMessage(9999);
+        Assertions.assertEquals(429, rejected.statusCode());
+        Assertions.assertTrue(rejected.headers().firstValue("Retry-After").isPresent());
+
+        Assertions.assertEquals(200, createMessage(9998).statusCode());
+    }
+
+    private HttpResponse<String> login(String username) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"" + username
+                        + "\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> createMessage(int postedBy) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"postedBy\":" + postedBy
+                        + ",\"messageText\": \"rate limited\",\"timePostedEpoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,165 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.entity.Message;
+import com.example.exception.MessageNotFoundException;
+import com.example.replica.ReadYourWrites;
+import com.example.replica.ReplicaRoutingDataSource;
+import com.example.service.MessageService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+
+public class ReplicationTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    ReplicaRoutingDataSource dataSource;
+
+    /**
+     * Before every test, start the app with the replicated profile, which serves reads from two in-memory
+     * replicas, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * The profile replaces any active one, as replicas are only supported on the servlet stack.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] { "--spring.profiles.active=replicated" };
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        dataSource = app.getBean(ReplicaRoutingDataSource.class);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Adding a message to both replicas only, then sending http requests to GET localhost:8080/messages
+     * and GET localhost:8080/accounts/9999/messages
+     *
+     * Expected Response:
+     *  The replicas start with the sample rows of the primary, and both reads include the message
+     *  that only the replicas have
+     */
+    @Test
+    public void readsAreServedByReplicas() throws IOException, InterruptedException {
+        for (HikariDataSource replica : dataSource.getReplicas()) {
+            Assertions.assertEquals(messageIds(dataSource.getPrimary()), messageIds(replica));
+            new JdbcTemplate(replica).update("insert into message (messageId, postedBy, messageText, timePostedEpoch)"
+                    + " values (5000, 9999, 'replica only', 1669947792)");
+        }
+
+        List<Message> all = objectMapper.readValue(get("/messages").body(), new TypeReference<List<Message>>(){});
+        Assertions.assertTrue(all.stream().anyMatch(message -> message.getMessageId() == 5000));
+        List<Message> byUser = objectMapper.readValue(get("/accounts/9999/messages").body(),
+                new TypeReference<List<Message>>(){});
+        Assertions.assertTrue(byUser.stream().anyMatch(message -> message.getMessageId() == 5000));
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/messages, PATCH localhost:8080/messages/{messageId}
+     * and DELETE localhost:8080/messages/{messageId}
+     *
+     * Expected Response:
+     *  Each change has reached every replica by the time its response arrives
+     */
+    @Test
+    public void writesReachReplicas() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"postedBy\":9999,\"messageText\": \"replicated\","
+                        + "\"timePostedEpoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> postResponse = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, postResponse.statusCode());
+        int messageId = objectMapper.readValue(postResponse.body(), Message.class).getMessageId();
+        for (HikariDataSource replica : dataSource.getReplicas()) {
+            Assertions.assertEquals("replicated", messageText(replica, messageId));
+        }
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"edited\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        for (HikariDataSource replica : dataSource.getReplicas()) {
+            Assertions.assertEquals("edited", messageText(replica, messageId));
+        }
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .DELETE()
+                .build();
+        Assertions.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        for (HikariDataSource replica : dataSource.getReplicas()) {
+            Assertions.assertFalse(messageIds(replica).contains(messageId));
+        }
+    }
+
+    /**
+     * Adding a message to both replicas only, then within one request reading an account's messages,
+     * editing one of them and reading them again
+     *
+     * Expected Response:
+     *  The first read comes from a replica and includes the message, the read after the write comes
+     *  from the primary and does not
+     */
+    @Test
+    public void readsAfterAWriteUseThePrimary() throws MessageNotFoundException {
+        for (HikariDataSource replica : dataSource.getReplicas()) {
+            new JdbcTemplate(replica).update("insert into message (messageId, postedBy, messageText, timePostedEpoch)"
+                    + " values (5000, 9999, 'replica only', 1669947792)");
+        }
+        MessageService messageService = app.getBean(MessageService.class);
+
+        ReadYourWrites.begin();
+        try {
+            Assertions.assertTrue(messageIds(messageService.findAllByUser(9999)).contains(5000));
+            messageService.updateMessage(9999, "edited");
+            Assertions.assertTrue(ReadYourWrites.hasWritten());
+            Assertions.assertFalse(messageIds(messageService.findAllByUser(9999)).contains(5000));
+        } finally {
+            ReadYourWrites.end();
+        }
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static List<Integer> messageIds(HikariDataSource pool) {
+        return new JdbcTemplate(pool).queryForList("select messageId from message order by messageId", Integer.class);
+    }
+
+    private static List<Integer> messageIds(List<Message> messages) {
+        return messages.stream().map(Message::getMessageId).collect(Collectors.toList());
+    }
+
+    private static String messageText(HikariDataSource pool, int messageId) {
+        return new JdbcTemplate(pool).queryForObject("select messageText from message where messageId = ?",
+                String.class, messageId);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class RetrieveMessagesForUserPageTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Posting three messages for user 9998, then sending an http request to
+     * GET localhost:8080/accounts/9998/messages?limit=2 and following the returned cursor
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the two newest messages with a next cursor, then the oldest message without one
+     */
+    @Test
+    public void getMessagesFromUserPageFollowCursor() throws IOException, InterruptedException {
+    	String ndjson = "{\"postedBy\":9998,\"messageText\": \"oldest\",\"timePostedEpoch\": 1669947791}\n"
+    			+ "{\"postedBy\":9998,\"messageText\": \"newest\",\"timePostedEpoch\": 1669947793}\n"
+    			+ "{\"postedBy\":9998,\"messageText\": \"middle\",\"timePostedEpoch\": 1669947792}\n";
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/bulk"))
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson))
+                .header("Content-Type", "application/x-ndjson")
+                .build();
+        Assertions.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest firstRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9998/messages?limit=2"))
+                .build();
+        HttpResponse<String> firstResponse = webClient.send(firstRequest, HttpResponse.BodyHandlers.ofString());
+        int firstStatus = firstResponse.statusCode();
+        Assertions.assertEquals(200, firstStatus, "Expected Status Code 200 - Actual Code was: " + firstStatus);
+        List<Message> firstPage = objectMapper.readValue(firstResponse.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(2, firstPage.size());
+        Assertions.assertEquals("newest", firstPage.get(0).getMessageText());
+        Assertions.assertEquals("middle", firstPage.get(1).getMessageText());
+        Optional<String> cursor = firstResponse.headers().firstValue("X-Next-Cursor");
+        Assertions.assertTrue(cursor.isPresent(), "Expected a next cursor on a full page");
+
+        HttpRequest secondRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9998/messages?limit=2&before=" + cursor.get()))
+                .build();
+        HttpResponse<String> secondResponse = webClient.send(secondRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> secondPage = objectMapper.readValue(secondResponse.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(1, secondPage.size());
+        Assertions.assertEquals("oldest", secondPage.get(0).getMessageText());
+        Assertions.assertTrue(secondResponse.headers().firstValue("X-Next-Cursor").isEmpty(),
+                "Expected no next cursor on the last page");
+    }
+}
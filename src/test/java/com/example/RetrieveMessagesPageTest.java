@@ -0,0 +1,100 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class RetrieveMessagesPageTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=2 and then following the returned cursor
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the first two messages with a next cursor, then the last message without one
+     */
+    @Test
+    public void getMessagesPageFollowCursor() throws IOException, InterruptedException {
+        HttpRequest firstRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=2"))
+                .build();
+        HttpResponse<String> firstResponse = webClient.send(firstRequest, HttpResponse.BodyHandlers.ofString());
+        int firstStatus = firstResponse.statusCode();
+        Assertions.assertEquals(200, firstStatus, "Expected Status Code 200 - Actual Code was: " + firstStatus);
+        List<Message> expectedFirstPage = new ArrayList<Message>();
+        expectedFirstPage.add(new Message(9996, 9996, "test message 3", 1669947792L));
+        expectedFirstPage.add(new Message(9997, 9997, "test message 2", 1669947792L));
+        List<Message> actualFirstPage = objectMapper.readValue(firstResponse.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(expectedFirstPage, actualFirstPage, "Expected="+expectedFirstPage + ", Actual="+actualFirstPage);
+        Optional<String> cursor = firstResponse.headers().firstValue("X-Next-Cursor");
+        Assertions.assertTrue(cursor.isPresent(), "Expected a next cursor on a full page");
+
+        HttpRequest secondRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=2&after=" + cursor.get()))
+                .build();
+        HttpResponse<String> secondResponse = webClient.send(secondRequest, HttpResponse.BodyHandlers.ofString());
+        int secondStatus = secondResponse.statusCode();
+        Assertions.assertEquals(200, secondStatus, "Expected Status Code 200 - Actual Code was: " + secondStatus);
+        List<Message> expectedSecondPage = new ArrayList<Message>();
+        expectedSecondPage.add(new Message(9999, 9999, "test message 1", 1669947792L));
+        List<Message> actualSecondPage = objectMapper.readValue(secondResponse.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(expectedSecondPage, actualSecondPage, "Expected="+expectedSecondPage + ", Actual="+actualSecondPage);
+        Assertions.assertTrue(secondResponse.headers().firstValue("X-Next-Cursor").isEmpty(),
+                "Expected no next cursor on the last page");
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a cursor that was not issued by the API
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesPageInvalidCursor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?after=not-a-cursor"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+        Assertions.assertEquals(400, status, "Expected Status Code 400 - Actual Code was: " + status);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.dto.SearchHit;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SearchMessagesTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Posting three messages for user 9998, then sending an http request to
+     * GET localhost:8080/messages/search?q=quick&limit=1 and following the returned cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the message mentioning quick twice, then the one mentioning it once, then no more hits
+     */
+    @Test
+    public void searchMessagesRankedAndPaged() throws IOException, InterruptedException {
+        String ndjson = "{\"postedBy\":9998,\"messageText\": \"the quick brown fox\",\"timePostedEpoch\": 1669947791}\n"
+                + "{\"postedBy\":9998,\"messageText\": \"quick quick fox\",\"timePostedEpoch\": 1669947792}\n"
+                + "{\"postedBy\":9998,\"messageText\": \"lazy dog\",\"timePostedEpoch\": 1669947793}\n";
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/bulk"))
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson))
+                .header("Content-Type", "application/x-ndjson")
+                .build();
+        Assertions.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assertions.assertEquals(2, awaitHits("quick", 2).size());
+
+        HttpResponse<String> firstResponse = search("quick", "&limit=1");
+        int firstStatus = firstResponse.statusCode();
+        Assertions.assertEquals(200, firstStatus, "Expected Status Code 200 - Actual Code was: " + firstStatus);
+        List<SearchHit> firstPage = hits(firstResponse);
+        Assertions.assertEquals(1, firstPage.size());
+        Assertions.assertEquals("quick quick fox", firstPage.get(0).getMessage().getMessageText());
+        Optional<String> cursor = firstResponse.headers().firstValue("X-Next-Cursor");
+        Assertions.assertTrue(cursor.isPresent(), "Expected a next cursor on a full page");
+
+        HttpResponse<String> secondResponse = search("quick", "&limit=1&after=" + cursor.get());
+        List<SearchHit> secondPage = hits(secondResponse);
+        Assertions.assertEquals(1, secondPage.size());
+        Assertions.assertEquals("the quick brown fox", secondPage.get(0).getMessage().getMessageText());
+        Assertions.assertTrue(secondPage.get(0).getScore() < firstPage.get(0).getScore());
+
+        HttpResponse<String> thirdResponse = search("quick",
+                "&limit=1&after=" + secondResponse.headers().firstValue("X-Next-Cursor").get());
+        Assertions.assertEquals(List.of(), hits(thirdResponse));
+    }
+
+    /**
+     * Updating message 9999 and then deleting it, searching for its new text after each change
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: message 9999 with its new text after the update, and no hits after the delete
+     */
+    @Test
+    public void searchMessagesFollowsUpdatesAndDeletes() throws IOException, InterruptedException {
+        Assertions.assertEquals(3, hits(search("message", "")).size());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"edited words\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        List<SearchHit> updated = awaitHits("edited", 1);
+        Assertions.assertEquals(1, updated.size());
+        Assertions.assertEquals(9999, updated.get(0).getMessage().getPostedBy());
+        Assertions.assertEquals(1669947792L, updated.get(0).getMessage().getTimePostedEpoch());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .DELETE()
+                .build();
+        Assertions.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assertions.assertEquals(List.of(), awaitHits("edited", 0));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search without a query
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchMessagesWithoutQuery() throws IOException, InterruptedException {
+        Assertions.assertEquals(400, search(" ", "").statusCode());
+    }
+
+    private HttpResponse<String> search(String query, String parameters) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q="
+                        + URLEncoder.encode(query, StandardCharsets.UTF_8) + parameters))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<SearchHit> hits(HttpResponse<String> response) throws IOException {
+        Assertions.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<SearchHit>>(){});
+    }
+
+    /**
+     * Searches until the expected number of hits shows up, as writes only become
+     * searchable once the index has been refreshed.
+     */
+    private List<SearchHit> awaitHits(String query, int expected) throws IOException, InterruptedException {
+        List<SearchHit> hits = hits(search(query, ""));
+        for (int i = 0; i < 50 && hits.size() != expected; i++) {
+            Thread.sleep(100);
+            hits = hits(search(query, ""));
+        }
+        return hits;
+    }
+}
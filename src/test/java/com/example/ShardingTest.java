@@ -0,0 +1,231 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.dto.BulkMessageResult;
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.shard.MessageShards;
+import com.example.shard.ShardRoutingDataSource;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ShardingTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    MessageShards shards;
+
+    /**
+     * Before every test, start the app with the sharded profile, which spreads messages over four
+     * in-memory databases, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * The profile replaces any active one, as sharding is only supported on the servlet stack.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] { "--spring.profiles.active=sharded" };
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        shards = app.getBean(MessageShards.class);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Registering eight accounts and sending an http request to POST localhost:8080/messages for each,
+     * then GET localhost:8080/messages, GET localhost:8080/messages/{messageId} and
+     * GET localhost:8080/accounts/{accountId}/messages
+     *
+     * Expected Response:
+     *  Every message gets a distinct messageId naming the shard of its author and is stored in that shard's
+     *  database, the messages use more than one shard, GET /messages gathers all of them in messageId order
+     *  and the other reads find each one
+     */
+    @Test
+    public void messagesAreSpreadOverShards() throws IOException, InterruptedException {
+        List<Message> created = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Account account = register("sharded" + i);
+            HttpResponse<String> response = post("/messages", "{\"postedBy\":" + account.getAccountId()
+                    + ",\"messageText\": \"message " + i + "\",\"timePostedEpoch\": 1669947792}");
+            Assertions.assertEquals(200, response.statusCode());
+            created.add(objectMapper.readValue(response.body(), Message.class));
+        }
+
+        Set<Integer> shardsUsed = new HashSet<>();
+        for (Message message : created) {
+            int shard = shards.shardOf(message.getPostedBy());
+            Assertions.assertEquals(shard, shards.shardOfMessage(message.getMessageId()));
+            shardsUsed.add(shard);
+        }
+        Assertions.assertTrue(shardsUsed.size() > 1, "Expected messages on several shards: " + shardsUsed);
+        Assertions.assertEquals(8, created.stream().map(Message::getMessageId).distinct().count());
+        ShardRoutingDataSource dataSource = app.getBean(ShardRoutingDataSource.class);
+        for (int shard = 0; shard < shards.count(); shard++) {
+            int target = shard;
+            long stored = new JdbcTemplate(dataSource.getShards().get(shard))
+                    .queryForObject("select count(*) from message", Long.class);
+            Assertions.assertEquals(created.stream().filter(m -> shards.shardOf(m.getPostedBy()) == target).count(),
+                    stored);
+        }
+
+        List<Message> all = objectMapper.readValue(get("/messages").body(), new TypeReference<List<Message>>(){});
+        List<Message> expected = created.stream()
+                .sorted((a, b) -> Integer.compare(a.getMessageId(), b.getMessageId()))
+                .collect(Collectors.toList());
+        Assertions.assertEquals(expected, all);
+
+        for (Message message : created) {
+            Assertions.assertEquals(message,
+                    objectMapper.readValue(get("/messages/" + message.getMessageId()).body(), Message.class));
+            List<Message> byUser = objectMapper.readValue(get("/accounts/" + message.getPostedBy() + "/messages").body(),
+                    new TypeReference<List<Message>>(){});
+            Assertions.assertEquals(List.of(message), byUser);
+        }
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/bulk with messages from four accounts
+     *
+     * Expected Response:
+     *  Status Code: 200, every message created on its author's shard and found again by GET /messages
+     */
+    @Test
+    public void bulkMessagesAreWrittenToEachShard() throws IOException, InterruptedException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 4; i++) {
+            Account account = register("bulk" + i);
+            json.append(i == 0 ? "" : ",").append("{\"postedBy\":").append(account.getAccountId())
+                    .append(",\"messageText\": \"bulk ").append(i).append("\",\"timePostedEpoch\": 1669947792}");
+        }
+        HttpResponse<String> response = post("/messages/bulk", json.append(']').toString());
+        Assertions.assertEquals(200, response.statusCode());
+        List<BulkMessageResult> results = objectMapper.readValue(response.body(),
+                new TypeReference<List<BulkMessageResult>>(){});
+
+        for (BulkMessageResult result : results) {
+            Assertions.assertEquals(200, result.getStatus());
+            Message message = result.getMessage();
+            Assertions.assertEquals(shards.shardOf(message.getPostedBy()), shards.shardOfMessage(message.getMessageId()));
+        }
+        List<Message> all = objectMapper.readValue(get("/messages").body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(4, all.size());
+    }
+
+    /**
+     * Sending an http request to PATCH localhost:8080/messages/{messageId} and then
+     * DELETE localhost:8080/messages/{messageId} for a message that is not on shard 0
+     *
+     * Expected Response:
+     *  Status Code: 200 for both, the new text read back after the PATCH and nothing after the DELETE
+     */
+    @Test
+    public void updateAndDeleteAreRoutedByMessageId() throws IOException, InterruptedException {
+        Account account = register("routed0");
+        for (int i = 1; shards.shardOf(account.getAccountId()) == 0; i++) {
+            account = register("routed" + i);
+        }
+        HttpResponse<String> response = post("/messages", "{\"postedBy\":" + account.getAccountId()
+                + ",\"messageText\": \"before\",\"timePostedEpoch\": 1669947792}");
+        Message message = objectMapper.readValue(response.body(), Message.class);
+        String path = "/messages/" + message.getMessageId();
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"after\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> patchResponse = webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, patchResponse.statusCode());
+        Assertions.assertEquals("1", patchResponse.body());
+        Assertions.assertEquals("after", objectMapper.readValue(get(path).body(), Message.class).getMessageText());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .DELETE()
+                .build();
+        HttpResponse<String> deleteResponse = webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, deleteResponse.statusCode());
+        Assertions.assertEquals("1", deleteResponse.body());
+        Assertions.assertEquals("", get(path).body());
+    }
+
+    /**
+     * Registering a follower and two followees on different shards, posting a message without a
+     * timePostedEpoch and one with it, then following both accounts and sending an http request to
+     * GET localhost:8080/accounts/{accountId}/timeline
+     *
+     * Expected Response:
+     *  Status Code: 200, both messages merged from their shards, the one without a timePostedEpoch last
+     */
+    @Test
+    public void timelineMergesMessagesWithoutTimePostedEpoch() throws IOException, InterruptedException {
+        Account follower = register("reader");
+        Account undated = register("undated0");
+        for (int i = 1; shards.shardOf(undated.getAccountId()) == 0; i++) {
+            undated = register("undated" + i);
+        }
+        Account dated = register("dated0");
+        for (int i = 1; shards.shardOf(dated.getAccountId()) == shards.shardOf(undated.getAccountId()); i++) {
+            dated = register("dated" + i);
+        }
+        Message first = objectMapper.readValue(post("/messages", "{\"postedBy\":" + undated.getAccountId()
+                + ",\"messageText\": \"no time\"}").body(), Message.class);
+        Message second = objectMapper.readValue(post("/messages", "{\"postedBy\":" + dated.getAccountId()
+                + ",\"messageText\": \"with time\",\"timePostedEpoch\": 1669947792}").body(), Message.class);
+        Assertions.assertNull(first.getTimePostedEpoch());
+        String following = "/accounts/" + follower.getAccountId() + "/following/";
+        Assertions.assertEquals(200, post(following + undated.getAccountId(), "").statusCode());
+        Assertions.assertEquals(200, post(following + dated.getAccountId(), "").statusCode());
+
+        HttpResponse<String> response = get("/accounts/" + follower.getAccountId() + "/timeline");
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals(List.of(second, first),
+                objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){}));
+    }
+
+    private Account register(String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = post("/register",
+                "{\"username\": \"" + username + "\", \"password\": \"password\"}");
+        Assertions.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Account.class);
+    }
+
+    private HttpResponse<String> post(String path, String json) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -6,6 +6,10 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,6 +17,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ApplicationContext;
 
+import com.example.entity.Message;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class UpdateMessageTest {
@@ -123,4 +128,67 @@ public class UpdateMessageTest {
         int status = response.statusCode();
         Assertions.assertEquals(400, status, "Expected Status Code 400 - Actual Code was: " + status);
     }
+
+    /**
+     * Sending an http request to PATCH localhost:8080/messages/9999 on the servlet stack, with message
+     * 9999 not cached anywhere
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  The update takes a single prepared statement, as counted by Hibernate
+     */
+    @Test
+    public void updateMessageTakesOneStatement() throws IOException, InterruptedException {
+        // Statements are counted by Hibernate, so the app is restarted on the stack that writes through JPA
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, "--spring.profiles.active=default");
+        EntityManagerFactory entityManagerFactory = app.getBean(EntityManagerFactory.class);
+        // Reindexing at startup leaves the message in the second-level cache, which a real miss would not find
+        entityManagerFactory.getCache().evictAll();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+    	String json = "{\"messageText\": \"text changed\"}";
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/9999, then PATCH localhost:8080/messages/9999,
+     * then GET localhost:8080/messages/9999 again
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the message with the updated text, not the one read before the update
+     */
+    @Test
+    public void updateMessageThenRetrieveUpdatedText() throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .build();
+        HttpResponse<String> before = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(new Message(9999, 9999, "test message 1", 1669947792L),
+                objectMapper.readValue(before.body(), Message.class));
+
+    	String json = "{\"messageText\": \"text changed\"}";
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> patchResponse = webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        int status = patchResponse.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+
+        HttpResponse<String> after = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Message expectedResult = new Message(9999, 9999, "text changed", 1669947792L);
+        Message actualResult = objectMapper.readValue(after.body(), Message.class);
+        Assertions.assertEquals(expectedResult, actualResult, "Expected="+expectedResult + ", Actual="+actualResult);
+    }
 }
@@ -104,4 +104,40 @@ public class UserLoginTest {
         int status = response.statusCode();
         Assertions.assertEquals(401, status, "Expected Status Code 401 - Actual Code was: " + status);
     }
+
+    /**
+     * Sending an http request to POST localhost:8080/register, then POST localhost:8080/login twice
+     * with the same credentials
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of user object, with the password that was sent
+     */
+    @Test
+    public void loginRegisteredUserSuccessful() throws IOException, InterruptedException {
+        String json = "{\"username\":\"user\",\"password\":\"password\"}";
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> registerResponse = webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, registerResponse.statusCode());
+        ObjectMapper om = new ObjectMapper();
+        Account registered = om.readValue(registerResponse.body(), Account.class);
+
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<String> response = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+            int status = response.statusCode();
+            Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+            Account expectedResult = new Account(registered.getAccountId(), "user", "password");
+            Account actualResult = om.readValue(response.body(), Account.class);
+            Assertions.assertEquals(expectedResult, actualResult);
+        }
+    }
 }
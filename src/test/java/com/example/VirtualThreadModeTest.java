@@ -0,0 +1,64 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+public class VirtualThreadModeTest {
+	ApplicationContext app;
+    HttpClient webClient;
+
+    @BeforeEach
+    public void setUp() {
+        webClient = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+        if (app != null) {
+            SpringApplication.exit(app);
+        }
+    }
+
+    /**
+     * Starting the app with --app.threads.virtual=true, then sending an http request
+     * to GET localhost:8080/messages/9999
+     * 
+     * Expected Response on Java 21 or newer:
+     *  Status Code: 200
+     * Expected Result on older Java:
+     *  The app fails to start instead of falling back to platform threads
+     */
+    @Test
+    public void virtualThreadModeServesRequestsOrFailsFast() throws IOException, InterruptedException {
+        String[] args = new String[] { "--app.threads.virtual=true" };
+        if (Runtime.version().feature() < 21) {
+            Exception ex = Assertions.assertThrows(Exception.class, () -> SpringApplication.run(SocialMediaApp.class, args));
+            Throwable cause = ex;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            Assertions.assertTrue(cause.getMessage().contains("Java 21"), "Unexpected failure: " + cause);
+            return;
+        }
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+    }
+}
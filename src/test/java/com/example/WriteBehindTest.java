@@ -0,0 +1,129 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class WriteBehindTest {
+	ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with write-behind enabled, a two second
+     * durability window and room for two unflushed messages, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] { "--app.write-behind.enabled=true", "--app.write-behind.queue-capacity=2",
+                "--app.write-behind.flush-interval-ms=2000" };
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+    	Thread.sleep(500);
+    	SpringApplication.exit(app);
+    }
+
+    /**
+     * Posting a message for user 9999, reading it back before it has been written, then
+     * sending an http request to PATCH localhost:8080/messages/{messageId}
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the new message from GET /messages/{messageId} and GET /accounts/9999/messages,
+     *  then 1 from the PATCH once the message has been written, and the new text from a last GET
+     */
+    @Test
+    public void unflushedMessageIsReadableAndUpdatable() throws IOException, InterruptedException {
+        HttpResponse<String> createResponse = createMessage("written behind");
+        Assertions.assertEquals(200, createResponse.statusCode());
+        Message created = objectMapper.readValue(createResponse.body(), Message.class);
+        Assertions.assertNotNull(created.getMessageId());
+
+        HttpResponse<String> getResponse = get("/messages/" + created.getMessageId());
+        Assertions.assertEquals(200, getResponse.statusCode());
+        Assertions.assertEquals(created, objectMapper.readValue(getResponse.body(), Message.class));
+
+        List<Message> messages = objectMapper.readValue(get("/accounts/9999/messages").body(),
+                new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(List.of(new Message(9999, 9999, "test message 1", 1669947792L), created), messages);
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + created.getMessageId()))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"edited after flush\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> patchResponse = webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, patchResponse.statusCode());
+        Assertions.assertEquals("1", patchResponse.body());
+
+        Message updated = objectMapper.readValue(get("/messages/" + created.getMessageId()).body(), Message.class);
+        Assertions.assertEquals("edited after flush", updated.getMessageText());
+    }
+
+    /**
+     * Posting three messages for user 9999 while only two can wait to be written
+     *
+     * Expected Response:
+     *  Status Code: 200 twice, then 503 with a Retry-After header, then 200 again once the
+     *  first two have been written
+     */
+    @Test
+    public void fullQueueRespondsServiceUnavailable() throws IOException, InterruptedException {
+        Assertions.assertEquals(200, createMessage("first").statusCode());
+        Assertions.assertEquals(200, createMessage("second").statusCode());
+
+        HttpResponse<String> rejected = createMessage("third");
+        Assertions.assertEquals(503, rejected.statusCode());
+        Assertions.assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+
+        HttpResponse<String> retried = createMessage("third");
+        for (int i = 0; i < 50 && retried.statusCode() == 503; i++) {
+            Thread.sleep(100);
+            retried = createMessage("third");
+        }
+        Assertions.assertEquals(200, retried.statusCode());
+
+        List<Message> messages = objectMapper.readValue(get("/accounts/9999/messages").body(),
+                new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(4, messages.size());
+    }
+
+    private HttpResponse<String> createMessage(String messageText) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"postedBy\":9999,\"messageText\": \""
+                        + messageText + "\",\"timePostedEpoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
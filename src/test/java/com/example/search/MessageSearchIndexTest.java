@@ -0,0 +1,96 @@
+package com.example.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.dto.SearchHit;
+import com.example.entity.Message;
+
+public class MessageSearchIndexTest {
+    MessageSearchIndex index;
+
+    /**
+     * Before every test, create an empty index in memory that refreshes on its own only once a minute.
+     */
+    @BeforeEach
+    public void setUp() {
+        index = new MessageSearchIndex("", 60000);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    /**
+     * Indexing a message and making it visible, deleting it, then updating it before the next refresh
+     *
+     * Expected Response:
+     *  The update does not bring the message back, though the searcher it reads from still held it
+     */
+    @Test
+    public void updateAfterDeleteDoesNotRestoreMessage() {
+        index.index(new Message(1, 9999, "original text", 1669947792L));
+        index.commit();
+
+        index.delete(1);
+        index.update(1, "edited text");
+        index.commit();
+
+        Assertions.assertEquals(List.of(), search("text"));
+        Assertions.assertEquals(0, index.documentCount());
+    }
+
+    /**
+     * Updating and deleting each of many visible messages at the same time from two threads
+     *
+     * Expected Response:
+     *  No deleted message is left in the index, whichever of the two ran first
+     */
+    @Test
+    public void concurrentUpdateAndDeleteLeaveMessageDeleted() throws Exception {
+        int messages = 2000;
+        for (int id = 1; id <= messages; id++) {
+            index.index(new Message(id, 9999, "original text " + id, 1669947792L));
+        }
+        index.commit();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> {
+                for (int id = 1; id <= messages; id++) {
+                    index.update(id, "edited text " + id);
+                }
+            }));
+            futures.add(executor.submit(() -> {
+                for (int id = 1; id <= messages; id++) {
+                    index.delete(id);
+                }
+            }));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        index.commit();
+
+        Assertions.assertEquals(0, index.documentCount());
+        Assertions.assertEquals(List.of(), search("text"));
+    }
+
+    private List<Message> search(String query) {
+        return index.search(query, null, 0, 10).stream().map(SearchHit::getMessage).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.entity.Message;
+
+public class MessageLogTest {
+    Path file;
+
+    /**
+     * Before every test, write an empty message log to a new temporary file.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = Files.createTempFile("messages", ".log");
+        MessageLog.rewrite(file, false, 0, List.of()).close();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Appending a message, failing part-way through appending a second one as a full disk would,
+     * then appending a third and replaying the log
+     *
+     * Expected Response:
+     *  The failed append throws, and the replay finds the first and third messages with no damage to cut off
+     */
+    @Test
+    public void failedAppendIsCutOff() throws IOException {
+        FailingChannel[] channel = new FailingChannel[1];
+        MessageLog log = MessageLog.replay(file, false, new Recorder(), path -> {
+            channel[0] = new FailingChannel(MessageLog.APPEND.open(path), false);
+            return channel[0];
+        });
+        log.created(new Message(1, 9999, "first", 1669947792L));
+        channel[0].failNextWrite = true;
+        Assertions.assertThrows(IOException.class, () -> log.created(new Message(2, 9999, "lost", 1669947793L)));
+        log.created(new Message(3, 9999, "third", 1669947794L));
+        Assertions.assertEquals(3, log.records());
+        log.close();
+
+        long length = Files.size(file);
+        Recorder replayed = new Recorder();
+        MessageLog.replay(file, false, replayed).close();
+        Assertions.assertEquals(List.of(new Message(1, 9999, "first", 1669947792L),
+                new Message(3, 9999, "third", 1669947794L)), replayed.created);
+        Assertions.assertEquals(length, Files.size(file));
+    }
+
+    /**
+     * Failing part-way through an append and then failing to cut the partial record off, then appending again
+     *
+     * Expected Response:
+     *  Every later append throws instead of writing after the damaged record
+     */
+    @Test
+    public void logThatCannotBeRepairedRefusesWrites() throws IOException {
+        FailingChannel[] channel = new FailingChannel[1];
+        MessageLog log = MessageLog.replay(file, false, new Recorder(), path -> {
+            channel[0] = new FailingChannel(MessageLog.APPEND.open(path), true);
+            return channel[0];
+        });
+        channel[0].failNextWrite = true;
+        Assertions.assertThrows(IOException.class, () -> log.created(new Message(1, 9999, "lost", 1669947792L)));
+        long length = Files.size(file);
+
+        Assertions.assertThrows(IOException.class, () -> log.deleted(1));
+        Assertions.assertEquals(length, Files.size(file));
+        log.close();
+    }
+
+    /**
+     * Collects the messages a replay creates.
+     */
+    static class Recorder implements MessageLog.Replay {
+        final List<Message> created = new ArrayList<>();
+
+        @Override
+        public void created(Message message) {
+            created.add(message);
+        }
+
+        @Override
+        public void updated(int id, String messageText) {
+        }
+
+        @Override
+        public void deleted(int id) {
+        }
+
+        @Override
+        public void reserved(int id) {
+        }
+    }
+
+    /**
+     * A file channel that, when told to, writes the first few bytes of the next write and then
+     * fails, and that can also fail to truncate.
+     */
+    static class FailingChannel extends FileChannel {
+        final FileChannel channel;
+        final boolean failTruncate;
+        boolean failNextWrite;
+
+        FailingChannel(FileChannel channel, boolean failTruncate) {
+            this.channel = channel;
+            this.failTruncate = failTruncate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failNextWrite) {
+                failNextWrite = false;
+                ByteBuffer part = src.duplicate();
+                part.limit(part.position() + Math.min(5, part.remaining()));
+                channel.write(part);
+                throw new IOException("No space left on device");
+            }
+            return channel.write(src);
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            if (failTruncate) {
+                throw new IOException("Input/output error");
+            }
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
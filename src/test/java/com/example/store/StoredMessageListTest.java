@@ -0,0 +1,80 @@
+package com.example.store;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class StoredMessageListTest {
+    StoredMessageList list;
+
+    /**
+     * Before every test, create an empty list sorted oldest first, as an account's messages are.
+     */
+    @BeforeEach
+    public void setUp() {
+        list = new StoredMessageList(Comparator.<StoredMessage>comparingLong(message -> message.timePostedEpoch)
+                .thenComparingInt(message -> message.messageId));
+    }
+
+    /**
+     * Adding messages posted with times out of order, and one without a time, then walking back from a cursor
+     *
+     * Expected Response:
+     *  The walk starts at the newest message older than the cursor and goes newest first, ending at the
+     *  message without a time
+     */
+    @Test
+    public void walksBackFromCursorInTimeOrder() {
+        list.add(new StoredMessage(1, 9999, 30, "a"));
+        list.add(new StoredMessage(2, 9999, 10, "b"));
+        list.add(new StoredMessage(3, 9999, StoredMessage.NO_TIME, "c"));
+        list.add(new StoredMessage(4, 9999, 20, "d"));
+        list.add(new StoredMessage(5, 9999, 20, "e"));
+
+        Assertions.assertEquals(List.of(5, 4, 2, 3), before(new StoredMessage(1, 0, 30, null)));
+        Assertions.assertEquals(List.of(4, 2, 3), before(new StoredMessage(5, 0, 20, null)));
+        Assertions.assertEquals(List.of(1, 5, 4, 2, 3), before(null));
+    }
+
+    /**
+     * Deleting most of the messages of a list while a reader is part-way through walking it
+     *
+     * Expected Response:
+     *  The reader finishes the walk over the list as it was, and later walks pass only the live messages
+     */
+    @Test
+    public void compactingDoesNotDisturbAWalk() {
+        List<StoredMessage> messages = new ArrayList<>();
+        for (int id = 1; id <= 10; id++) {
+            StoredMessage message = new StoredMessage(id, 9999, id, "text " + id);
+            messages.add(message);
+            list.add(message);
+        }
+
+        List<Integer> walked = new ArrayList<>();
+        list.forEachBefore(null, message -> {
+            if (walked.isEmpty()) {
+                for (int i = 0; i < 8; i++) {
+                    messages.get(i).delete();
+                    list.deleted();
+                }
+            }
+            walked.add(message.messageId);
+            return true;
+        });
+
+        Assertions.assertEquals(List.of(10, 9, 8, 7, 6, 5, 4, 3, 2, 1), walked);
+        Assertions.assertEquals(2, list.size());
+        Assertions.assertEquals(List.of(10, 9), before(null));
+    }
+
+    private List<Integer> before(StoredMessage key) {
+        List<Integer> ids = new ArrayList<>();
+        list.forEachBefore(key, message -> ids.add(message.messageId));
+        return ids;
+    }
+}